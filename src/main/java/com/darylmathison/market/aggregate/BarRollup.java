@@ -0,0 +1,82 @@
+package com.darylmathison.market.aggregate;
+
+import com.darylmathison.market.model.StorageStockBar;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds coarser OHLCV bars from finer ones as pages stream through. Only the bucket currently
+ * open for each symbol is held mutable; a bucket is completed as soon as a bar for a later bucket
+ * arrives, so Alpaca's symbol then time ordering keeps the working set to one bar per symbol.
+ */
+public class BarRollup {
+
+  private static final ZoneId MARKET_ZONE = ZoneId.of("America/New_York");
+
+  private final Timeframe timeframe;
+  private final Map<String, StorageStockBar> openBuckets = new HashMap<>();
+  private final List<StorageStockBar> completed = new ArrayList<>();
+
+  public BarRollup(Timeframe timeframe) {
+    this.timeframe = timeframe;
+  }
+
+  public Timeframe getTimeframe() {
+    return timeframe;
+  }
+
+  public void addAll(List<StorageStockBar> bars) {
+    bars.forEach(this::add);
+  }
+
+  public void add(StorageStockBar bar) {
+    ZonedDateTime bucketStart = bucketStart(bar.getTimestamp());
+    StorageStockBar open = openBuckets.get(bar.getSymbol());
+    if (open != null && open.getTimestamp().isEqual(bucketStart)) {
+      open.setHigh(Math.max(open.getHigh(), bar.getHigh()));
+      open.setLow(Math.min(open.getLow(), bar.getLow()));
+      open.setClose(bar.getClose());
+      open.setVolume(open.getVolume() + bar.getVolume());
+      return;
+    }
+    if (open != null) {
+      completed.add(open);
+    }
+    openBuckets.put(bar.getSymbol(), StorageStockBar.builder().symbol(bar.getSymbol())
+        .timestamp(bucketStart).open(bar.getOpen()).high(bar.getHigh()).low(bar.getLow())
+        .close(bar.getClose()).volume(bar.getVolume()).build());
+  }
+
+  /**
+   * Completes every open bucket and returns all rolled up bars. The rollup is empty afterwards.
+   */
+  public List<StorageStockBar> finish() {
+    completed.addAll(openBuckets.values());
+    openBuckets.clear();
+    List<StorageStockBar> result = new ArrayList<>(completed);
+    completed.clear();
+    return result;
+  }
+
+  /**
+   * Start of the bucket containing the timestamp, in the timestamp's own zone.
+   */
+  ZonedDateTime bucketStart(ZonedDateTime timestamp) {
+    ZonedDateTime local = timestamp.withZoneSameInstant(MARKET_ZONE);
+    ZonedDateTime start;
+    if (timeframe.isDaily()) {
+      start = local.toLocalDate().atStartOfDay(MARKET_ZONE);
+    } else {
+      int minuteOfDay = local.getHour() * 60 + local.getMinute();
+      int bucketMinute = minuteOfDay - minuteOfDay % timeframe.minutes();
+      start = local.toLocalDate().atTime(LocalTime.of(bucketMinute / 60, bucketMinute % 60))
+          .atZone(MARKET_ZONE);
+    }
+    return start.withZoneSameInstant(timestamp.getZone());
+  }
+}
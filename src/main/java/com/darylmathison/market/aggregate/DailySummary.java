@@ -0,0 +1,191 @@
+package com.darylmathison.market.aggregate;
+
+import com.darylmathison.market.model.StorageStockBar;
+import com.darylmathison.market.symbol.SymbolDictionary;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+/**
+ * Running per-symbol, per-session aggregates built while bars stream through: bar count, the
+ * typical price averaged with each bar weighted by its trade count, open, high, low, close, range
+ * and return. The volume column of the price files holds Alpaca's trade count rather than shares,
+ * so that average is written as twap_by_trades and is not a share weighted VWAP. A
+ * (dictionary id, New York date) pair packed into a long finds its row through an open addressing
+ * table. Row values live in parallel primitive arrays, so a run over thousands of symbols keeps
+ * no boxed keys or per-row objects. Bars for symbols outside the dictionary are left out.
+ */
+public class DailySummary {
+
+  private static final ZoneId MARKET_ZONE = ZoneId.of("America/New_York");
+  private static final long EMPTY = -1L;
+
+  private final SymbolDictionary dictionary;
+
+  private long[] tableKeys = emptyTable(64);
+  private int[] tableRows = new int[64];
+
+  private int rows;
+  private long[] rowKeys = new long[32];
+  private int[] bars = new int[32];
+  private double[] priceTrades = new double[32];
+  private double[] trades = new double[32];
+  private double[] typicalSum = new double[32];
+  private double[] high = new double[32];
+  private double[] low = new double[32];
+  private double[] open = new double[32];
+  private double[] close = new double[32];
+  private long[] firstTime = new long[32];
+  private long[] lastTime = new long[32];
+
+  public DailySummary(SymbolDictionary dictionary) {
+    this.dictionary = dictionary;
+  }
+
+  public void addAll(List<StorageStockBar> page) {
+    for (StorageStockBar bar : page) {
+      add(bar);
+    }
+  }
+
+  public void add(StorageStockBar bar) {
+    int symbolId = dictionary.id(bar.getSymbol());
+    if (symbolId < 0) {
+      return;
+    }
+    ZonedDateTime timestamp = bar.getTimestamp().withZoneSameInstant(MARKET_ZONE);
+    long key = ((long) symbolId << 32) | (timestamp.toLocalDate().toEpochDay() & 0xffffffffL);
+    long time = timestamp.toEpochSecond();
+    double typical = (bar.getHigh() + bar.getLow() + bar.getClose()) / 3;
+
+    int row = row(key);
+    if (bars[row] == 0) {
+      high[row] = bar.getHigh();
+      low[row] = bar.getLow();
+      open[row] = bar.getOpen();
+      close[row] = bar.getClose();
+      firstTime[row] = time;
+      lastTime[row] = time;
+    } else {
+      high[row] = Math.max(high[row], bar.getHigh());
+      low[row] = Math.min(low[row], bar.getLow());
+      if (time < firstTime[row]) {
+        firstTime[row] = time;
+        open[row] = bar.getOpen();
+      }
+      if (time >= lastTime[row]) {
+        lastTime[row] = time;
+        close[row] = bar.getClose();
+      }
+    }
+    bars[row]++;
+    priceTrades[row] += typical * bar.getVolume();
+    trades[row] += bar.getVolume();
+    typicalSum[row] += typical;
+  }
+
+  public int size() {
+    return rows;
+  }
+
+  /**
+   * Writes one row per symbol and session, sorted by symbol then date, as gzip compressed CSV.
+   * Dictionary ids follow symbol order, so sorting the packed keys gives that order.
+   */
+  public byte[] toCompressedCsv() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (CSVPrinter printer = new CSVPrinter(
+        new OutputStreamWriter(new GZIPOutputStream(out), StandardCharsets.UTF_8),
+        CSVFormat.DEFAULT.builder().setHeader("symbol", "date", "bars", "twap_by_trades", "open", "high", "low",
+            "close", "range", "return").get())) {
+      long[] keys = Arrays.copyOf(rowKeys, rows);
+      Arrays.sort(keys);
+      for (long key : keys) {
+        int row = row(key);
+        printer.printRecord(
+            dictionary.symbol((int) (key >>> 32)),
+            LocalDate.ofEpochDay((int) key),
+            bars[row],
+            trades[row] > 0 ? priceTrades[row] / trades[row] : typicalSum[row] / bars[row],
+            open[row],
+            high[row],
+            low[row],
+            close[row],
+            high[row] - low[row],
+            open[row] != 0 ? close[row] / open[row] - 1 : 0.0
+        );
+      }
+    }
+    return out.toByteArray();
+  }
+
+  private int row(long key) {
+    int mask = tableKeys.length - 1;
+    int slot = (int) mix(key) & mask;
+    while (tableKeys[slot] != EMPTY) {
+      if (tableKeys[slot] == key) {
+        return tableRows[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+    if (rows == rowKeys.length) {
+      growRows();
+    }
+    tableKeys[slot] = key;
+    tableRows[slot] = rows;
+    rowKeys[rows] = key;
+    if (++rows * 2 > tableKeys.length) {
+      rehash(tableKeys.length * 2);
+    }
+    return rows - 1;
+  }
+
+  private void rehash(int capacity) {
+    tableKeys = emptyTable(capacity);
+    tableRows = new int[capacity];
+    int mask = capacity - 1;
+    for (int row = 0; row < rows; row++) {
+      int slot = (int) mix(rowKeys[row]) & mask;
+      while (tableKeys[slot] != EMPTY) {
+        slot = (slot + 1) & mask;
+      }
+      tableKeys[slot] = rowKeys[row];
+      tableRows[slot] = row;
+    }
+  }
+
+  private void growRows() {
+    int capacity = rowKeys.length * 2;
+    rowKeys = Arrays.copyOf(rowKeys, capacity);
+    bars = Arrays.copyOf(bars, capacity);
+    priceTrades = Arrays.copyOf(priceTrades, capacity);
+    trades = Arrays.copyOf(trades, capacity);
+    typicalSum = Arrays.copyOf(typicalSum, capacity);
+    high = Arrays.copyOf(high, capacity);
+    low = Arrays.copyOf(low, capacity);
+    open = Arrays.copyOf(open, capacity);
+    close = Arrays.copyOf(close, capacity);
+    firstTime = Arrays.copyOf(firstTime, capacity);
+    lastTime = Arrays.copyOf(lastTime, capacity);
+  }
+
+  private static long[] emptyTable(int capacity) {
+    long[] table = new long[capacity];
+    Arrays.fill(table, EMPTY);
+    return table;
+  }
+
+  private static long mix(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return h ^ (h >>> 32);
+  }
+}
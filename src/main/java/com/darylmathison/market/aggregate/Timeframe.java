@@ -0,0 +1,73 @@
+package com.darylmathison.market.aggregate;
+
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+
+/**
+ * A bar timeframe in Alpaca's notation, e.g. 15Min, 1Hour or 1Day. Minute and hour bars are
+ * aligned to the New York wall clock and day bars cover one session day.
+ */
+public record Timeframe(int amount, ChronoUnit unit) {
+
+  public Timeframe {
+    if (amount <= 0) {
+      throw new IllegalArgumentException("Timeframe amount must be positive: " + amount);
+    }
+    if (unit != ChronoUnit.MINUTES && unit != ChronoUnit.HOURS && unit != ChronoUnit.DAYS) {
+      throw new IllegalArgumentException("Unsupported timeframe unit: " + unit);
+    }
+    if (unit == ChronoUnit.DAYS && amount != 1) {
+      throw new IllegalArgumentException("Only single day timeframes are supported: " + amount);
+    }
+  }
+
+  public static Timeframe parse(String value) {
+    String text = value.trim().toLowerCase(Locale.ROOT);
+    int split = 0;
+    while (split < text.length() && Character.isDigit(text.charAt(split))) {
+      split++;
+    }
+    if (split == 0) {
+      throw new IllegalArgumentException("Invalid timeframe: " + value);
+    }
+    int amount = Integer.parseInt(text.substring(0, split));
+    return switch (text.substring(split)) {
+      case "min", "t" -> new Timeframe(amount, ChronoUnit.MINUTES);
+      case "hour", "h" -> new Timeframe(amount, ChronoUnit.HOURS);
+      case "day", "d" -> new Timeframe(amount, ChronoUnit.DAYS);
+      default -> throw new IllegalArgumentException("Invalid timeframe: " + value);
+    };
+  }
+
+  /**
+   * Length of an intraday bucket in minutes. Not defined for day bars.
+   */
+  public int minutes() {
+    return unit == ChronoUnit.HOURS ? amount * 60 : amount;
+  }
+
+  public boolean isDaily() {
+    return unit == ChronoUnit.DAYS;
+  }
+
+  /**
+   * Whether bars of this timeframe can be built exactly from bars of the given finer timeframe.
+   */
+  public boolean isRollupOf(Timeframe base) {
+    if (base.isDaily()) {
+      return false;
+    }
+    return isDaily() || (minutes() > base.minutes() && minutes() % base.minutes() == 0);
+  }
+
+  /**
+   * Lower case label used in object keys, e.g. 30min or 1day.
+   */
+  public String label() {
+    return switch (unit) {
+      case MINUTES -> amount + "min";
+      case HOURS -> amount + "hour";
+      default -> amount + "day";
+    };
+  }
+}
@@ -0,0 +1,149 @@
+package com.darylmathison.market.aggregate;
+
+import com.darylmathison.market.model.TradeBar;
+import com.darylmathison.market.model.TradeBarType;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Builds time, tick or volume bars from a stream of trades. Each symbol has one open bar held in
+ * primitive fields and reused after it is emitted, so memory stays flat however many trades a
+ * session has; only finished bars are allocated. Trades are expected in time order per symbol, as
+ * Alpaca pages them. A volume bar closes on the trade that reaches its size and keeps that whole
+ * trade rather than splitting it.
+ */
+public class TradeBarAggregator implements TradeSink {
+
+  private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+  private final TradeBarType type;
+  private final long size;
+  private final long periodNanos;
+  private final Consumer<TradeBar> output;
+  private final Map<String, OpenBar> open = new HashMap<>();
+
+  private String lastSymbol;
+  private OpenBar last;
+  private long emitted;
+
+  /** The bar being built for one symbol. */
+  private static class OpenBar {
+    private final String symbol;
+    private long bucket;
+    private long startNanos;
+    private double open;
+    private double high;
+    private double low;
+    private double close;
+    private long volume;
+    private double notional;
+    private int trades;
+
+    OpenBar(String symbol) {
+      this.symbol = symbol;
+    }
+  }
+
+  /**
+   * @param size Seconds per bar for time bars, trades per bar for tick bars, shares per bar for volume bars
+   * @param output Receives each bar as it closes
+   */
+  public TradeBarAggregator(TradeBarType type, long size, Consumer<TradeBar> output) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("Bar size must be positive: " + size);
+    }
+    this.type = type;
+    this.size = size;
+    this.periodNanos = type == TradeBarType.TIME ? size * NANOS_PER_SECOND : 0;
+    this.output = output;
+  }
+
+  @Override
+  public void trade(String symbol, long epochNanos, double price, long size) {
+    OpenBar bar = openBar(symbol);
+    long bucket = periodNanos > 0 ? Math.floorDiv(epochNanos, periodNanos) : 0;
+    if (bar.trades > 0 && bucket > bar.bucket) {
+      emit(bar);
+    }
+    if (bar.trades == 0) {
+      bar.bucket = bucket;
+      bar.startNanos = periodNanos > 0 ? bucket * periodNanos : epochNanos;
+      bar.open = price;
+      bar.high = price;
+      bar.low = price;
+    } else {
+      bar.high = Math.max(bar.high, price);
+      bar.low = Math.min(bar.low, price);
+    }
+    bar.close = price;
+    bar.volume += size;
+    bar.notional += price * size;
+    bar.trades++;
+
+    if ((type == TradeBarType.TICK && bar.trades >= this.size)
+        || (type == TradeBarType.VOLUME && bar.volume >= this.size)) {
+      emit(bar);
+    }
+  }
+
+  /**
+   * Emits every partly built bar, in symbol order. Called at the end of each session so no bar
+   * spans the overnight gap.
+   */
+  public void finish() {
+    List<OpenBar> remaining = new ArrayList<>(open.values());
+    remaining.sort(Comparator.comparing(bar -> bar.symbol));
+    for (OpenBar bar : remaining) {
+      if (bar.trades > 0) {
+        emit(bar);
+      }
+    }
+  }
+
+  /**
+   * @return Number of bars emitted so far
+   */
+  public long emitted() {
+    return emitted;
+  }
+
+  private OpenBar openBar(String symbol) {
+    // Trades arrive in runs of one symbol, so the last bar is nearly always the one wanted
+    if (symbol.equals(lastSymbol)) {
+      return last;
+    }
+    lastSymbol = symbol;
+    last = open.computeIfAbsent(symbol, OpenBar::new);
+    return last;
+  }
+
+  private void emit(OpenBar bar) {
+    output.accept(TradeBar.builder()
+        .symbol(bar.symbol)
+        .timestamp(toTimestamp(bar.startNanos))
+        .open(bar.open)
+        .high(bar.high)
+        .low(bar.low)
+        .close(bar.close)
+        .volume(bar.volume)
+        .vwap(bar.volume > 0 ? bar.notional / bar.volume : bar.close)
+        .tradeCount(bar.trades)
+        .build());
+    emitted++;
+    bar.volume = 0;
+    bar.notional = 0;
+    bar.trades = 0;
+  }
+
+  private static ZonedDateTime toTimestamp(long epochNanos) {
+    return Instant.ofEpochSecond(Math.floorDiv(epochNanos, NANOS_PER_SECOND), Math.floorMod(epochNanos, NANOS_PER_SECOND))
+        .atZone(ZoneOffset.UTC);
+  }
+}
@@ -0,0 +1,14 @@
+package com.darylmathison.market.aggregate;
+
+/**
+ * Receives trades one at a time as primitives, so trades can be aggregated without an object per
+ * trade outliving the page it arrived in.
+ */
+@FunctionalInterface
+public interface TradeSink {
+
+  /**
+   * @param epochNanos Trade time in nanoseconds since the epoch
+   */
+  void trade(String symbol, long epochNanos, double price, long size);
+}
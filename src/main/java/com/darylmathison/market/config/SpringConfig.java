@@ -8,6 +8,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.context.annotation.Scope;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
@@ -22,7 +23,12 @@ public class SpringConfig {
   @Value("${alpaca.secret-name}")
   private String alpacaSecretName;
 
+  /**
+   * Lazy so the secret is fetched by the first user of the client, in parallel with the other
+   * start up work, instead of blocking context start up.
+   */
   @Bean
+  @Lazy
   public AlpacaAPI alpacaAPI(SecretsService secretsService) {
     ApiKeyPair alpacaApiKeyPair = secretsService.getSecretApiKeyPair(alpacaSecretName);
     return new AlpacaAPI(alpacaApiKeyPair.getApiKey(), alpacaApiKeyPair.getSecretKey());
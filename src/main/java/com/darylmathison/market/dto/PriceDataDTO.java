@@ -1,10 +1,23 @@
 package com.darylmathison.market.dto;
 
+import com.darylmathison.market.aggregate.Timeframe;
 import com.darylmathison.market.model.StorageStockBar;
 import java.time.LocalDate;
+import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface PriceDataDTO {
 
   List<StorageStockBar> getPriceData(List<String> symbols, LocalDate start, LocalDate end) throws Exception;
+
+  void streamPriceData(List<String> symbols, LocalDate start, LocalDate end,
+      Consumer<List<StorageStockBar>> pageConsumer) throws Exception;
+
+  void streamPriceData(List<String> symbols, ZonedDateTime start, ZonedDateTime end,
+      Consumer<List<StorageStockBar>> pageConsumer) throws Exception;
+
+  Timeframe getTimeframe();
+
+  void prepare();
 }
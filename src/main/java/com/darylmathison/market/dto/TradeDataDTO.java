@@ -0,0 +1,10 @@
+package com.darylmathison.market.dto;
+
+import com.darylmathison.market.aggregate.TradeSink;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+public interface TradeDataDTO {
+
+  void streamTrades(List<String> symbols, ZonedDateTime start, ZonedDateTime end, TradeSink sink) throws Exception;
+}
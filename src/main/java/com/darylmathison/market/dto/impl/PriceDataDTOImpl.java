@@ -1,52 +1,189 @@
 package com.darylmathison.market.dto.impl;
 
 
+import com.darylmathison.market.aggregate.Timeframe;
 import com.darylmathison.market.dto.PriceDataDTO;
+import com.darylmathison.market.io.PageCache;
+import com.darylmathison.market.model.RecordedBarsPage;
 import com.darylmathison.market.model.StorageStockBar;
+import com.darylmathison.market.retry.RequestThrottle;
+import com.darylmathison.market.retry.RetryPolicy;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 import net.jacobpeterson.alpaca.AlpacaAPI;
 import net.jacobpeterson.alpaca.model.endpoint.marketdata.common.historical.bar.enums.BarTimePeriod;
 import net.jacobpeterson.alpaca.model.endpoint.marketdata.stock.historical.bar.MultiStockBarsResponse;
+import net.jacobpeterson.alpaca.model.endpoint.marketdata.stock.historical.bar.StockBar;
 import net.jacobpeterson.alpaca.model.endpoint.marketdata.stock.historical.bar.enums.BarAdjustment;
 import net.jacobpeterson.alpaca.model.endpoint.marketdata.stock.historical.bar.enums.BarFeed;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 @Service
 public class PriceDataDTOImpl implements PriceDataDTO {
 
-  private final AlpacaAPI alpacaAPI;
+  @Value("${alpaca.bars.duration:15}")
+  private int barDuration;
 
-  public PriceDataDTOImpl(AlpacaAPI alpacaAPI) {
-    this.alpacaAPI = alpacaAPI;
+  @Value("${alpaca.bars.period:MINUTE}")
+  private BarTimePeriod barTimePeriod;
+
+  private final ObjectFactory<AlpacaAPI> alpacaApiFactory;
+  private final RetryPolicy retryPolicy;
+  private final RequestThrottle requestThrottle;
+  private final PageCache pageCache;
+
+  public PriceDataDTOImpl(ObjectFactory<AlpacaAPI> alpacaApiFactory, RetryPolicy retryPolicy,
+      RequestThrottle requestThrottle, PageCache pageCache) {
+    this.alpacaApiFactory = alpacaApiFactory;
+    this.retryPolicy = retryPolicy;
+    this.requestThrottle = requestThrottle;
+    this.pageCache = pageCache;
   }
 
   @Override
   public List<StorageStockBar> getPriceData(List<String> symbols, LocalDate start, LocalDate end)
       throws Exception {
     List<StorageStockBar> allData = new ArrayList<>();
+    streamPriceData(symbols, start, end, allData::addAll);
+    return allData;
+  }
+
+  /**
+   * Hands each page of bars to the consumer as it arrives so callers can encode or aggregate
+   * without holding the whole response.
+   */
+  @Override
+  public void streamPriceData(List<String> symbols, LocalDate start, LocalDate end,
+      Consumer<List<StorageStockBar>> pageConsumer) throws Exception {
+    streamPriceData(symbols, toZoneDateTime(start), toZoneDateTime(end), pageConsumer);
+  }
 
-    ZonedDateTime requestStart = toZoneDateTime(start);
-    ZonedDateTime requestEnd = toZoneDateTime(end);
-    boolean callAgain = true;
-    MultiStockBarsResponse barsResponse = alpacaAPI.stockMarketData()
-        .getBars(symbols, requestStart, requestEnd, null, null, 15, BarTimePeriod.MINUTE,
-            BarAdjustment.RAW, BarFeed.IEX);
-    while (callAgain) {
-      barsResponse.getBars().forEach((symbol, bars) -> bars.forEach(bar -> allData.add(
-          StorageStockBar.builder().symbol(symbol).timestamp(bar.getTimestamp()).open(bar.getOpen())
-              .close(bar.getClose()).high(bar.getHigh()).low(bar.getLow())
-              .volume(bar.getTradeCount()).build())));
-      barsResponse = alpacaAPI.stockMarketData()
-          .getBars(symbols, requestStart, requestEnd, null, barsResponse.getNextPageToken(), 15,
-              BarTimePeriod.MINUTE, BarAdjustment.RAW, BarFeed.IEX);
-      callAgain = barsResponse.getNextPageToken() != null;
+  @Override
+  public void streamPriceData(List<String> symbols, ZonedDateTime requestStart,
+      ZonedDateTime requestEnd, Consumer<List<StorageStockBar>> pageConsumer) throws Exception {
+    String pageToken = null;
+    do {
+      MultiStockBarsResponse barsResponse = nextPage(symbols, requestStart, requestEnd, pageToken);
+      List<StorageStockBar> page = new ArrayList<>();
+      if (barsResponse.getBars() != null) {
+        barsResponse.getBars().forEach((symbol, bars) -> bars.forEach(bar -> page.add(
+            StorageStockBar.builder().symbol(symbol).timestamp(bar.getTimestamp())
+                .open(bar.getOpen()).close(bar.getClose()).high(bar.getHigh()).low(bar.getLow())
+                .volume(bar.getTradeCount()).build())));
+      }
+      pageConsumer.accept(page);
+      pageToken = barsResponse.getNextPageToken();
+    } while (pageToken != null);
+  }
+
+  /**
+   * Creates the Alpaca client, fetching its API keys, ahead of the first request. A replay never
+   * calls the API, so it needs no client.
+   */
+  @Override
+  public void prepare() {
+    if (!pageCache.isReplaying()) {
+      alpacaApiFactory.getObject();
     }
+  }
 
-    return allData;
+  @Override
+  public Timeframe getTimeframe() {
+    ChronoUnit unit = switch (barTimePeriod) {
+      case MINUTE -> ChronoUnit.MINUTES;
+      case HOUR -> ChronoUnit.HOURS;
+      case DAY -> ChronoUnit.DAYS;
+      default -> throw new IllegalStateException("Unsupported bar period: " + barTimePeriod);
+    };
+    return new Timeframe(barDuration, unit);
+  }
+
+  /**
+   * Gets a page from the API or, when replaying, from the page cache, recording pages from the API
+   * when asked to. Pages are keyed by every request parameter and the page token.
+   */
+  private MultiStockBarsResponse nextPage(List<String> symbols, ZonedDateTime requestStart,
+      ZonedDateTime requestEnd, String pageToken) throws Exception {
+    String key = PageCache.key("bars", symbols, requestStart.toInstant(), requestEnd.toInstant(), barDuration,
+        barTimePeriod, BarAdjustment.RAW, BarFeed.IEX, pageToken);
+    if (pageCache.isReplaying()) {
+      return fromRecorded(pageCache.load(key, RecordedBarsPage.class));
+    }
+    MultiStockBarsResponse barsResponse = fetchPage(symbols, requestStart, requestEnd, pageToken);
+    if (pageCache.isRecording()) {
+      pageCache.store(key, toRecorded(barsResponse));
+    }
+    return barsResponse;
+  }
+
+  private static RecordedBarsPage toRecorded(MultiStockBarsResponse barsResponse) {
+    RecordedBarsPage page = new RecordedBarsPage();
+    page.setNextPageToken(barsResponse.getNextPageToken());
+    if (barsResponse.getBars() != null) {
+      Map<String, List<RecordedBarsPage.RecordedBar>> bars = new LinkedHashMap<>();
+      barsResponse.getBars().forEach((symbol, symbolBars) -> bars.put(symbol, symbolBars.stream().map(bar -> {
+        RecordedBarsPage.RecordedBar recorded = new RecordedBarsPage.RecordedBar();
+        recorded.setTimestamp(bar.getTimestamp() == null ? null : bar.getTimestamp().toString());
+        recorded.setOpen(bar.getOpen());
+        recorded.setHigh(bar.getHigh());
+        recorded.setLow(bar.getLow());
+        recorded.setClose(bar.getClose());
+        recorded.setVwap(bar.getVwap());
+        recorded.setVolume(bar.getVolume());
+        recorded.setTradeCount(bar.getTradeCount());
+        return recorded;
+      }).toList()));
+      page.setBars(bars);
+    }
+    return page;
+  }
+
+  private static MultiStockBarsResponse fromRecorded(RecordedBarsPage page) {
+    MultiStockBarsResponse barsResponse = new MultiStockBarsResponse();
+    barsResponse.setNextPageToken(page.getNextPageToken());
+    if (page.getBars() != null) {
+      HashMap<String, ArrayList<StockBar>> bars = new LinkedHashMap<>();
+      page.getBars().forEach((symbol, recordedBars) -> {
+        ArrayList<StockBar> symbolBars = new ArrayList<>(recordedBars.size());
+        for (RecordedBarsPage.RecordedBar recorded : recordedBars) {
+          StockBar bar = new StockBar();
+          bar.setTimestamp(recorded.getTimestamp() == null ? null : ZonedDateTime.parse(recorded.getTimestamp()));
+          bar.setOpen(recorded.getOpen());
+          bar.setHigh(recorded.getHigh());
+          bar.setLow(recorded.getLow());
+          bar.setClose(recorded.getClose());
+          bar.setVwap(recorded.getVwap());
+          bar.setVolume(recorded.getVolume());
+          bar.setTradeCount(recorded.getTradeCount());
+          symbolBars.add(bar);
+        }
+        bars.put(symbol, symbolBars);
+      });
+      barsResponse.setBars(bars);
+    }
+    return barsResponse;
+  }
+
+  /**
+   * Requests a single page, retrying transient failures from the same page token so a failure
+   * deep into a batch costs one extra request instead of the pages already received.
+   */
+  private MultiStockBarsResponse fetchPage(List<String> symbols, ZonedDateTime requestStart,
+      ZonedDateTime requestEnd, String pageToken) throws Exception {
+    return retryPolicy.execute(requestThrottle, "Bars request (page token " + pageToken + ")",
+        () -> alpacaApiFactory.getObject().stockMarketData()
+            .getBars(symbols, requestStart, requestEnd, null, pageToken, barDuration, barTimePeriod,
+                BarAdjustment.RAW, BarFeed.IEX));
   }
 
   private ZonedDateTime toZoneDateTime(LocalDate localDate) {
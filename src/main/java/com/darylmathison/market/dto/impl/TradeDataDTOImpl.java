@@ -0,0 +1,69 @@
+package com.darylmathison.market.dto.impl;
+
+import com.darylmathison.market.aggregate.TradeSink;
+import com.darylmathison.market.dto.TradeDataDTO;
+import com.darylmathison.market.retry.RequestThrottle;
+import com.darylmathison.market.retry.RetryPolicy;
+import java.time.ZonedDateTime;
+import java.util.List;
+import net.jacobpeterson.alpaca.AlpacaAPI;
+import net.jacobpeterson.alpaca.model.endpoint.marketdata.stock.historical.trade.MultiStockTradesResponse;
+import net.jacobpeterson.alpaca.model.endpoint.marketdata.stock.historical.trade.StockTrade;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+@Service
+public class TradeDataDTOImpl implements TradeDataDTO {
+
+  private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+  @Value("${alpaca.trades.page-limit:10000}")
+  private int pageLimit;
+
+  private final ObjectFactory<AlpacaAPI> alpacaApiFactory;
+  private final RetryPolicy retryPolicy;
+  private final RequestThrottle requestThrottle;
+
+  public TradeDataDTOImpl(ObjectFactory<AlpacaAPI> alpacaApiFactory, RetryPolicy retryPolicy,
+      RequestThrottle requestThrottle) {
+    this.alpacaApiFactory = alpacaApiFactory;
+    this.retryPolicy = retryPolicy;
+    this.requestThrottle = requestThrottle;
+  }
+
+  /**
+   * Pages through historical trades and hands each one to the sink as it is read, so only one
+   * page of trades is ever held.
+   */
+  @Override
+  public void streamTrades(List<String> symbols, ZonedDateTime start, ZonedDateTime end, TradeSink sink)
+      throws Exception {
+    String pageToken = null;
+    do {
+      MultiStockTradesResponse tradesResponse = fetchPage(symbols, start, end, pageToken);
+      if (tradesResponse.getTrades() != null) {
+        tradesResponse.getTrades().forEach((symbol, trades) -> {
+          for (StockTrade trade : trades) {
+            if (trade.getTimestamp() == null || trade.getPrice() == null || trade.getSize() == null) {
+              continue;
+            }
+            long epochNanos = trade.getTimestamp().toEpochSecond() * NANOS_PER_SECOND + trade.getTimestamp().getNano();
+            sink.trade(symbol, epochNanos, trade.getPrice(), trade.getSize());
+          }
+        });
+      }
+      pageToken = tradesResponse.getNextPageToken();
+    } while (pageToken != null);
+  }
+
+  /**
+   * Requests a single page, retrying transient failures from the same page token.
+   */
+  private MultiStockTradesResponse fetchPage(List<String> symbols, ZonedDateTime start, ZonedDateTime end,
+      String pageToken) throws Exception {
+    return retryPolicy.execute(requestThrottle, "Trades request (page token " + pageToken + ")",
+        () -> alpacaApiFactory.getObject().stockMarketData()
+            .getTrades(symbols, start, end, pageLimit, pageToken));
+  }
+}
@@ -0,0 +1,49 @@
+package com.darylmathison.market.handler;
+
+import com.darylmathison.market.config.SpringConfig;
+import com.darylmathison.market.model.BackfillRequest;
+import com.darylmathison.market.service.BackfillService;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Runs a backfill from the command line, for ranges too long for a single Lambda invocation:
+ * <pre>
+ * java -cp app.jar com.darylmathison.market.handler.BackfillCommand --start=2020-01-01 --end=2024-12-31 [--symbols=AAPL,MSFT]
+ * </pre>
+ * Configuration comes from the same environment variables as the Lambda function.
+ */
+public class BackfillCommand {
+
+  private static final Logger logger = Logger.getLogger(BackfillCommand.class.getName());
+
+  public static void main(String[] args) {
+    BackfillRequest.BackfillRequestBuilder request = BackfillRequest.builder();
+    for (String arg : args) {
+      if (arg.startsWith("--start=")) {
+        request.startDate(LocalDate.parse(arg.substring("--start=".length())));
+      } else if (arg.startsWith("--end=")) {
+        request.endDate(LocalDate.parse(arg.substring("--end=".length())));
+      } else if (arg.startsWith("--symbols=")) {
+        List<String> symbols = Arrays.stream(arg.substring("--symbols=".length()).split(","))
+            .map(String::trim).filter(symbol -> !symbol.isEmpty()).toList();
+        request.symbols(symbols);
+      } else {
+        System.err.println("Usage: BackfillCommand --start=YYYY-MM-DD --end=YYYY-MM-DD [--symbols=A,B,C]");
+        System.exit(2);
+      }
+    }
+
+    SpringApplication app = new SpringApplication(SpringConfig.class);
+    app.setWebApplicationType(WebApplicationType.NONE);
+    try (ConfigurableApplicationContext applicationContext = app.run()) {
+      int recordCount = applicationContext.getBean(BackfillService.class).backfill(request.build());
+      logger.info("Backfilled " + recordCount + " stock price records");
+    }
+  }
+}
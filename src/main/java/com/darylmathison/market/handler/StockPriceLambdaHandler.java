@@ -3,13 +3,22 @@ package com.darylmathison.market.handler;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.darylmathison.market.config.SpringConfig;
+import com.darylmathison.market.model.BackfillRequest;
+import com.darylmathison.market.model.RunReport;
+import com.darylmathison.market.service.BackfillService;
 import com.darylmathison.market.service.StockPriceService;
+import com.darylmathison.market.service.TradeIngestService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.ConfigurableApplicationContext;
 
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
@@ -19,10 +28,16 @@ import java.util.logging.Level;
 public class StockPriceLambdaHandler implements RequestHandler<Object, String> {
 
   private static final Logger logger = Logger.getLogger(StockPriceLambdaHandler.class.getName());
+  private static final ObjectMapper mapper = new ObjectMapper();
 
   /**
    * Handle the Lambda request.
    *
+   * <p>An event with a "backfill" entry runs a backfill, and one with a "trades" entry builds bars
+   * from trades under trades.prefix. Any other event runs the daily download. Only the daily
+   * download writes a run manifest and can record or replay its pages through alpaca.cache; a
+   * trades run writes its one file without a manifest and always calls Alpaca.
+   *
    * @param input   The input for the Lambda function (can be passed as JSON).
    * @param context Lambda execution context.
    * @return A JSON string representing the result of the price data download.
@@ -38,15 +53,59 @@ public class StockPriceLambdaHandler implements RequestHandler<Object, String> {
       }
 
       ConfigurableApplicationContext applicationContext = app.run();
+
+      BackfillRequest backfillRequest = backfillRequest(input);
+      if (backfillRequest != null) {
+        BackfillService backfillService = applicationContext.getBean(BackfillService.class);
+        int recordCount = backfillService.backfill(backfillRequest);
+        logger.info("Backfilled " + recordCount + " stock price records");
+        return String.format("{\"success\": true, \"mode\": \"backfill\", \"recordsProcessed\": %d}", recordCount);
+      }
+
+      if (input instanceof Map<?, ?> event && event.get("trades") instanceof Map<?, ?> trades) {
+        TradeIngestService tradeIngestService = applicationContext.getBean(TradeIngestService.class);
+        List<String> symbols = trades.get("symbols") instanceof List<?> list
+            ? list.stream().map(String::valueOf).toList()
+            : null;
+        int barCount = tradeIngestService.ingest(symbols);
+        logger.info("Wrote " + barCount + " bars aggregated from trades");
+        return String.format("{\"success\": true, \"mode\": \"trades\", \"barsWritten\": %d}", barCount);
+      }
+
       StockPriceService stockPriceService = applicationContext.getBean(StockPriceService.class);
 
-      int recordCount = stockPriceService.getPriceData();
-      logger.info("Downloaded " + recordCount + " stock price records");
-      return String.format("{\"success\": true, \"recordsProcessed\": %d}", recordCount);
+      RunReport report = stockPriceService.getPriceData();
+      logger.info("Downloaded " + report.getRecordsProcessed() + " stock price records");
+      Map<String, Object> result = new LinkedHashMap<>();
+      result.put("success", true);
+      result.put("recordsProcessed", report.getRecordsProcessed());
+      result.put("manifestKey", report.getManifestKey());
+      result.put("validation", report.getValidation());
+      return mapper.writeValueAsString(result);
     } catch (Exception e) {
       // Lambda error handling
       logger.log(Level.SEVERE, "Failed to process request", e);
       return String.format("{\"success\": false, \"error\": \"%s\"}", e.getMessage());
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Reads a backfill request from an event such as
+   * {"backfill": {"startDate": "2024-01-01", "endDate": "2024-06-30", "symbols": ["AAPL"]}}.
+   *
+   * @return The request, or null for the scheduled daily run
+   */
+  static BackfillRequest backfillRequest(Object input) {
+    if (!(input instanceof Map<?, ?> event) || !(event.get("backfill") instanceof Map<?, ?> backfill)) {
+      return null;
+    }
+    List<String> symbols = backfill.get("symbols") instanceof List<?> list
+        ? list.stream().map(String::valueOf).toList()
+        : null;
+    return BackfillRequest.builder()
+        .startDate(LocalDate.parse(String.valueOf(backfill.get("startDate"))))
+        .endDate(LocalDate.parse(String.valueOf(backfill.get("endDate"))))
+        .symbols(symbols)
+        .build();
+  }
+}
@@ -0,0 +1,41 @@
+package com.darylmathison.market.handler;
+
+import com.darylmathison.market.config.SpringConfig;
+import com.darylmathison.market.service.StreamingService;
+import java.time.Duration;
+import java.util.logging.Logger;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Runs the streaming mode, which outlives a Lambda invocation, as a long-running process:
+ * <pre>
+ * java -cp app.jar com.darylmathison.market.handler.StreamCommand [--minutes=390]
+ * </pre>
+ * Set STREAM_SOURCE=replay to play back STREAM_REPLAY_FILE, or synthetic bars, instead of
+ * connecting to Alpaca.
+ */
+public class StreamCommand {
+
+  private static final Logger logger = Logger.getLogger(StreamCommand.class.getName());
+
+  public static void main(String[] args) {
+    Duration duration = Duration.ofMinutes(390);
+    for (String arg : args) {
+      if (arg.startsWith("--minutes=")) {
+        duration = Duration.ofMinutes(Long.parseLong(arg.substring("--minutes=".length())));
+      } else {
+        System.err.println("Usage: StreamCommand [--minutes=N]");
+        System.exit(2);
+      }
+    }
+
+    SpringApplication app = new SpringApplication(SpringConfig.class);
+    app.setWebApplicationType(WebApplicationType.NONE);
+    try (ConfigurableApplicationContext applicationContext = app.run()) {
+      int recordCount = applicationContext.getBean(StreamingService.class).stream(duration);
+      logger.info("Streamed " + recordCount + " stock price records");
+    }
+  }
+}
@@ -0,0 +1,333 @@
+package com.darylmathison.market.io;
+
+import com.darylmathison.market.aggregate.Timeframe;
+import com.darylmathison.market.model.SessionHours;
+import com.darylmathison.market.model.StorageStockBar;
+import com.darylmathison.market.model.TradingSession;
+import com.darylmathison.market.symbol.SymbolDictionary;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes a run's bars as a dense symbol by slot matrix that readers can memory-map and use
+ * without parsing. Rows are the symbol dictionary in id order and columns are the bar slots of
+ * the run's sessions, so two runs over the same sessions and symbols line up cell for cell. The
+ * planes are one mapping of a spill file and bars are written into their cells as pages stream
+ * through, so the matrix never sits on the heap. Closing deletes the file; the mapping is freed
+ * when it is collected, and on Linux the file's name is gone at once.
+ *
+ * <p>Layout, all little-endian:
+ * <pre>
+ *   8 bytes   magic "BARMATRX"
+ *   int       format version, 1
+ *   int       symbol count (rows)
+ *   int       slot count (columns)
+ *   int       plane count, 5: open, high, low, close, volume
+ *   int       bar length in seconds, 86400 for day bars
+ *   int       offset of the first plane, a multiple of 64
+ *   long[]    epoch second each slot starts at
+ *   per row   unsigned short length and the UTF-8 symbol
+ *   float[]   one plane per field, rows of slot count cells
+ *   byte[]    mask plane: 0 no bar yet, 1 bar, 2 carried forward from the last close
+ * </pre>
+ * Missing cells are NaN. Cells after a symbol's first bar that had no bar of their own carry its
+ * last close in every price plane and a volume of 0.
+ */
+public class BarMatrixWriter implements Closeable {
+
+  public static final byte MISSING = 0;
+  public static final byte OBSERVED = 1;
+  public static final byte FILLED = 2;
+
+  private static final ZoneId MARKET_ZONE = ZoneId.of("America/New_York");
+  private static final byte[] MAGIC = "BARMATRX".getBytes(StandardCharsets.US_ASCII);
+  private static final int VERSION = 1;
+  private static final int PLANES = 5;
+  private static final int ALIGNMENT = 64;
+
+  private final Path file;
+  private final SymbolDictionary dictionary;
+  private final FileChannel channel;
+  private final int slots;
+  private final long[] slotStarts;
+  private final long[] sessionStarts;
+  private final long[] sessionEnds;
+  private final long[] sessionSlotSeconds;
+  private final int[] sessionFirstSlots;
+  private final MessageDigest digest;
+  private byte[] sha256;
+  private MappedByteBuffer mapping;
+  private FloatBuffer open;
+  private FloatBuffer high;
+  private FloatBuffer low;
+  private FloatBuffer close;
+  private FloatBuffer volume;
+  private ByteBuffer mask;
+  private long observed;
+  private long dropped;
+  private long filled;
+
+  /**
+   * @param file An empty file the matrix is written to, removed again if the writer cannot be built
+   * @param sessions The run's sessions in chronological order
+   * @param hours The part of each session that is given slots
+   * @param timeframe Duration of one bar, which is one slot
+   */
+  public BarMatrixWriter(Path file, SymbolDictionary dictionary, List<TradingSession> sessions,
+      SessionHours hours, Timeframe timeframe) throws IOException {
+    this.file = file;
+    try {
+      this.dictionary = dictionary;
+      this.sessionStarts = new long[sessions.size()];
+      this.sessionEnds = new long[sessions.size()];
+      this.sessionSlotSeconds = new long[sessions.size()];
+      this.sessionFirstSlots = new int[sessions.size()];
+
+      long slotSeconds = timeframe.isDaily() ? 86_400L : timeframe.minutes() * 60L;
+      long[] starts = new long[0];
+      int slotCount = 0;
+      for (int i = 0; i < sessions.size(); i++) {
+        TradingSession session = sessions.get(i);
+        long start;
+        long end;
+        int count;
+        if (timeframe.isDaily()) {
+          start = session.getDate().atStartOfDay(MARKET_ZONE).toEpochSecond();
+          end = session.getDate().plusDays(1).atStartOfDay(MARKET_ZONE).toEpochSecond();
+          count = 1;
+          sessionSlotSeconds[i] = end - start;
+        } else {
+          // Slots follow the New York wall clock, like Alpaca's bars, so the first may open early
+          ZonedDateTime sessionOpen = session.open(hours);
+          int openMinute = sessionOpen.getHour() * 60 + sessionOpen.getMinute();
+          start = sessionOpen.toLocalDate().atStartOfDay(MARKET_ZONE)
+              .plusMinutes(openMinute - openMinute % timeframe.minutes()).toEpochSecond();
+          count = (int) Math.ceilDiv(session.close(hours).toEpochSecond() - start, slotSeconds);
+          end = start + count * slotSeconds;
+          sessionSlotSeconds[i] = slotSeconds;
+        }
+        sessionStarts[i] = start;
+        sessionEnds[i] = end;
+        sessionFirstSlots[i] = slotCount;
+        starts = Arrays.copyOf(starts, slotCount + count);
+        for (int slot = 0; slot < count; slot++) {
+          starts[slotCount + slot] = start + slot * sessionSlotSeconds[i];
+        }
+        slotCount += count;
+      }
+      this.slots = slotCount;
+      this.slotStarts = starts;
+
+      long cells = (long) dictionary.size() * slots;
+      if (cells * (PLANES * Float.BYTES + 1) > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Matrix of " + dictionary.size() + " symbols by " + slots
+            + " slots is too large for one file");
+      }
+
+      ByteBuffer header = header(slotSeconds);
+      long dataOffset = header.capacity();
+      try {
+        this.digest = MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException("SHA-256 is not available", e);
+      }
+      digest.update(header.duplicate());
+      this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      try {
+        channel.write(header, 0);
+        this.mapping = channel.map(FileChannel.MapMode.READ_WRITE, dataOffset, cells * (PLANES * Float.BYTES + 1));
+      } catch (IOException | RuntimeException e) {
+        channel.close();
+        throw e;
+      }
+      int planeBytes = (int) cells * Float.BYTES;
+      this.open = plane(0, planeBytes);
+      this.high = plane(1, planeBytes);
+      this.low = plane(2, planeBytes);
+      this.close = plane(3, planeBytes);
+      this.volume = plane(4, planeBytes);
+      this.mask = mapping.slice(PLANES * planeBytes, (int) cells);
+    } catch (IOException | RuntimeException e) {
+      // The writer owns the file, so a writer that could not be built must not leave it behind
+      try {
+        Files.deleteIfExists(file);
+      } catch (IOException suppressed) {
+        e.addSuppressed(suppressed);
+      }
+      throw e;
+    }
+  }
+
+  public void addAll(List<StorageStockBar> page) {
+    page.forEach(this::add);
+  }
+
+  /**
+   * Writes the bar into its cell. A bar for a symbol outside the dictionary or a time outside the
+   * sessions is counted as dropped; a second bar in the same cell is merged into the first.
+   */
+  public void add(StorageStockBar bar) {
+    int id = dictionary.id(bar.getSymbol());
+    int slot = slot(bar.getTimestamp().toEpochSecond());
+    if (id < 0 || slot < 0) {
+      dropped++;
+      return;
+    }
+    int cell = id * slots + slot;
+    if (mask.get(cell) == OBSERVED) {
+      high.put(cell, Math.max(high.get(cell), (float) bar.getHigh()));
+      low.put(cell, Math.min(low.get(cell), (float) bar.getLow()));
+      close.put(cell, (float) bar.getClose());
+      volume.put(cell, volume.get(cell) + (float) bar.getVolume());
+      return;
+    }
+    open.put(cell, (float) bar.getOpen());
+    high.put(cell, (float) bar.getHigh());
+    low.put(cell, (float) bar.getLow());
+    close.put(cell, (float) bar.getClose());
+    volume.put(cell, (float) bar.getVolume());
+    mask.put(cell, OBSERVED);
+    observed++;
+  }
+
+  /**
+   * Carries each symbol's last close forward through the cells without a bar and marks the
+   * cells before its first bar missing. The file is complete afterwards, and its SHA-256 is taken
+   * from the mapping while the pages are still resident rather than by reading the file back.
+   */
+  public void finish() {
+    for (int id = 0; id < dictionary.size(); id++) {
+      float last = Float.NaN;
+      for (int cell = id * slots, end = cell + slots; cell < end; cell++) {
+        if (mask.get(cell) == OBSERVED) {
+          last = close.get(cell);
+          continue;
+        }
+        boolean carried = !Float.isNaN(last);
+        open.put(cell, last);
+        high.put(cell, last);
+        low.put(cell, last);
+        close.put(cell, last);
+        volume.put(cell, carried ? 0f : Float.NaN);
+        mask.put(cell, carried ? FILLED : MISSING);
+        if (carried) {
+          filled++;
+        }
+      }
+    }
+    digest.update(mapping.duplicate().clear());
+    sha256 = digest.digest();
+  }
+
+  public Path getFile() {
+    return file;
+  }
+
+  /**
+   * SHA-256 of the whole file, available once finish has been called.
+   */
+  public byte[] sha256() {
+    if (sha256 == null) {
+      throw new IllegalStateException("Matrix is not finished");
+    }
+    return sha256.clone();
+  }
+
+  public int slots() {
+    return slots;
+  }
+
+  public long observed() {
+    return observed;
+  }
+
+  public long filled() {
+    return filled;
+  }
+
+  public long dropped() {
+    return dropped;
+  }
+
+  /**
+   * Closes and removes the file, dropping the writer's references to the mapping so it can be
+   * collected. The writer cannot be used afterwards.
+   */
+  @Override
+  public void close() throws IOException {
+    mapping = null;
+    open = high = low = close = volume = null;
+    mask = null;
+    try (channel) {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  /**
+   * Key in the format "stock_prices_matrix_YYYY-MM-DD.bin".
+   */
+  public static String objectKey(LocalDate date) {
+    return "stock_prices_matrix_" + date + ".bin";
+  }
+
+  private int slot(long epochSecond) {
+    int session = Arrays.binarySearch(sessionStarts, epochSecond);
+    if (session < 0) {
+      session = -session - 2;
+    }
+    if (session < 0 || epochSecond >= sessionEnds[session]) {
+      return -1;
+    }
+    return sessionFirstSlots[session] + (int) ((epochSecond - sessionStarts[session]) / sessionSlotSeconds[session]);
+  }
+
+  private ByteBuffer header(long slotSeconds) {
+    byte[][] names = new byte[dictionary.size()][];
+    int namesBytes = 0;
+    for (int id = 0; id < names.length; id++) {
+      names[id] = dictionary.symbol(id).getBytes(StandardCharsets.UTF_8);
+      namesBytes += Short.BYTES + names[id].length;
+    }
+    int fixed = MAGIC.length + 6 * Integer.BYTES;
+    int length = fixed + slots * Long.BYTES + namesBytes;
+    int dataOffset = Math.ceilDiv(length, ALIGNMENT) * ALIGNMENT;
+
+    ByteBuffer header = ByteBuffer.allocate(dataOffset).order(ByteOrder.LITTLE_ENDIAN);
+    header.put(MAGIC)
+        .putInt(VERSION)
+        .putInt(names.length)
+        .putInt(slots)
+        .putInt(PLANES)
+        .putInt((int) slotSeconds)
+        .putInt(dataOffset);
+    for (long start : slotStarts) {
+      header.putLong(start);
+    }
+    for (byte[] name : names) {
+      header.putShort((short) name.length).put(name);
+    }
+    return header.clear();
+  }
+
+  private FloatBuffer plane(int index, int planeBytes) {
+    return mapping.slice(index * planeBytes, planeBytes)
+        .order(ByteOrder.LITTLE_ENDIAN)
+        .asFloatBuffer();
+  }
+}
@@ -0,0 +1,59 @@
+package com.darylmathison.market.io;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fixed size off-heap chunks for output buffers. Released chunks are kept for the next batch, up
+ * to a bound, so a warm function encodes, compresses and uploads without allocating large arrays
+ * on the heap. Chunks beyond the bound are left to the garbage collector.
+ */
+@Component
+public class ByteBufferPool {
+
+  @Value("${data.buffer.chunk-bytes:1048576}")
+  private int chunkBytes;
+
+  @Value("${data.buffer.max-pooled-chunks:64}")
+  private int maxPooledChunks;
+
+  private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger freeCount = new AtomicInteger();
+
+  /**
+   * A cleared chunk, reused from the pool when one is available.
+   */
+  public ByteBuffer acquire() {
+    ByteBuffer chunk = free.poll();
+    if (chunk == null) {
+      return ByteBuffer.allocateDirect(chunkBytes);
+    }
+    freeCount.decrementAndGet();
+    return chunk.clear();
+  }
+
+  public void release(ByteBuffer chunk) {
+    if (chunk.capacity() != chunkBytes) {
+      return;
+    }
+    if (freeCount.incrementAndGet() <= maxPooledChunks) {
+      free.offer(chunk.clear());
+    } else {
+      freeCount.decrementAndGet();
+    }
+  }
+
+  public int pooledChunks() {
+    return freeCount.get();
+  }
+
+  /**
+   * Direct memory held by idle chunks, which new buffers take before allocating more.
+   */
+  public long pooledBytes() {
+    return (long) freeCount.get() * chunkBytes;
+  }
+}
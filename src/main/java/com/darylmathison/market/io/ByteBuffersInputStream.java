@@ -0,0 +1,51 @@
+package com.darylmathison.market.io;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Reads a list of buffers back to back. The buffers' positions advance as they are read.
+ */
+public class ByteBuffersInputStream extends InputStream {
+
+  private final List<ByteBuffer> buffers;
+  private int index;
+
+  public ByteBuffersInputStream(List<ByteBuffer> buffers) {
+    this.buffers = buffers;
+  }
+
+  @Override
+  public int read() {
+    ByteBuffer buffer = next();
+    return buffer == null ? -1 : buffer.get() & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) {
+    if (len == 0) {
+      return 0;
+    }
+    ByteBuffer buffer = next();
+    if (buffer == null) {
+      return -1;
+    }
+    int count = Math.min(len, buffer.remaining());
+    buffer.get(b, off, count);
+    return count;
+  }
+
+  @Override
+  public int available() {
+    ByteBuffer buffer = next();
+    return buffer == null ? 0 : buffer.remaining();
+  }
+
+  private ByteBuffer next() {
+    while (index < buffers.size() && !buffers.get(index).hasRemaining()) {
+      index++;
+    }
+    return index < buffers.size() ? buffers.get(index) : null;
+  }
+}
@@ -0,0 +1,92 @@
+package com.darylmathison.market.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes into a list of pooled chunks instead of one growing array, so the buffer never has to be
+ * copied to grow and can be handed to the uploader as it is.
+ */
+public class ChunkedOutputStream extends OutputStream {
+
+  private final ByteBufferPool pool;
+  private final List<ByteBuffer> chunks = new ArrayList<>();
+  private ByteBuffer current;
+  private long size;
+  private boolean released;
+
+  public ChunkedOutputStream(ByteBufferPool pool) {
+    this.pool = pool;
+  }
+
+  @Override
+  public void write(int b) {
+    writable().put((byte) b);
+    size++;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    while (len > 0) {
+      ByteBuffer chunk = writable();
+      int count = Math.min(len, chunk.remaining());
+      chunk.put(b, off, count);
+      off += count;
+      len -= count;
+      size += count;
+    }
+  }
+
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Read only views of the written bytes. The views stay valid until the chunks are released.
+   */
+  public List<ByteBuffer> chunks() {
+    return chunks.stream().map(chunk -> chunk.duplicate().flip().asReadOnlyBuffer()).toList();
+  }
+
+  public InputStream newInputStream() {
+    return new ByteBuffersInputStream(chunks());
+  }
+
+  public void writeTo(OutputStream out) throws IOException {
+    byte[] transfer = new byte[8192];
+    for (ByteBuffer chunk : chunks()) {
+      while (chunk.hasRemaining()) {
+        int count = Math.min(transfer.length, chunk.remaining());
+        chunk.get(transfer, 0, count);
+        out.write(transfer, 0, count);
+      }
+    }
+  }
+
+  /**
+   * Returns the chunks to the pool. The stream must not be used afterwards.
+   */
+  public void release() {
+    if (!released) {
+      chunks.forEach(pool::release);
+      chunks.clear();
+      current = null;
+      released = true;
+    }
+  }
+
+  private ByteBuffer writable() {
+    if (released) {
+      throw new IllegalStateException("Buffer already released");
+    }
+    if (current == null || !current.hasRemaining()) {
+      current = pool.acquire();
+      chunks.add(current);
+    }
+    return current;
+  }
+}
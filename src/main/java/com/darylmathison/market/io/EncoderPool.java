@@ -0,0 +1,43 @@
+package com.darylmathison.market.io;
+
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fork/join pool that compresses segments of a batch file in parallel. Sized to the processors
+ * the function was given, which grow with its memory setting; on a pool of one worker writers
+ * encode the same segments on the calling thread, so a file's bytes do not depend on the
+ * processor count.
+ */
+@Component
+public class EncoderPool {
+
+  /** Workers, or 0 for one per available processor. */
+  @Value("${data.encode.parallelism:0}")
+  private int parallelism;
+
+  /** Part of the file format: changing it changes the bytes, and so the checksums, of every batch file. */
+  @Value("${data.encode.segment-bars:20000}")
+  private int segmentBars;
+
+  @Value("${data.encode.max-pending-bytes:33554432}")
+  private long maxPendingBytes;
+
+  private ForkJoinPool pool;
+
+  public PriceFileWriter newWriter(OutputStream out) {
+    return new SegmentedPriceCsvWriter(out, pool(), segmentBars, maxPendingBytes);
+  }
+
+  /**
+   * A pool of one worker never starts its thread, since writers do not submit to it.
+   */
+  private synchronized ForkJoinPool pool() {
+    if (pool == null) {
+      pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+    return pool;
+  }
+}
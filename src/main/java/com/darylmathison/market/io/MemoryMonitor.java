@@ -0,0 +1,116 @@
+package com.darylmathison.market.io;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Watches heap and direct memory headroom so output can spill to disk, and batches can be cut
+ * short, before the function runs out of memory. Output buffers live in direct chunks from the
+ * pool, so their spill threshold is sized from direct memory; the decoded pages and the rest of
+ * the run live on the heap.
+ */
+@Component
+public class MemoryMonitor {
+
+  private static final BufferPoolMXBean DIRECT_POOL = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)
+      .stream()
+      .filter(pool -> pool.getName().equals("direct"))
+      .findFirst()
+      .orElse(null);
+
+  @Value("${data.memory.max-in-memory-bytes:67108864}")
+  private long maxInMemoryBytes;
+
+  @Value("${data.memory.buffer-headroom-fraction:0.25}")
+  private double bufferHeadroomFraction;
+
+  @Value("${data.memory.low-water-fraction:0.2}")
+  private double lowWaterFraction;
+
+  /** 0 uses the JVM's limit, -XX:MaxDirectMemorySize or else the maximum heap. */
+  @Value("${data.memory.max-direct-bytes:0}")
+  private long maxDirectBytes;
+
+  @Value("${data.memory.spill-directory:/tmp}")
+  private String spillDirectory;
+
+  private final ByteBufferPool byteBufferPool;
+
+  public MemoryMonitor(ByteBufferPool byteBufferPool) {
+    this.byteBufferPool = byteBufferPool;
+  }
+
+  /**
+   * Heap that can still be allocated, counting space the heap may grow into.
+   */
+  public long headroomBytes() {
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+  }
+
+  /**
+   * Direct memory that can still be allocated, counting idle pooled chunks as available.
+   */
+  public long directHeadroomBytes() {
+    long used = DIRECT_POOL == null ? 0 : DIRECT_POOL.getMemoryUsed();
+    return Math.max(0, directLimitBytes() - used + byteBufferPool.pooledBytes());
+  }
+
+  /**
+   * Whether heap or direct memory headroom has fallen under the low water mark.
+   */
+  public boolean underPressure() {
+    return headroomBytes() < Runtime.getRuntime().maxMemory() * lowWaterFraction
+        || directHeadroomBytes() < directLimitBytes() * lowWaterFraction;
+  }
+
+  /**
+   * Size at which a new output buffer should move to disk, given the direct memory headroom right now.
+   */
+  public long spillThresholdBytes() {
+    return Math.min(maxInMemoryBytes, (long) (directHeadroomBytes() * bufferHeadroomFraction));
+  }
+
+  public SpillableOutputStream newOutputBuffer() {
+    return new SpillableOutputStream(spillThresholdBytes(), Path.of(spillDirectory), byteBufferPool);
+  }
+
+  /**
+   * A new empty file in the spill directory, for output that is written in place on disk.
+   */
+  public Path newSpillFile(String prefix) throws IOException {
+    Path directory = Path.of(spillDirectory);
+    Files.createDirectories(directory);
+    return Files.createTempFile(directory, prefix, ".tmp");
+  }
+
+  private long directLimitBytes() {
+    if (maxDirectBytes > 0) {
+      return maxDirectBytes;
+    }
+    return JvmDirectLimit.BYTES;
+  }
+
+  /**
+   * Read once: the JVM reports 0 for MaxDirectMemorySize when it is not set, and the limit is then the maximum heap.
+   */
+  private static final class JvmDirectLimit {
+    private static final long BYTES = read();
+
+    private static long read() {
+      try {
+        long configured = Long.parseLong(ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class)
+            .getVMOption("MaxDirectMemorySize").getValue());
+        return configured > 0 ? configured : Runtime.getRuntime().maxMemory();
+      } catch (RuntimeException e) {
+        return Runtime.getRuntime().maxMemory();
+      }
+    }
+  }
+}
@@ -0,0 +1,132 @@
+package com.darylmathison.market.io;
+
+import com.darylmathison.market.model.PageCacheMode;
+import com.darylmathison.market.service.S3Service;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Gzip compressed JSON records of API responses, kept in a local directory or under an
+ * s3://bucket/prefix/ location. Recording a run once lets the whole pipeline be re-run from the
+ * cache after an output format change or an encoding fix, and gives performance tests a real,
+ * repeatable input.
+ */
+@Component
+public class PageCache {
+
+  private static final ObjectMapper mapper = new ObjectMapper()
+      .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+  private static final String S3_SCHEME = "s3://";
+
+  @Value("${alpaca.cache.mode:OFF}")
+  private PageCacheMode mode;
+
+  @Value("${alpaca.cache.location:/tmp/alpaca-cache}")
+  private String location;
+
+  private final S3Service s3Service;
+
+  public PageCache(S3Service s3Service) {
+    this.s3Service = s3Service;
+  }
+
+  public boolean isRecording() {
+    return mode == PageCacheMode.RECORD;
+  }
+
+  public boolean isReplaying() {
+    return mode == PageCacheMode.REPLAY;
+  }
+
+  /**
+   * A cache key from everything that identifies a request, such as its parameters and page token.
+   */
+  public static String key(Object... parts) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      for (Object part : parts) {
+        digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0x1f);
+      }
+      return HexFormat.of().formatHex(digest.digest());
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public void store(String key, Object value) {
+    try {
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      try (OutputStream out = new GZIPOutputStream(compressed)) {
+        mapper.writeValue(out, value);
+      }
+      if (location.startsWith(S3_SCHEME)) {
+        String[] bucketAndPrefix = bucketAndPrefix();
+        s3Service.putObject(bucketAndPrefix[0], bucketAndPrefix[1] + fileName(key), compressed.toByteArray());
+      } else {
+        Path file = Path.of(location, fileName(key));
+        Files.createDirectories(file.getParent());
+        Path partial = Files.createTempFile(file.getParent(), key, ".part");
+        Files.write(partial, compressed.toByteArray());
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      }
+    } catch (Exception e) {
+      throw new RuntimeException("Failed to record " + key + " to " + location + ": " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * @throws IllegalStateException When nothing was recorded under the key
+   */
+  public <T> T load(String key, Class<T> type) {
+    byte[] compressed;
+    try {
+      if (location.startsWith(S3_SCHEME)) {
+        String[] bucketAndPrefix = bucketAndPrefix();
+        compressed = s3Service.getObjectIfExists(bucketAndPrefix[0], bucketAndPrefix[1] + fileName(key));
+      } else {
+        Path file = Path.of(location, fileName(key));
+        compressed = Files.exists(file) ? Files.readAllBytes(file) : null;
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to read " + key + " from " + location + ": " + e.getMessage(), e);
+    }
+    if (compressed == null) {
+      throw new IllegalStateException("Nothing recorded for " + key + " in " + location);
+    }
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+      return mapper.readValue(in, type);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to decode " + key + " from " + location + ": " + e.getMessage(), e);
+    }
+  }
+
+  private String[] bucketAndPrefix() {
+    String path = location.substring(S3_SCHEME.length());
+    int slash = path.indexOf('/');
+    if (slash < 0) {
+      return new String[] {path, ""};
+    }
+    String prefix = path.substring(slash + 1);
+    return new String[] {path.substring(0, slash), prefix.isEmpty() || prefix.endsWith("/") ? prefix : prefix + "/"};
+  }
+
+  private static String fileName(String key) {
+    return key + ".json.gz";
+  }
+}
@@ -0,0 +1,109 @@
+package com.darylmathison.market.io;
+
+import com.darylmathison.market.model.StorageStockBar;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+/**
+ * Writes bars as one gzip compressed CSV stream in the layout every price file in the data bucket
+ * uses, and names those files. SegmentedPriceCsvWriter writes the same layout as segments that can
+ * be compressed in parallel.
+ */
+public class PriceCsvWriter implements PriceFileWriter {
+
+  static final int GZIP_BUFFER_SIZE = 64 * 1024;
+  static final String[] HEADER = {"symbol", "timestamp", "open", "high", "low", "close", "volume"};
+  private static final DateTimeFormatter KEY_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+  private final CSVPrinter printer;
+  private int records;
+
+  public PriceCsvWriter(OutputStream out) throws IOException {
+    OutputStreamWriter writer = new OutputStreamWriter(new GZIPOutputStream(out, GZIP_BUFFER_SIZE),
+        StandardCharsets.UTF_8);
+    this.printer = new CSVPrinter(writer, CSVFormat.DEFAULT.builder().setHeader(HEADER).get());
+  }
+
+  @Override
+  public void write(List<StorageStockBar> bars) throws IOException {
+    printRecords(printer, bars);
+    records += bars.size();
+  }
+
+  @Override
+  public int records() {
+    return records;
+  }
+
+  /**
+   * Finishes the gzip stream and closes the underlying stream.
+   */
+  @Override
+  public void close() throws IOException {
+    printer.close();
+  }
+
+  static void printRecords(CSVPrinter printer, List<StorageStockBar> bars) throws IOException {
+    for (StorageStockBar bar : bars) {
+      printer.printRecord(
+          bar.getSymbol(),
+          bar.getTimestamp(),
+          bar.getOpen(),
+          bar.getHigh(),
+          bar.getLow(),
+          bar.getClose(),
+          bar.getVolume()
+      );
+    }
+  }
+
+  /**
+   * Encodes a list of bars into a compressed CSV byte array.
+   */
+  public static byte[] encode(List<StorageStockBar> bars) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (PriceCsvWriter writer = new PriceCsvWriter(out)) {
+      writer.write(bars);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Key in the format "stock_prices_YYYY-MM-DD_{batch number}.csv.gz".
+   */
+  public static String objectKey(LocalDate date, int batchNumber) {
+    return String.format("stock_prices_%s_%d.csv.gz", date.format(KEY_DATE_FORMAT), batchNumber);
+  }
+
+  /**
+   * Key in the format "stock_prices_YYYY-MM-DD_{batch number}_{symbol set}.csv.gz", for files
+   * that different symbol lists may write for the same date and batch number.
+   */
+  public static String objectKey(LocalDate date, int batchNumber, String symbolSet) {
+    return String.format("stock_prices_%s_%d_%s.csv.gz", date.format(KEY_DATE_FORMAT), batchNumber, symbolSet);
+  }
+
+  /**
+   * Key for a once per run file in the format "stock_prices_{label}_YYYY-MM-DD.csv.gz".
+   */
+  public static String objectKey(String label, LocalDate date) {
+    return String.format("stock_prices_%s_%s.csv.gz", label, date.format(KEY_DATE_FORMAT));
+  }
+
+  /**
+   * Key for a rollup in the format "stock_prices_{timeframe}_YYYY-MM-DD_{batch number}.csv.gz".
+   */
+  public static String objectKey(String timeframeLabel, LocalDate date, int batchNumber) {
+    return String.format("stock_prices_%s_%s_%d.csv.gz", timeframeLabel, date.format(KEY_DATE_FORMAT),
+        batchNumber);
+  }
+}
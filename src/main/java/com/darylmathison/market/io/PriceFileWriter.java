@@ -0,0 +1,20 @@
+package com.darylmathison.market.io;
+
+import com.darylmathison.market.model.StorageStockBar;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes pages of bars as one gzip compressed CSV price file. Closing finishes the file and closes
+ * the stream it was written to.
+ */
+public interface PriceFileWriter extends Closeable {
+
+  void write(List<StorageStockBar> bars) throws IOException;
+
+  /**
+   * Number of bars written so far.
+   */
+  int records();
+}
@@ -0,0 +1,176 @@
+package com.darylmathison.market.io;
+
+import com.darylmathison.market.model.StorageStockBar;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+/**
+ * Writes a price file in segments of exactly segmentBars bars, the last one shorter. Each segment
+ * becomes its own gzip member and the members are written in order; gzip readers decompress
+ * concatenated members as one stream, so the file reads the same as one from PriceCsvWriter. Only
+ * the first member carries the CSV header. The cuts depend only on the bars and segmentBars, never
+ * on page sizes or the number of workers, so the same bars always give the same bytes and an
+ * unchanged file keeps its checksum.
+ *
+ * <p>The writer holds complete segments until every worker in the pool can be handed one, or until
+ * they reach maxPendingBytes, and compresses them in parallel. On a pool of one worker it
+ * compresses each segment on the calling thread as soon as it is complete.
+ */
+public class SegmentedPriceCsvWriter implements PriceFileWriter {
+
+  /** About what a decoded bar holds on the heap: the bar, its timestamp and its symbol string. */
+  static final long BAR_HEAP_BYTES = 200;
+
+  private final OutputStream out;
+  private final ForkJoinPool pool;
+  private final int segmentBars;
+  private final int flushBars;
+  private final List<StorageStockBar> pending = new ArrayList<>();
+  private boolean headerWritten;
+  private int records;
+
+  /**
+   * @param pool Workers for the segments
+   * @param maxPendingBytes Heap the bars held for the workers may take, at least one segment's worth
+   */
+  public SegmentedPriceCsvWriter(OutputStream out, ForkJoinPool pool, int segmentBars, long maxPendingBytes) {
+    this.out = out;
+    this.pool = pool;
+    this.segmentBars = segmentBars;
+    long byWorkers = (long) segmentBars * pool.getParallelism();
+    long byBytes = Math.max(1, maxPendingBytes / BAR_HEAP_BYTES / segmentBars) * segmentBars;
+    this.flushBars = (int) Math.min(Math.min(byWorkers, byBytes), Integer.MAX_VALUE);
+  }
+
+  @Override
+  public void write(List<StorageStockBar> bars) throws IOException {
+    pending.addAll(bars);
+    if (pending.size() >= flushBars) {
+      writeSegments(false);
+    }
+    records += bars.size();
+  }
+
+  @Override
+  public int records() {
+    return records;
+  }
+
+  /**
+   * Writes the remaining segments and closes the underlying stream.
+   */
+  @Override
+  public void close() throws IOException {
+    try (out) {
+      // An empty file still gets its header
+      if (!pending.isEmpty() || !headerWritten) {
+        writeSegments(true);
+      }
+    }
+  }
+
+  /**
+   * Compresses and writes the complete segments, or every pending bar when the file is finished.
+   * An incomplete segment stays pending so the next page can fill it.
+   */
+  private void writeSegments(boolean finished) throws IOException {
+    List<StorageStockBar> ready = pending.subList(0,
+        finished ? pending.size() : pending.size() - pending.size() % segmentBars);
+    List<List<StorageStockBar>> segments = segments(ready, segmentBars);
+    byte[][] members = new byte[Math.max(segments.size(), 1)][];
+    EncodeTask task = new EncodeTask(segments, members, 0, members.length, !headerWritten);
+    try {
+      if (pool.getParallelism() == 1) {
+        task.encodeEach();
+      } else {
+        pool.invoke(task);
+      }
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    for (byte[] member : members) {
+      out.write(member);
+    }
+    headerWritten = true;
+    ready.clear();
+  }
+
+  /**
+   * Cuts bars into runs of segmentBars bars, the last one shorter.
+   */
+  static List<List<StorageStockBar>> segments(List<StorageStockBar> bars, int segmentBars) {
+    List<List<StorageStockBar>> segments = new ArrayList<>();
+    for (int start = 0; start < bars.size(); start += segmentBars) {
+      segments.add(bars.subList(start, Math.min(bars.size(), start + segmentBars)));
+    }
+    return segments;
+  }
+
+  private static byte[] encodeMember(List<StorageStockBar> bars, boolean header) throws IOException {
+    ByteArrayOutputStream member = new ByteArrayOutputStream();
+    CSVFormat format = header ? CSVFormat.DEFAULT.builder().setHeader(PriceCsvWriter.HEADER).get() : CSVFormat.DEFAULT;
+    try (CSVPrinter segmentPrinter = new CSVPrinter(new OutputStreamWriter(
+        new GZIPOutputStream(member, PriceCsvWriter.GZIP_BUFFER_SIZE), StandardCharsets.UTF_8), format)) {
+      PriceCsvWriter.printRecords(segmentPrinter, bars);
+    }
+    return member.toByteArray();
+  }
+
+  /**
+   * Splits the segment range in half until one segment is left, and encodes it into its slot.
+   */
+  private static class EncodeTask extends RecursiveAction {
+    private final List<List<StorageStockBar>> segments;
+    private final byte[][] members;
+    private final int from;
+    private final int to;
+    private final boolean header;
+
+    EncodeTask(List<List<StorageStockBar>> segments, byte[][] members, int from, int to, boolean header) {
+      this.segments = segments;
+      this.members = members;
+      this.from = from;
+      this.to = to;
+      this.header = header;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > 1) {
+        int middle = (from + to) >>> 1;
+        invokeAll(new EncodeTask(segments, members, from, middle, header),
+            new EncodeTask(segments, members, middle, to, header));
+        return;
+      }
+      encode(from);
+    }
+
+    /**
+     * Encodes every segment in the range on the calling thread.
+     */
+    void encodeEach() {
+      for (int index = from; index < to; index++) {
+        encode(index);
+      }
+    }
+
+    private void encode(int index) {
+      try {
+        members[index] = encodeMember(segments.isEmpty() ? List.of() : segments.get(index), header && index == 0);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+}
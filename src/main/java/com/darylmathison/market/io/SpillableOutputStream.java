@@ -0,0 +1,137 @@
+package com.darylmathison.market.io;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * Buffers output in memory until it passes a threshold, then moves it to a temporary file and
+ * keeps writing there. Lambda's /tmp ephemeral storage is much larger than a small function's
+ * heap, so a spike in data volume costs disk writes instead of an OutOfMemoryError. A SHA-256 of
+ * the bytes is kept as they are written, so an upload need not read them again to checksum them.
+ */
+public class SpillableOutputStream extends OutputStream {
+
+  private static final int FILE_BUFFER_SIZE = 64 * 1024;
+
+  private final long spillThresholdBytes;
+  private final Path spillDirectory;
+  private final MessageDigest digest;
+  private byte[] sha256;
+  private ChunkedOutputStream memory;
+  private OutputStream file;
+  private Path path;
+  private long size;
+  private boolean closed;
+
+  public SpillableOutputStream(long spillThresholdBytes, Path spillDirectory, ByteBufferPool pool) {
+    this.spillThresholdBytes = spillThresholdBytes;
+    this.spillDirectory = spillDirectory;
+    this.memory = new ChunkedOutputStream(pool);
+    try {
+      this.digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    target(1).write(b);
+    digest.update((byte) b);
+    size++;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    target(len).write(b, off, len);
+    digest.update(b, off, len);
+    size += len;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (file != null) {
+      file.flush();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!closed && file != null) {
+      file.close();
+    }
+    closed = true;
+  }
+
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Closes the stream and returns the SHA-256 of everything written to it.
+   */
+  public byte[] sha256() throws IOException {
+    close();
+    if (sha256 == null) {
+      sha256 = digest.digest();
+    }
+    return sha256.clone();
+  }
+
+  public boolean isSpilled() {
+    return path != null;
+  }
+
+  /**
+   * The spill file, or null while the data is still in memory.
+   */
+  public Path getPath() {
+    return path;
+  }
+
+  /**
+   * Read only views of the buffered chunks. Only available while the data has not been spilled,
+   * and only until delete is called.
+   */
+  public List<ByteBuffer> getChunks() {
+    if (isSpilled()) {
+      throw new IllegalStateException("Output was spilled to " + path);
+    }
+    return memory.chunks();
+  }
+
+  /**
+   * Returns the buffered chunks to their pool and removes the spill file, if any.
+   */
+  public void delete() throws IOException {
+    close();
+    if (memory != null) {
+      memory.release();
+    }
+    if (path != null) {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  private OutputStream target(int incoming) throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    if (file == null && size + incoming > spillThresholdBytes) {
+      Files.createDirectories(spillDirectory);
+      path = Files.createTempFile(spillDirectory, "spill-", ".tmp");
+      file = new BufferedOutputStream(Files.newOutputStream(path), FILE_BUFFER_SIZE);
+      memory.writeTo(file);
+      memory.release();
+      memory = null;
+    }
+    return file != null ? file : memory;
+  }
+}
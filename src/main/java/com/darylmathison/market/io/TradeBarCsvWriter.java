@@ -0,0 +1,57 @@
+package com.darylmathison.market.io;
+
+import com.darylmathison.market.model.TradeBar;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+/**
+ * Writes bars aggregated from trades as gzip compressed CSV: the price file columns followed by
+ * VWAP and trade count, with volume in shares.
+ */
+public class TradeBarCsvWriter implements Closeable {
+
+  private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+  private final CSVPrinter printer;
+  private int records;
+
+  public TradeBarCsvWriter(OutputStream out) throws IOException {
+    OutputStreamWriter writer = new OutputStreamWriter(new GZIPOutputStream(out, GZIP_BUFFER_SIZE),
+        StandardCharsets.UTF_8);
+    this.printer = new CSVPrinter(writer, CSVFormat.DEFAULT.builder()
+        .setHeader("symbol", "timestamp", "open", "high", "low", "close", "volume", "vwap", "trades").get());
+  }
+
+  public void write(TradeBar bar) throws IOException {
+    printer.printRecord(
+        bar.getSymbol(),
+        bar.getTimestamp(),
+        bar.getOpen(),
+        bar.getHigh(),
+        bar.getLow(),
+        bar.getClose(),
+        bar.getVolume(),
+        bar.getVwap(),
+        bar.getTradeCount()
+    );
+    records++;
+  }
+
+  public int records() {
+    return records;
+  }
+
+  /**
+   * Finishes the gzip stream and closes the underlying stream.
+   */
+  @Override
+  public void close() throws IOException {
+    printer.close();
+  }
+}
@@ -0,0 +1,19 @@
+package com.darylmathison.market.model;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Progress of one backfill, kept in the data bucket so an interrupted backfill can be restarted
+ * without repeating finished tasks.
+ */
+@lombok.Data
+public class BackfillManifest {
+  private String startDate;
+  private String endDate;
+  /** Fingerprint of the symbol list and chunk size; task ids only mean something for the same split. */
+  private String taskLayout;
+  /** Ids of finished tasks in the form "YYYY-MM/{chunk number}". */
+  private Set<String> completedTasks = new TreeSet<>();
+  private long recordsWritten;
+}
@@ -0,0 +1,15 @@
+package com.darylmathison.market.model;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * A historical range to load. When no symbols are given the configured symbols file is used.
+ */
+@lombok.Data
+@lombok.Builder
+public class BackfillRequest {
+  private LocalDate startDate;
+  private LocalDate endDate;
+  private List<String> symbols;
+}
@@ -0,0 +1,17 @@
+package com.darylmathison.market.model;
+
+import java.util.List;
+
+/**
+ * The symbols written to one output file, split into the request chunks sent to Alpaca.
+ */
+@lombok.Data
+@lombok.Builder
+public class OutputBatch {
+  private List<List<String>> requestChunks;
+  private long estimatedBars;
+
+  public int symbolCount() {
+    return requestChunks.stream().mapToInt(List::size).sum();
+  }
+}
@@ -0,0 +1,13 @@
+package com.darylmathison.market.model;
+
+/**
+ * Whether Alpaca responses are recorded to, or replayed from, the page cache.
+ */
+public enum PageCacheMode {
+  /** Every page comes from Alpaca and nothing is kept. */
+  OFF,
+  /** Every page comes from Alpaca and is also written to the cache. */
+  RECORD,
+  /** Every page comes from the cache, without a single API call; a page missing from it fails the run. */
+  REPLAY
+}
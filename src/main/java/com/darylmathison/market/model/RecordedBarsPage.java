@@ -0,0 +1,27 @@
+package com.darylmathison.market.model;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One page of a bars response as Alpaca returned it, every field included, so a replayed page can
+ * be mapped again by a later version of the code.
+ */
+@lombok.Data
+public class RecordedBarsPage {
+  private Map<String, List<RecordedBar>> bars;
+  private String nextPageToken;
+
+  @lombok.Data
+  public static class RecordedBar {
+    /** ISO-8601 timestamp as the API returned it. */
+    private String timestamp;
+    private Double open;
+    private Double high;
+    private Double low;
+    private Double close;
+    private Double vwap;
+    private Long volume;
+    private Long tradeCount;
+  }
+}
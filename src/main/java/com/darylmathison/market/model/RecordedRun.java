@@ -0,0 +1,15 @@
+package com.darylmathison.market.model;
+
+import java.util.List;
+
+/**
+ * The inputs a recorded run planned its requests from. Replaying with the same inputs makes the
+ * same requests, so every page is found in the cache.
+ */
+@lombok.Data
+public class RecordedRun {
+  /** ISO-8601 time the run treated as now. */
+  private String asOf;
+  private List<String> symbols;
+  private SymbolStats previousStats;
+}
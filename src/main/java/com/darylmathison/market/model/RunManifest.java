@@ -0,0 +1,16 @@
+package com.darylmathison.market.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The objects one download run wrote, with their checksums and versions. Readers that start from
+ * the pointer to the latest manifest see a complete run, even while a later run is halfway through
+ * overwriting the same keys. The versions it pins stay readable for manifest_retention_days
+ * (terraform/s3.tf) after a later run replaces them; older manifests may point at deleted data.
+ */
+@lombok.Data
+public class RunManifest {
+  private String date;
+  private List<UploadResult> objects = new ArrayList<>();
+}
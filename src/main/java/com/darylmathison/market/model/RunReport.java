@@ -0,0 +1,13 @@
+package com.darylmathison.market.model;
+
+/**
+ * Outcome of a download run, returned to the caller of the Lambda function.
+ */
+@lombok.Data
+@lombok.Builder
+public class RunReport {
+  private int recordsProcessed;
+  private ValidationReport validation;
+  /** Manifest listing the objects the run wrote. */
+  private String manifestKey;
+}
@@ -0,0 +1,11 @@
+package com.darylmathison.market.model;
+
+/**
+ * Which part of a trading session price data is requested for.
+ */
+public enum SessionHours {
+  /** 9:30 AM to 4:00 PM New York time, or to the early close. */
+  REGULAR,
+  /** 4:00 AM to 8:00 PM New York time, or to 5:00 PM on early close days. */
+  EXTENDED
+}
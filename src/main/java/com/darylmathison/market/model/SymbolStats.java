@@ -0,0 +1,26 @@
+package com.darylmathison.market.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Observations carried from one run to the next, used to plan request chunks and output files.
+ */
+@lombok.Data
+public class SymbolStats {
+  private Map<String, Integer> barCounts = new HashMap<>();
+  /** Consecutive runs without a single bar, only for symbols with at least one such run. */
+  private Map<String, Integer> zeroRuns = new HashMap<>();
+  /** ISO date of the last sweep over inactive symbols. */
+  private String lastProbeDate;
+  private long barsWritten;
+  private long bytesWritten;
+
+  /**
+   * Average compressed bytes per bar written by the previous run, or the given default when
+   * nothing has been written yet.
+   */
+  public double bytesPerBar(double defaultBytesPerBar) {
+    return barsWritten > 0 ? (double) bytesWritten / barsWritten : defaultBytesPerBar;
+  }
+}
@@ -0,0 +1,13 @@
+package com.darylmathison.market.model;
+
+import java.time.ZonedDateTime;
+
+/**
+ * A half open [start, end) request range.
+ */
+@lombok.Data
+@lombok.AllArgsConstructor
+public class TimeWindow {
+  private ZonedDateTime start;
+  private ZonedDateTime end;
+}
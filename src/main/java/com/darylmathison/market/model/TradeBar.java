@@ -0,0 +1,22 @@
+package com.darylmathison.market.model;
+
+import java.time.ZonedDateTime;
+
+/**
+ * A bar built locally from trades, with the share volume, VWAP and trade count that Alpaca bars
+ * do not carry through to the price files.
+ */
+@lombok.Data
+@lombok.Builder
+public class TradeBar {
+  private String symbol;
+  /** Start of the interval for time bars, otherwise the time of the first trade. */
+  private ZonedDateTime timestamp;
+  private double open;
+  private double high;
+  private double low;
+  private double close;
+  private long volume;
+  private double vwap;
+  private int tradeCount;
+}
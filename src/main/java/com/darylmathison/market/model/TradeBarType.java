@@ -0,0 +1,13 @@
+package com.darylmathison.market.model;
+
+/**
+ * How trades are grouped into bars on the trade ingest path.
+ */
+public enum TradeBarType {
+  /** A bar per fixed clock interval of trades.bar-size seconds. */
+  TIME,
+  /** A bar per trades.bar-size trades. */
+  TICK,
+  /** A bar per trades.bar-size shares traded. */
+  VOLUME
+}
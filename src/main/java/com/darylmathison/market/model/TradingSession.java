@@ -0,0 +1,23 @@
+package com.darylmathison.market.model;
+
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+
+@lombok.Data
+@lombok.Builder
+public class TradingSession {
+  private LocalDate date;
+  private ZonedDateTime regularOpen;
+  private ZonedDateTime regularClose;
+  private ZonedDateTime extendedOpen;
+  private ZonedDateTime extendedClose;
+  private boolean earlyClose;
+
+  public ZonedDateTime open(SessionHours hours) {
+    return hours == SessionHours.REGULAR ? regularOpen : extendedOpen;
+  }
+
+  public ZonedDateTime close(SessionHours hours) {
+    return hours == SessionHours.REGULAR ? regularClose : extendedClose;
+  }
+}
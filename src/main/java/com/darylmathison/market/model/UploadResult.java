@@ -0,0 +1,20 @@
+package com.darylmathison.market.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Where an upload landed. An object whose stored checksum already matched is not sent again, and
+ * then the existing object's ETag and version are reported.
+ */
+@lombok.Data
+@lombok.Builder
+public class UploadResult {
+  private String key;
+  /** Base64 SHA-256 of the content, as S3 reports it for x-amz-checksum-sha256. */
+  private String checksum;
+  private String eTag;
+  /** Version id when the bucket is versioned, otherwise null. */
+  private String versionId;
+  @JsonIgnore
+  private boolean skipped;
+}
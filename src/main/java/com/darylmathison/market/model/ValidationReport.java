@@ -0,0 +1,32 @@
+package com.darylmathison.market.model;
+
+/**
+ * Counts from the validation stage. Rejected bars are quarantined; gaps and missing sessions are
+ * only counted, since thinly traded symbols legitimately skip minutes and days.
+ */
+@lombok.Data
+public class ValidationReport {
+  private long barsChecked;
+  private long barsAccepted;
+  /** No symbol or no timestamp. */
+  private long missingFields;
+  /** A symbol the run did not request. */
+  private long unknownSymbols;
+  /** NaN or infinite prices or volume. */
+  private long nonFinite;
+  /** High below low, open or close outside the range, non-positive prices or negative volume. */
+  private long ohlcViolations;
+  /** Timestamps earlier than the symbol's previous bar. */
+  private long outOfOrder;
+  /** Timestamps equal to the symbol's previous bar, including across pages. */
+  private long duplicates;
+  /** Bar slots skipped between consecutive bars of a symbol within one session. */
+  private long gapSlots;
+  /** Requested sessions without a single bar, summed over the requested symbols. */
+  private long missingSessions;
+  private String quarantineKey;
+
+  public long getQuarantined() {
+    return barsChecked - barsAccepted;
+  }
+}
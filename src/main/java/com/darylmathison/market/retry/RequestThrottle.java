@@ -0,0 +1,92 @@
+package com.darylmathison.market.retry;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.logging.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Process wide pacing for Alpaca requests that acts as a soft circuit breaker. While requests
+ * succeed they go out as fast as the configured minimum interval allows. When failures cluster
+ * inside the error window the spacing between requests is doubled, up to a ceiling, and it is
+ * halved again by every success until the throttle has closed.
+ */
+@Component
+public class RequestThrottle {
+
+  private static final Logger logger = Logger.getLogger(RequestThrottle.class.getName());
+
+  @Value("${alpaca.throttle.min-interval-ms:0}")
+  private long minIntervalMillis;
+
+  @Value("${alpaca.throttle.slow-interval-ms:250}")
+  private long slowIntervalMillis;
+
+  @Value("${alpaca.throttle.max-interval-ms:5000}")
+  private long maxIntervalMillis;
+
+  @Value("${alpaca.throttle.error-threshold:3}")
+  private int errorThreshold;
+
+  @Value("${alpaca.throttle.error-window-ms:30000}")
+  private long errorWindowMillis;
+
+  private final Deque<Long> recentFailures = new ArrayDeque<>();
+  private long penaltyMillis;
+  private long nextSlot;
+
+  /**
+   * Blocks until the caller may send its next request.
+   */
+  public void acquire() throws InterruptedException {
+    long wait = reserveSlot();
+    if (wait > 0) {
+      Thread.sleep(wait);
+    }
+  }
+
+  public synchronized void recordSuccess() {
+    if (penaltyMillis > 0) {
+      penaltyMillis = penaltyMillis / 2 < slowIntervalMillis ? 0 : penaltyMillis / 2;
+      if (penaltyMillis == 0) {
+        logger.info("Request throttle closed");
+      }
+    }
+  }
+
+  public synchronized void recordFailure() {
+    long now = System.currentTimeMillis();
+    recentFailures.addLast(now);
+    while (!recentFailures.isEmpty() && recentFailures.peekFirst() < now - errorWindowMillis) {
+      recentFailures.removeFirst();
+    }
+    if (recentFailures.size() >= errorThreshold) {
+      penaltyMillis = Math.min(maxIntervalMillis, Math.max(slowIntervalMillis, penaltyMillis * 2));
+      logger.warning(recentFailures.size() + " request failures in the last " + errorWindowMillis
+          + " ms, spacing requests " + currentIntervalMillis() + " ms apart");
+    }
+  }
+
+  /**
+   * Changes the spacing requests get while the throttle is closed.
+   *
+   * @return The previous minimum interval, for the caller to restore
+   */
+  public synchronized long setMinIntervalMillis(long minIntervalMillis) {
+    long previous = this.minIntervalMillis;
+    this.minIntervalMillis = minIntervalMillis;
+    return previous;
+  }
+
+  public synchronized long currentIntervalMillis() {
+    return Math.max(minIntervalMillis, penaltyMillis);
+  }
+
+  private synchronized long reserveSlot() {
+    long now = System.currentTimeMillis();
+    long slot = Math.max(now, nextSlot);
+    nextSlot = slot + currentIntervalMillis();
+    return slot - now;
+  }
+}
@@ -0,0 +1,120 @@
+package com.darylmathison.market.retry;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+import net.jacobpeterson.alpaca.rest.AlpacaClientException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decides whether a failed Alpaca request should be retried and how long to wait before the next
+ * attempt. Delays use exponential backoff with full jitter so parallel callers do not retry in
+ * lock step.
+ */
+@Component
+public class RetryPolicy {
+
+  private static final Logger logger = Logger.getLogger(RetryPolicy.class.getName());
+  private static final int TOO_MANY_REQUESTS = 429;
+  private static final int REQUEST_TIMEOUT = 408;
+
+  @Value("${alpaca.retry.max-attempts:5}")
+  private int maxAttempts;
+
+  @Value("${alpaca.retry.base-delay-ms:500}")
+  private long baseDelayMillis;
+
+  @Value("${alpaca.retry.max-delay-ms:30000}")
+  private long maxDelayMillis;
+
+  /**
+   * Minimum wait after a 429. alpaca-java does not expose response headers, so this stands in for
+   * the Retry-After value of Alpaca's per-minute rate limit window.
+   */
+  @Value("${alpaca.retry.rate-limit-wait-ms:10000}")
+  private long rateLimitWaitMillis;
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /**
+   * Sends a request through the throttle, retrying transient failures until it succeeds or runs
+   * out of attempts. The request is sent again as it is, so a paged request retries from the same
+   * page token rather than from the first page.
+   *
+   * @param description Names the request and its page in the retry warnings
+   * @return The request's response
+   * @throws Exception The last failure, once it is not retryable or the attempts are used up
+   */
+  public <T> T execute(RequestThrottle throttle, String description, Callable<T> request) throws Exception {
+    int attempt = 0;
+    while (true) {
+      throttle.acquire();
+      try {
+        T response = request.call();
+        throttle.recordSuccess();
+        return response;
+      } catch (Exception e) {
+        throttle.recordFailure();
+        attempt++;
+        if (attempt >= maxAttempts || !isRetryable(e)) {
+          throw e;
+        }
+        long delay = delayMillis(attempt, e);
+        logger.warning(description + " failed (attempt " + attempt + "), retrying in " + delay + " ms: "
+            + e.getMessage());
+        Thread.sleep(delay);
+      }
+    }
+  }
+
+  /**
+   * Transport failures, timeouts, rate limiting and server errors are retryable. Any other client
+   * error (bad symbol, bad credentials) will fail the same way again and is not.
+   */
+  public boolean isRetryable(Exception e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof AlpacaClientException alpacaException) {
+        Integer status = alpacaException.getResponseStatusCode();
+        if (status != null) {
+          return status == TOO_MANY_REQUESTS || status == REQUEST_TIMEOUT || status >= 500;
+        }
+      } else if (cause instanceof IOException) {
+        return true;
+      }
+    }
+    return e instanceof AlpacaClientException;
+  }
+
+  /**
+   * Delay before the next attempt.
+   *
+   * @param attempt The number of attempts that have failed so far (1 based)
+   * @param e       The failure of the last attempt
+   * @return Milliseconds to wait
+   */
+  public long delayMillis(int attempt, Exception e) {
+    long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 20));
+    long delay = ceiling > 0 ? ThreadLocalRandom.current().nextLong(ceiling + 1) : 0;
+    if (isRateLimited(e)) {
+      delay = Math.max(delay, rateLimitWaitMillis);
+    }
+    return delay;
+  }
+
+  /**
+   * Whether the failure is a 429, looking through the causes as {@link #isRetryable} does, since
+   * the client can wrap the response's exception.
+   */
+  private boolean isRateLimited(Exception e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof AlpacaClientException alpacaException && alpacaException.getResponseStatusCode() != null) {
+        return alpacaException.getResponseStatusCode() == TOO_MANY_REQUESTS;
+      }
+    }
+    return false;
+  }
+}
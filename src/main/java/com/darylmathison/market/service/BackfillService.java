@@ -0,0 +1,7 @@
+package com.darylmathison.market.service;
+
+import com.darylmathison.market.model.BackfillRequest;
+
+public interface BackfillService {
+  int backfill(BackfillRequest request);
+}
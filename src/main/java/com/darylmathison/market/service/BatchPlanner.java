@@ -0,0 +1,9 @@
+package com.darylmathison.market.service;
+
+import com.darylmathison.market.model.OutputBatch;
+import com.darylmathison.market.model.SymbolStats;
+import java.util.List;
+
+public interface BatchPlanner {
+  List<OutputBatch> plan(List<String> symbols, SymbolStats symbolStats);
+}
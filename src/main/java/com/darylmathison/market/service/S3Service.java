@@ -1,5 +1,8 @@
 package com.darylmathison.market.service;
 
+import com.darylmathison.market.model.UploadResult;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.List;
 
 public interface S3Service {
@@ -7,5 +10,8 @@ public interface S3Service {
 
   @SuppressWarnings( "SameParameterValue")
   byte[] getObject(String bucket, String key);
-  void putObject(String bucket, String key, byte[] data);
+  byte[] getObjectIfExists(String bucket, String key);
+  UploadResult putObject(String bucket, String key, byte[] data);
+  UploadResult putObject(String bucket, String key, Path file, byte[] sha256);
+  UploadResult putObject(String bucket, String key, List<ByteBuffer> chunks, long length, byte[] sha256);
 }
@@ -1,5 +1,7 @@
 package com.darylmathison.market.service;
 
+import com.darylmathison.market.model.RunReport;
+
 public interface StockPriceService {
-  int getPriceData();
+  RunReport getPriceData();
 }
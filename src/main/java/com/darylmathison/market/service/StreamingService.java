@@ -0,0 +1,7 @@
+package com.darylmathison.market.service;
+
+import java.time.Duration;
+
+public interface StreamingService {
+  int stream(Duration duration);
+}
@@ -0,0 +1,9 @@
+package com.darylmathison.market.service;
+
+import com.darylmathison.market.model.SymbolStats;
+
+public interface SymbolStatsService {
+  SymbolStats load();
+
+  void save(SymbolStats symbolStats);
+}
@@ -0,0 +1,7 @@
+package com.darylmathison.market.service;
+
+import java.util.List;
+
+public interface TradeIngestService {
+  int ingest(List<String> symbols);
+}
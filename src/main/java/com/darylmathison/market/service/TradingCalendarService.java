@@ -0,0 +1,20 @@
+package com.darylmathison.market.service;
+
+import com.darylmathison.market.model.SessionHours;
+import com.darylmathison.market.model.TimeWindow;
+import com.darylmathison.market.model.TradingSession;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+public interface TradingCalendarService {
+  TradingSession getSession(LocalDate date);
+
+  List<TradingSession> completedSessions(int count, ZonedDateTime asOf, SessionHours hours);
+
+  List<TradingSession> sessionsBetween(LocalDate from, LocalDate to, ZonedDateTime asOf, SessionHours hours);
+
+  List<TimeWindow> requestWindows(List<TradingSession> sessions, SessionHours hours);
+
+  void refresh();
+}
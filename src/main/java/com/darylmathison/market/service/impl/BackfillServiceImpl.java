@@ -0,0 +1,238 @@
+package com.darylmathison.market.service.impl;
+
+import com.darylmathison.market.dto.PriceDataDTO;
+import com.darylmathison.market.io.MemoryMonitor;
+import com.darylmathison.market.io.PriceCsvWriter;
+import com.darylmathison.market.io.SpillableOutputStream;
+import com.darylmathison.market.model.BackfillManifest;
+import com.darylmathison.market.model.BackfillRequest;
+import com.darylmathison.market.model.SessionHours;
+import com.darylmathison.market.model.TimeWindow;
+import com.darylmathison.market.model.TradingSession;
+import com.darylmathison.market.retry.RequestThrottle;
+import com.darylmathison.market.service.BackfillService;
+import com.darylmathison.market.service.S3Service;
+import com.darylmathison.market.service.TradingCalendarService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Loads a historical date range by splitting it into one task per symbol chunk and calendar
+ * month. Tasks run in parallel and share the process wide request throttle, which is held to
+ * backfill.min-request-interval-ms for the length of the backfill, so the workers together stay
+ * inside Alpaca's rate limit without slowing the daily run down. Every finished task is recorded in a manifest in the
+ * data bucket, and running the same backfill again skips what is already there.
+ */
+@Service
+public class BackfillServiceImpl implements BackfillService {
+
+    private static final Logger logger = Logger.getLogger(BackfillServiceImpl.class.getName());
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final ZoneId MARKET_ZONE = ZoneId.of("America/New_York");
+
+    @Value("${data.bucket.name}")
+    private String dataBucketName;
+
+    @Value("${data.symbols.file}")
+    private String symbolsFileKey;
+
+    @Value("${history.session-hours:EXTENDED}")
+    private SessionHours sessionHours;
+
+    @Value("${backfill.symbols-per-task:500}")
+    private int symbolsPerTask;
+
+    @Value("${backfill.parallelism:4}")
+    private int parallelism;
+
+    @Value("${backfill.batch-number-offset:1000}")
+    private int batchNumberOffset;
+
+    @Value("${backfill.manifest-prefix:state/backfill/}")
+    private String manifestPrefix;
+
+    @Value("${backfill.min-request-interval-ms:300}")
+    private long minRequestIntervalMillis;
+
+    private final PriceDataDTO priceDataDTO;
+    private final S3Service s3Service;
+    private final TradingCalendarService tradingCalendarService;
+    private final MemoryMonitor memoryMonitor;
+    private final RequestThrottle requestThrottle;
+
+    private record BackfillTask(YearMonth month, int chunkNumber, List<String> symbols) {
+        String id() {
+            return month + "/" + chunkNumber;
+        }
+    }
+
+    public BackfillServiceImpl(PriceDataDTO priceDataDTO, S3Service s3Service,
+                               TradingCalendarService tradingCalendarService, MemoryMonitor memoryMonitor,
+                               RequestThrottle requestThrottle) {
+        this.priceDataDTO = priceDataDTO;
+        this.s3Service = s3Service;
+        this.tradingCalendarService = tradingCalendarService;
+        this.memoryMonitor = memoryMonitor;
+        this.requestThrottle = requestThrottle;
+    }
+
+    /**
+     * Downloads the requested range and stores it in S3 with the same key layout as the daily run.
+     * Each file is named after the last session in its month, with the chunk number added to
+     * backfill.batch-number-offset so it cannot overwrite a daily run's file for the same date, and
+     * with a fingerprint of the symbol list so a backfill of other symbols over the same month
+     * cannot overwrite this one's.
+     *
+     * @return Number of price records written by this invocation
+     */
+    @Override
+    public int backfill(BackfillRequest request) {
+        try {
+            LocalDate startDate = request.getStartDate();
+            LocalDate endDate = request.getEndDate();
+            if (startDate == null || endDate == null || startDate.isAfter(endDate)) {
+                throw new IllegalArgumentException("Invalid backfill range " + startDate + " to " + endDate);
+            }
+
+            List<String> symbols = request.getSymbols() == null || request.getSymbols().isEmpty()
+                ? s3Service.fetchList(dataBucketName, symbolsFileKey)
+                : request.getSymbols();
+            symbols = symbols.stream().distinct().sorted().toList();
+            priceDataDTO.prepare();
+
+            List<List<String>> chunks = new ArrayList<>();
+            for (int i = 0; i < symbols.size(); i += symbolsPerTask) {
+                chunks.add(symbols.subList(i, Math.min(i + symbolsPerTask, symbols.size())));
+            }
+
+            String manifestKey = manifestPrefix + startDate + "_" + endDate + ".json";
+            String symbolSet = Integer.toHexString(symbols.hashCode());
+            String taskLayout = symbolsPerTask + ":" + symbolSet;
+            BackfillManifest manifest = loadManifest(manifestKey, startDate, endDate, taskLayout);
+
+            List<BackfillTask> tasks = new ArrayList<>();
+            for (YearMonth month = YearMonth.from(startDate); !month.isAfter(YearMonth.from(endDate)); month = month.plusMonths(1)) {
+                for (int i = 0; i < chunks.size(); i++) {
+                    BackfillTask task = new BackfillTask(month, i + 1, chunks.get(i));
+                    if (!manifest.getCompletedTasks().contains(task.id())) {
+                        tasks.add(task);
+                    }
+                }
+            }
+            logger.info("Backfilling " + symbols.size() + " symbols from " + startDate + " to " + endDate + ": "
+                       + tasks.size() + " tasks to run, " + manifest.getCompletedTasks().size() + " already done");
+
+            ZonedDateTime asOf = ZonedDateTime.now(MARKET_ZONE);
+            int totalRecords = 0;
+            int failed = 0;
+            long previousInterval = requestThrottle.setMinIntervalMillis(minRequestIntervalMillis);
+            try (ExecutorService workers = Executors.newFixedThreadPool(parallelism)) {
+                List<Future<Integer>> results = new ArrayList<>();
+                for (BackfillTask task : tasks) {
+                    results.add(workers.submit(() -> runTask(task, symbolSet, startDate, endDate, asOf, manifestKey, manifest)));
+                }
+                for (int i = 0; i < results.size(); i++) {
+                    try {
+                        totalRecords += results.get(i).get();
+                    } catch (ExecutionException e) {
+                        failed++;
+                        logger.log(Level.WARNING, "Backfill task " + tasks.get(i).id() + " failed", e.getCause());
+                    }
+                }
+            } finally {
+                requestThrottle.setMinIntervalMillis(previousInterval);
+            }
+            if (failed > 0) {
+                throw new IllegalStateException(failed + " of " + tasks.size() + " tasks failed, run the backfill again to resume");
+            }
+
+            logger.info("Backfill wrote " + totalRecords + " price records");
+            return totalRecords;
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Failed to backfill price data: " + e.getMessage(), e);
+            throw new RuntimeException("Failed to backfill price data: " + e.getMessage(), e);
+        }
+    }
+
+    private int runTask(BackfillTask task, String symbolSet, LocalDate startDate, LocalDate endDate,
+                        ZonedDateTime asOf, String manifestKey, BackfillManifest manifest) throws Exception {
+        LocalDate from = task.month().atDay(1).isBefore(startDate) ? startDate : task.month().atDay(1);
+        LocalDate to = task.month().atEndOfMonth().isAfter(endDate) ? endDate : task.month().atEndOfMonth();
+        List<TradingSession> sessions = tradingCalendarService.sessionsBetween(from, to, asOf, sessionHours);
+
+        int records = 0;
+        if (!sessions.isEmpty()) {
+            SpillableOutputStream buffer = memoryMonitor.newOutputBuffer();
+            try {
+                PriceCsvWriter writer = new PriceCsvWriter(buffer);
+                for (TimeWindow window : tradingCalendarService.requestWindows(sessions, sessionHours)) {
+                    priceDataDTO.streamPriceData(task.symbols(), window.getStart(), window.getEnd(), page -> {
+                        try {
+                            writer.write(page);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException("Failed to encode backfill task " + task.id(), e);
+                        }
+                    });
+                }
+                writer.close();
+
+                String key = PriceCsvWriter.objectKey(sessions.getLast().getDate(), batchNumberOffset + task.chunkNumber(),
+                    symbolSet);
+                if (buffer.isSpilled()) {
+                    s3Service.putObject(dataBucketName, key, buffer.getPath(), buffer.sha256());
+                } else {
+                    s3Service.putObject(dataBucketName, key, buffer.getChunks(), buffer.size(), buffer.sha256());
+                }
+                records = writer.records();
+                logger.info("Backfill task " + task.id() + " uploaded " + records + " price records to S3: " + key);
+            } finally {
+                buffer.delete();
+            }
+        }
+
+        markCompleted(manifestKey, manifest, task, records);
+        return records;
+    }
+
+    private BackfillManifest loadManifest(String manifestKey, LocalDate startDate, LocalDate endDate,
+                                          String taskLayout) throws IOException {
+        byte[] data = s3Service.getObjectIfExists(dataBucketName, manifestKey);
+        if (data != null) {
+            BackfillManifest manifest = mapper.readValue(data, BackfillManifest.class);
+            if (taskLayout.equals(manifest.getTaskLayout())) {
+                return manifest;
+            }
+            logger.warning("Symbols or chunk size changed since " + manifestKey + " was written, starting the backfill over");
+        }
+        BackfillManifest manifest = new BackfillManifest();
+        manifest.setStartDate(startDate.toString());
+        manifest.setEndDate(endDate.toString());
+        manifest.setTaskLayout(taskLayout);
+        return manifest;
+    }
+
+    private void markCompleted(String manifestKey, BackfillManifest manifest, BackfillTask task, int records)
+            throws IOException {
+        synchronized (manifest) {
+            manifest.getCompletedTasks().add(task.id());
+            manifest.setRecordsWritten(manifest.getRecordsWritten() + records);
+            s3Service.putObject(dataBucketName, manifestKey, mapper.writeValueAsBytes(manifest));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.darylmathison.market.service.impl;
+
+import com.darylmathison.market.model.OutputBatch;
+import com.darylmathison.market.model.SymbolStats;
+import com.darylmathison.market.service.BatchPlanner;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plans request chunks and output files from the bar counts seen in the previous run.
+ * Request chunks are sized to a roughly constant number of Alpaca pages, so a chunk of illiquid
+ * symbols holds many more tickers than a chunk of index components. Chunks are then grouped into
+ * output files of a target compressed size.
+ */
+@Service
+public class BatchPlannerImpl implements BatchPlanner {
+
+    @Value("${data.symbols.batch-size:3000}")
+    private int maxSymbolsPerRequest;
+
+    @Value("${alpaca.bars.page-size:1000}")
+    private int barsPerPage;
+
+    @Value("${data.plan.pages-per-request:20}")
+    private int pagesPerRequest;
+
+    @Value("${data.plan.unseen-symbol-bars:100}")
+    private int unseenSymbolBars;
+
+    @Value("${data.plan.max-symbols-chars:6000}")
+    private int maxSymbolsChars;
+
+    @Value("${data.output.target-bytes:33554432}")
+    private long targetOutputBytes;
+
+    @Value("${data.output.default-bytes-per-bar:24}")
+    private double defaultBytesPerBar;
+
+    /**
+     * Plans the run, keeping the symbol order of the input list.
+     *
+     * @param symbols The symbols to download
+     * @param symbolStats Bar counts and output sizes from the previous run
+     * @return The output files to write, in order
+     */
+    @Override
+    public List<OutputBatch> plan(List<String> symbols, SymbolStats symbolStats) {
+        Map<String, Integer> barCounts = symbolStats.getBarCounts();
+        long barsPerRequest = (long) barsPerPage * pagesPerRequest;
+        long barsPerOutput = Math.max(1, (long) (targetOutputBytes / symbolStats.bytesPerBar(defaultBytesPerBar)));
+
+        List<OutputBatch> outputBatches = new ArrayList<>();
+        List<List<String>> requestChunks = new ArrayList<>();
+        List<String> chunk = new ArrayList<>();
+        long chunkBars = 0;
+        int chunkChars = 0;
+        long outputBars = 0;
+
+        for (String symbol : symbols) {
+            int bars = barCounts.getOrDefault(symbol, unseenSymbolBars);
+            // +1 for the comma separating symbols in the query string
+            int chars = symbol.length() + 1;
+            boolean chunkFull = chunk.size() >= maxSymbolsPerRequest
+                || chunkBars + bars > barsPerRequest
+                || chunkChars + chars > maxSymbolsChars;
+            if (!chunk.isEmpty() && chunkFull) {
+                requestChunks.add(chunk);
+                outputBars += chunkBars;
+                if (outputBars >= barsPerOutput) {
+                    outputBatches.add(OutputBatch.builder().requestChunks(requestChunks).estimatedBars(outputBars).build());
+                    requestChunks = new ArrayList<>();
+                    outputBars = 0;
+                }
+                chunk = new ArrayList<>();
+                chunkBars = 0;
+                chunkChars = 0;
+            }
+            chunk.add(symbol);
+            chunkBars += bars;
+            chunkChars += chars;
+        }
+
+        if (!chunk.isEmpty()) {
+            requestChunks.add(chunk);
+            outputBars += chunkBars;
+        }
+        if (!requestChunks.isEmpty()) {
+            outputBatches.add(OutputBatch.builder().requestChunks(requestChunks).estimatedBars(outputBars).build());
+        }
+        return outputBatches;
+    }
+}
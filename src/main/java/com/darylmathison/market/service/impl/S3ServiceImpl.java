@@ -1,25 +1,51 @@
 package com.darylmathison.market.service.impl;
 
+import com.darylmathison.market.io.ByteBuffersInputStream;
+import com.darylmathison.market.model.UploadResult;
 import com.darylmathison.market.service.S3Service;
 import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
 
 /**
- * Implementation of S3Service for interacting with Amazon S3.
+ * Implementation of S3Service for interacting with Amazon S3. Uploads carry a SHA-256 of their
+ * content in the object metadata, so re-running a download does not rewrite identical data files.
  */
 @Service
 public class S3ServiceImpl implements S3Service {
 
+    private static final Logger logger = Logger.getLogger(S3ServiceImpl.class.getName());
+    static final String CHECKSUM_METADATA = "content-sha256";
+
+    /** Where fetched lists are cached between invocations; blank to always download them. */
+    @Value("${data.cache.directory:}")
+    private String cacheDirectory;
+
     private final ObjectFactory<S3Client> s3ClientFactory;
 
     public S3ServiceImpl(ObjectFactory<S3Client> s3ClientFactory) {
@@ -27,7 +53,8 @@ public class S3ServiceImpl implements S3Service {
     }
 
     /**
-     * Fetches a list of strings from an S3 object.
+     * Fetches a list of strings from a UTF-8 S3 object. With a cache directory configured, the
+     * object is kept there with its ETag and only downloaded again once it has changed.
      *
      * @param bucket The S3 bucket name
      * @param key The S3 object key
@@ -35,15 +62,55 @@ public class S3ServiceImpl implements S3Service {
      */
     @Override
     public List<String> fetchList(String bucket, String key) {
-
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(getObject(bucket, key))))) {
-
-            return reader.lines().toList();
+        try {
+            byte[] data = cacheDirectory == null || cacheDirectory.isBlank()
+                    ? getObject(bucket, key)
+                    : getObjectCached(bucket, key);
+            return new String(data, StandardCharsets.UTF_8).lines().toList();
         } catch (Exception e) {
             throw new RuntimeException("Failed to fetch list from S3: " + bucket + "/" + key, e);
         }
     }
 
+    /**
+     * Gets an object through the local cache, sending the cached copy's ETag as If-None-Match so
+     * an unchanged object costs a 304 instead of a download. The copy survives warm Lambda
+     * invocations, which share /tmp.
+     */
+    private byte[] getObjectCached(String bucket, String key) throws IOException {
+        Path file = Path.of(cacheDirectory, bucket).resolve(key).normalize();
+        if (!file.startsWith(Path.of(cacheDirectory, bucket).normalize())) {
+            throw new IllegalArgumentException("Key escapes the cache directory: " + key);
+        }
+        Path eTagFile = file.resolveSibling(file.getFileName() + ".etag");
+        String cachedETag = Files.exists(file) && Files.exists(eTagFile) ? Files.readString(eTagFile) : null;
+
+        try (S3Client s3Client = s3ClientFactory.getObject()) {
+            GetObjectRequest.Builder getObjectRequest = GetObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(key);
+            if (cachedETag != null) {
+                getObjectRequest.ifNoneMatch(cachedETag);
+            }
+            ResponseBytes<GetObjectResponse> objectBytes = s3Client.getObjectAsBytes(getObjectRequest.build());
+            byte[] data = objectBytes.asByteArray();
+
+            // Replace the copy before its ETag, so a copy is never paired with a newer ETag
+            Files.createDirectories(file.getParent());
+            Path partial = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".part");
+            Files.write(partial, data);
+            Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.writeString(eTagFile, objectBytes.response().eTag());
+            return data;
+        } catch (S3Exception e) {
+            if (cachedETag != null && e.statusCode() == 304) {
+                logger.fine("Using cached copy of unchanged object " + bucket + "/" + key);
+                return Files.readAllBytes(file);
+            }
+            throw e;
+        }
+    }
+
     /**
      * Gets an object from S3 as a byte array.
      *
@@ -67,24 +134,182 @@ public class S3ServiceImpl implements S3Service {
     }
 
     /**
-     * Puts an object into S3.
+     * Gets an object from S3 as a byte array, treating a missing key as an expected outcome.
+     *
+     * @param bucket The S3 bucket name
+     * @param key The S3 object key
+     * @return The object content as byte array, or null when the key does not exist
+     */
+    @Override
+    public byte[] getObjectIfExists(String bucket, String key) {
+        try (S3Client s3Client = s3ClientFactory.getObject()) {
+            GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .build();
+
+            return s3Client.getObjectAsBytes(getObjectRequest).asByteArray();
+        } catch (NoSuchKeyException e) {
+            return null;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to get object from S3: " + bucket + "/" + key, e);
+        }
+    }
+
+    /**
+     * Puts a small control object, such as a pointer, manifest or cached page, into S3 with a
+     * single PUT. These are rewritten on purpose, so there is no HEAD to look for unchanged content
+     * first; the PUT carries the content's SHA-256, so S3 only accepts it if the bytes arrive intact.
      *
      * @param bucket The S3 bucket name
      * @param key The S3 object key
      * @param data The data to store in S3
+     * @return The uploaded object
      */
     @Override
-    public void putObject(String bucket, String key, byte[] data) {
+    public UploadResult putObject(String bucket, String key, byte[] data) {
         try (S3Client s3Client = s3ClientFactory.getObject()) {
-            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+            String checksum = Base64.getEncoder().encodeToString(sha256().digest(data));
+            PutObjectResponse response = s3Client.putObject(PutObjectRequest.builder()
                     .bucket(bucket)
                     .key(key)
+                    .metadata(Map.of(CHECKSUM_METADATA, checksum))
+                    .checksumSHA256(checksum)
+                    .build(), RequestBody.fromBytes(data));
+            return UploadResult.builder()
+                    .key(key)
+                    .checksum(checksum)
+                    .eTag(response.eTag())
+                    .versionId(response.versionId())
                     .build();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to put object to S3: " + bucket + "/" + key, e);
+        }
+    }
+
+    /**
+     * Puts a data file into S3, streaming it from disk, unless the object already there has the
+     * same content.
+     *
+     * @param bucket The S3 bucket name
+     * @param key The S3 object key
+     * @param file The file to store in S3
+     * @param sha256 SHA-256 of the file, taken while it was written
+     * @return The uploaded or already present object
+     */
+    @Override
+    public UploadResult putObject(String bucket, String key, Path file, byte[] sha256) {
+        try {
+            return upload(bucket, key, sha256, () -> RequestBody.fromFile(file));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to put object to S3: " + bucket + "/" + key, e);
+        }
+    }
 
-            s3Client.putObject(putObjectRequest,
-                    software.amazon.awssdk.core.sync.RequestBody.fromBytes(data));
+    /**
+     * Puts buffered chunks of a data file into S3 without first copying them into one array,
+     * unless the object already there has the same content. Each attempt reads fresh views of the
+     * chunks, so the SDK can retry the upload.
+     *
+     * @param bucket The S3 bucket name
+     * @param key The S3 object key
+     * @param chunks The data to store, in order
+     * @param length Total number of bytes in the chunks
+     * @param sha256 SHA-256 of the chunks, taken while they were written
+     * @return The uploaded or already present object
+     */
+    @Override
+    public UploadResult putObject(String bucket, String key, List<ByteBuffer> chunks, long length, byte[] sha256) {
+        try {
+            return upload(bucket, key, sha256, () -> RequestBody.fromContentProvider(
+                    () -> new ByteBuffersInputStream(chunks.stream().map(ByteBuffer::duplicate).toList()),
+                    length, "application/octet-stream"));
         } catch (Exception e) {
             throw new RuntimeException("Failed to put object to S3: " + bucket + "/" + key, e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Skips the upload when the existing object carries the same checksum, and otherwise writes
+     * conditionally on the object read: a key that did not exist must still not exist, and an
+     * existing one must still have the same ETag, so a concurrent writer's object is never lost.
+     * When the condition fails the object is read again, and a concurrent writer that stored the
+     * same content counts as this upload having been made.
+     */
+    private UploadResult upload(String bucket, String key, byte[] sha256, Supplier<RequestBody> body) {
+        String checksum = Base64.getEncoder().encodeToString(sha256);
+        try (S3Client s3Client = s3ClientFactory.getObject()) {
+            HeadObjectResponse existing = headObject(s3Client, bucket, key);
+            if (holds(existing, checksum)) {
+                logger.info("Skipping unchanged object " + bucket + "/" + key);
+                return alreadyStored(key, checksum, existing);
+            }
+
+            PutObjectRequest.Builder putObjectRequest = PutObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .metadata(Map.of(CHECKSUM_METADATA, checksum))
+                    .checksumSHA256(checksum);
+            if (existing == null) {
+                putObjectRequest.ifNoneMatch("*");
+            } else {
+                putObjectRequest.ifMatch(existing.eTag());
+            }
+
+            PutObjectResponse response;
+            try {
+                response = s3Client.putObject(putObjectRequest.build(), body.get());
+            } catch (S3Exception e) {
+                if (e.statusCode() != 412 && e.statusCode() != 409) {
+                    throw e;
+                }
+                HeadObjectResponse current = headObject(s3Client, bucket, key);
+                if (!holds(current, checksum)) {
+                    throw new IllegalStateException("Object was changed by another writer during the upload", e);
+                }
+                logger.info("Another writer stored the same content at " + bucket + "/" + key);
+                return alreadyStored(key, checksum, current);
+            }
+            return UploadResult.builder()
+                    .key(key)
+                    .checksum(checksum)
+                    .eTag(response.eTag())
+                    .versionId(response.versionId())
+                    .build();
+        }
+    }
+
+    private static boolean holds(HeadObjectResponse object, String checksum) {
+        return object != null && checksum.equals(object.metadata().get(CHECKSUM_METADATA));
+    }
+
+    private static UploadResult alreadyStored(String key, String checksum, HeadObjectResponse object) {
+        return UploadResult.builder()
+                .key(key)
+                .checksum(checksum)
+                .eTag(object.eTag())
+                .versionId(object.versionId())
+                .skipped(true)
+                .build();
+    }
+
+    private static HeadObjectResponse headObject(S3Client s3Client, String bucket, String key) {
+        try {
+            return s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(key)
+                    .build());
+        } catch (NoSuchKeyException e) {
+            return null;
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private static MessageDigest sha256() throws NoSuchAlgorithmException {
+        return MessageDigest.getInstance("SHA-256");
+    }
+}
@@ -12,17 +12,32 @@ import software.amazon.awssdk.services.secretsmanager.model.GetSecretValueRespon
 import software.amazon.awssdk.services.secretsmanager.model.SecretsManagerException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Secrets are cached in static state with a TTL, together with the client and mapper, so warm
+ * Lambda invocations that build a new application context do not go back to Secrets Manager.
+ */
 @Service
 public class SecretsServiceImpl implements SecretsService {
 
+  private static final ObjectMapper mapper = new ObjectMapper();
+  private static final Map<String, CachedSecret> secretCache = new ConcurrentHashMap<>();
+  private static volatile SecretsManagerClient sharedClient;
+
   @Value("${aws.region}")
   private String awsRegion;
 
+  @Value("${alpaca.secret-ttl-seconds:3600}")
+  private long secretTtlSeconds;
+
+  private record CachedSecret(String value, long expiresAtMillis) {}
+
   @Override
   public ApiKeyPair getSecretApiKeyPair(String secretName) {
     String jsonString = getSecret(secretName);
       // If your secret is JSON, you can parse it
-     ObjectMapper mapper = new ObjectMapper();
      ApiKeyPair apiKey;
      try {
          apiKey = mapper.readValue(jsonString, ApiKeyPair.class);
@@ -35,13 +50,20 @@ public class SecretsServiceImpl implements SecretsService {
 
   @Override
   public String getSecret(String secretName) {
+    CachedSecret cached = secretCache.get(secretName);
+    if (cached != null && cached.expiresAtMillis() > System.currentTimeMillis()) {
+      return cached.value();
+    }
+
     GetSecretValueRequest getSecretValueRequest = GetSecretValueRequest.builder()
                 .secretId(secretName)
                 .build();
 
-    try(SecretsManagerClient secretsClient = buildSecretsManagerClient()) {
-        GetSecretValueResponse getSecretValueResponse = secretsClient.getSecretValue(getSecretValueRequest);
-        return getSecretValueResponse.secretString();
+    try {
+        GetSecretValueResponse getSecretValueResponse = secretsClient().getSecretValue(getSecretValueRequest);
+        String secret = getSecretValueResponse.secretString();
+        secretCache.put(secretName, new CachedSecret(secret, System.currentTimeMillis() + secretTtlSeconds * 1000));
+        return secret;
     } catch (SecretsManagerException e) {
       String errorMessage = "Failed to retrieve secret: " + secretName + " - " + e.awsErrorDetails().errorMessage();
         System.err.println(errorMessage);
@@ -53,4 +75,25 @@ public class SecretsServiceImpl implements SecretsService {
     return SecretsManagerClient.builder().region(Region.of( awsRegion)).build();
   }
 
+  /**
+   * Drops cached secrets and the shared client.
+   */
+  static synchronized void clearCache() {
+    secretCache.clear();
+    sharedClient = null;
+  }
+
+  private SecretsManagerClient secretsClient() {
+    SecretsManagerClient client = sharedClient;
+    if (client == null) {
+      synchronized (SecretsServiceImpl.class) {
+        if (sharedClient == null) {
+          sharedClient = buildSecretsManagerClient();
+        }
+        client = sharedClient;
+      }
+    }
+    return client;
+  }
+
 }
@@ -1,23 +1,55 @@
 package com.darylmathison.market.service.impl;
 
+import com.darylmathison.market.aggregate.BarRollup;
+import com.darylmathison.market.aggregate.DailySummary;
+import com.darylmathison.market.aggregate.Timeframe;
+import com.darylmathison.market.io.BarMatrixWriter;
+import com.darylmathison.market.io.EncoderPool;
+import com.darylmathison.market.io.MemoryMonitor;
+import com.darylmathison.market.io.PageCache;
+import com.darylmathison.market.io.PriceCsvWriter;
+import com.darylmathison.market.io.PriceFileWriter;
+import com.darylmathison.market.io.SpillableOutputStream;
+import com.darylmathison.market.model.OutputBatch;
+import com.darylmathison.market.model.RecordedRun;
+import com.darylmathison.market.model.RunManifest;
+import com.darylmathison.market.model.RunReport;
+import com.darylmathison.market.model.SessionHours;
+import com.darylmathison.market.model.SymbolStats;
+import com.darylmathison.market.model.TimeWindow;
+import com.darylmathison.market.model.TradingSession;
+import com.darylmathison.market.model.ValidationReport;
+import com.darylmathison.market.service.BatchPlanner;
 import com.darylmathison.market.service.StockPriceService;
 import com.darylmathison.market.model.StorageStockBar;
 import com.darylmathison.market.dto.PriceDataDTO;
 import com.darylmathison.market.service.S3Service;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVPrinter;
+import com.darylmathison.market.service.SymbolStatsService;
+import com.darylmathison.market.service.TradingCalendarService;
+import com.darylmathison.market.symbol.SymbolDictionary;
+import com.darylmathison.market.validation.BarValidator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.HashSet;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 import java.util.logging.Level;
-import java.util.zip.GZIPOutputStream;
 
 /**
  * Implementation of StockPriceService for downloading and storing stock price data.
@@ -26,6 +58,9 @@ import java.util.zip.GZIPOutputStream;
 public class StockPriceServiceImpl implements StockPriceService {
 
     private static final Logger logger = Logger.getLogger(StockPriceServiceImpl.class.getName());
+    private static final ZoneId MARKET_ZONE = ZoneId.of("America/New_York");
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final String LATEST_RUN_KEY = PageCache.key("run", "latest");
 
     @Value("${data.bucket.name}")
     private String dataBucketName;
@@ -36,67 +71,234 @@ public class StockPriceServiceImpl implements StockPriceService {
     @Value("${history.days:5}")
     private int historyDays;
 
-    @Value("${data.symbols.batch-size:3000}")
-    private int symbolsBatchSize;
+    @Value("${history.session-hours:EXTENDED}")
+    private SessionHours sessionHours;
+
+    @Value("${data.symbols.inactive-after-runs:3}")
+    private int inactiveAfterRuns;
+
+    @Value("${data.symbols.probe-interval-days:28}")
+    private int probeIntervalDays;
+
+    @Value("${data.rollups:}")
+    private List<String> rollupTimeframes;
+
+    @Value("${data.rollup-prefix:rollups/}")
+    private String rollupPrefix;
+
+    @Value("${data.summary.enabled:true}")
+    private boolean summaryEnabled;
+
+    @Value("${data.summary.prefix:summary/}")
+    private String summaryPrefix;
+
+    @Value("${data.matrix.enabled:false}")
+    private boolean matrixEnabled;
+
+    @Value("${data.matrix.prefix:matrix/}")
+    private String matrixPrefix;
+
+    @Value("${data.validation.quarantine-prefix:quarantine/}")
+    private String quarantinePrefix;
+
+    @Value("${data.manifest.prefix:manifests/}")
+    private String manifestPrefix;
+
+    /** As-of time of the recorded run to replay, or blank for the one recorded last. */
+    @Value("${alpaca.cache.replay-as-of:}")
+    private String replayAsOf;
 
     private final PriceDataDTO priceDataDTO;
     private final S3Service s3Service;
+    private final SymbolStatsService symbolStatsService;
+    private final BatchPlanner batchPlanner;
+    private final TradingCalendarService tradingCalendarService;
+    private final MemoryMonitor memoryMonitor;
+    private final EncoderPool encoderPool;
+    private final PageCache pageCache;
 
-    public StockPriceServiceImpl(PriceDataDTO priceDataDTO, S3Service s3Service) {
+    public StockPriceServiceImpl(PriceDataDTO priceDataDTO, S3Service s3Service,
+                                 SymbolStatsService symbolStatsService, BatchPlanner batchPlanner,
+                                 TradingCalendarService tradingCalendarService, MemoryMonitor memoryMonitor,
+                                 EncoderPool encoderPool, PageCache pageCache) {
         this.priceDataDTO = priceDataDTO;
         this.s3Service = s3Service;
+        this.symbolStatsService = symbolStatsService;
+        this.batchPlanner = batchPlanner;
+        this.tradingCalendarService = tradingCalendarService;
+        this.memoryMonitor = memoryMonitor;
+        this.encoderPool = encoderPool;
+        this.pageCache = pageCache;
     }
 
     /**
      * Downloads price data for configured symbols and stores it in S3.
      *
-     * @return Number of price records processed
+     * @return Number of price records processed and the validation counts
      */
     @Override
-    public int getPriceData() {
+    public RunReport getPriceData() {
         try {
             logger.info("Starting price data download process");
 
-            // Get symbols from S3
-            List<String> symbols = s3Service.fetchList(dataBucketName, symbolsFileKey);
+            // Get symbols and the previous run's stats from S3 while the Alpaca client fetches its keys
+            SymbolDictionary dictionary;
+            SymbolStats previousStats;
+            try (ExecutorService startup = Executors.newVirtualThreadPerTaskExecutor()) {
+                CompletableFuture<SymbolDictionary> symbolsFuture = CompletableFuture.supplyAsync(
+                    () -> SymbolDictionary.compile(s3Service.fetchList(dataBucketName, symbolsFileKey)), startup);
+                CompletableFuture<SymbolStats> statsFuture = CompletableFuture.supplyAsync(symbolStatsService::load, startup);
+                CompletableFuture<Void> clientFuture = CompletableFuture.runAsync(priceDataDTO::prepare, startup);
+                dictionary = await(symbolsFuture);
+                previousStats = await(statsFuture);
+                await(clientFuture);
+            }
+            ZonedDateTime asOf = ZonedDateTime.now(MARKET_ZONE);
+
+            // A replay plans from the recorded run's inputs, so it makes exactly the recorded requests
+            if (pageCache.isReplaying()) {
+                String selected = replayAsOf == null || replayAsOf.isBlank()
+                    ? pageCache.load(LATEST_RUN_KEY, String.class)
+                    : replayAsOf;
+                RecordedRun recordedRun = pageCache.load(recordedRunKey(selected), RecordedRun.class);
+                asOf = ZonedDateTime.parse(recordedRun.getAsOf()).withZoneSameInstant(MARKET_ZONE);
+                dictionary = SymbolDictionary.compile(recordedRun.getSymbols());
+                previousStats = recordedRun.getPreviousStats();
+                logger.info("Replaying the run recorded as of " + asOf);
+            } else if (pageCache.isRecording()) {
+                RecordedRun recordedRun = new RecordedRun();
+                recordedRun.setAsOf(asOf.toString());
+                recordedRun.setSymbols(dictionary.symbols());
+                recordedRun.setPreviousStats(previousStats);
+                pageCache.store(recordedRunKey(recordedRun.getAsOf()), recordedRun);
+                pageCache.store(LATEST_RUN_KEY, recordedRun.getAsOf());
+                logger.info("Recording the run as of " + recordedRun.getAsOf());
+            }
+            // The New York date, for a live run and a replay alike
+            LocalDate endDate = asOf.toLocalDate();
+            List<String> symbols = dictionary.symbols();
             logger.info("Fetched " + symbols.size() + " symbols from S3");
 
-            // Calculate date range
-            LocalDate endDate = LocalDate.now();
-            LocalDate startDate = endDate.minusDays(historyDays);
-            logger.info("Downloading price data from " + startDate + " to " + endDate);
-
-            // Process symbols in batches
-            int totalRecords = 0;
-            for (int i = 0; i < symbols.size(); i += symbolsBatchSize) {
-                int endIndex = Math.min(i + symbolsBatchSize, symbols.size());
-                List<String> symbolsBatch = symbols.subList(i, endIndex);
-                int batchNumber = i / symbolsBatchSize + 1;
-                logger.info("Processing batch " + batchNumber + 
-                           " with " + symbolsBatch.size() + " symbols (from index " + i + " to " + (endIndex - 1) + ")");
-
-                // Get price data for this batch
-                List<StorageStockBar> batchPriceData = priceDataDTO.getPriceData(symbolsBatch, startDate, endDate);
-                logger.info("Retrieved " + batchPriceData.size() + " price records for current batch");
-
-                // Convert batch data to compressed CSV
-                byte[] compressedData = generateCompressedCSV(batchPriceData);
-                logger.info("Generated compressed CSV data for batch " + batchNumber + ": " + compressedData.length + " bytes");
-
-                // Create S3 key with today's date and batch number
-                String key = generateS3Key(endDate, batchNumber);
-
-                // Upload batch to S3
-                s3Service.putObject(dataBucketName, key, compressedData);
-                logger.info("Successfully uploaded batch " + batchNumber + " price data to S3: " + key);
-
-                // Add to the total count
-                totalRecords += batchPriceData.size();
+            // Request only the last completed sessions, skipping closed days
+            List<TradingSession> sessions = tradingCalendarService.completedSessions(historyDays, asOf, sessionHours);
+            List<TimeWindow> windows = tradingCalendarService.requestWindows(sessions, sessionHours);
+            if (sessions.isEmpty()) {
+                logger.warning("No completed sessions to download");
+            } else {
+                logger.info("Downloading " + sessionHours + " hours price data for " + sessions.size() + " sessions from "
+                           + sessions.getFirst().getDate() + " to " + sessions.getLast().getDate() + " in " + windows.size() + " request windows");
             }
 
-            logger.info("Total retrieved price records: " + totalRecords);
+            // Leave out symbols that have stopped producing bars, re-probing them now and then
+            SymbolStats currentStats = new SymbolStats();
+            List<String> activeSymbols = selectActiveSymbols(symbols, previousStats, currentStats, sessions, endDate);
+
+            // Plan request chunks and output files from the previous run's bar counts
+            List<OutputBatch> outputBatches = batchPlanner.plan(activeSymbols, previousStats);
+            logger.info("Planned " + outputBatches.size() + " output batches for " + activeSymbols.size() + " symbols");
+
+            List<Timeframe> rollups = resolveRollups();
+            DailySummary dailySummary = summaryEnabled ? new DailySummary(dictionary) : null;
+            BarValidator validator = new BarValidator(dictionary, priceDataDTO.getTimeframe(), sessions.size());
+            int[] barCounts = new int[dictionary.size()];
+            BarMatrixWriter matrix = matrixEnabled && !sessions.isEmpty()
+                ? new BarMatrixWriter(memoryMonitor.newSpillFile("matrix-"), dictionary, sessions, sessionHours,
+                    priceDataDTO.getTimeframe())
+                : null;
+            try {
+                RunManifest manifest = new RunManifest();
+                manifest.setDate(endDate.toString());
+
+                int totalRecords = 0;
+                int batchNumber = 0;
+                for (OutputBatch outputBatch : outputBatches) {
+                    logger.info("Processing " + outputBatch.symbolCount() + " symbols in " + outputBatch.getRequestChunks().size()
+                               + " requests (estimated " + outputBatch.getEstimatedBars() + " bars)");
+
+                    // Encode pages as they arrive, cutting the file short if the heap runs low
+                    BatchFile batchFile = null;
+                    try {
+                        for (List<String> requestChunk : outputBatch.getRequestChunks()) {
+                            if (batchFile == null) {
+                                batchFile = new BatchFile(++batchNumber, rollups, dictionary, barCounts, dailySummary, validator, matrix);
+                            }
+                            for (TimeWindow window : windows) {
+                                priceDataDTO.streamPriceData(requestChunk, window.getStart(), window.getEnd(), batchFile::write);
+                            }
+                            if (memoryMonitor.underPressure()) {
+                                logger.warning("Headroom down to " + memoryMonitor.headroomBytes() + " heap and " + memoryMonitor.directHeadroomBytes()
+                                    + " direct bytes, closing batch " + batchNumber + " early");
+                                BatchFile full = batchFile;
+                                batchFile = null;
+                                totalRecords += uploadBatch(full, endDate, currentStats, manifest);
+                            }
+                        }
+                        if (batchFile != null) {
+                            BatchFile last = batchFile;
+                            batchFile = null;
+                            totalRecords += uploadBatch(last, endDate, currentStats, manifest);
+                        }
+                    } finally {
+                        // A failed download or encode must not leave its spill file or pooled chunks behind on a warm container
+                        if (batchFile != null) {
+                            batchFile.buffer.delete();
+                        }
+                    }
+                }
+
+                ValidationReport validationReport = validator.finish(activeSymbols);
+                if (validator.hasQuarantined()) {
+                    String quarantineKey = quarantinePrefix + PriceCsvWriter.objectKey("quarantine", endDate);
+                    manifest.getObjects().add(s3Service.putObject(dataBucketName, quarantineKey, validator.quarantineCsv()));
+                    validationReport.setQuarantineKey(quarantineKey);
+                    logger.warning("Quarantined " + validationReport.getQuarantined() + " bars to S3: " + quarantineKey);
+                }
+                logger.info("Validation: " + validationReport);
+
+                // One small file of per-symbol session figures so screens need not scan the raw data
+                if (dailySummary != null && dailySummary.size() > 0) {
+                    String summaryKey = summaryPrefix + PriceCsvWriter.objectKey("summary", endDate);
+                    manifest.getObjects().add(s3Service.putObject(dataBucketName, summaryKey, dailySummary.toCompressedCsv()));
+                    logger.info("Uploaded daily summary for " + dailySummary.size() + " symbol sessions to S3: " + summaryKey);
+                }
+
+                // The same bars as a symbol by slot grid that model jobs can map without pivoting the CSV
+                if (matrix != null) {
+                    matrix.finish();
+                    String matrixKey = matrixPrefix + BarMatrixWriter.objectKey(endDate);
+                    manifest.getObjects().add(s3Service.putObject(dataBucketName, matrixKey, matrix.getFile(), matrix.sha256()));
+                    logger.info("Uploaded " + symbols.size() + " x " + matrix.slots() + " bar matrix to S3: " + matrixKey
+                               + " (" + matrix.observed() + " bars, " + matrix.filled() + " carried forward, "
+                               + matrix.dropped() + " outside the grid)");
+                }
 
-            return totalRecords;
+                String manifestKey = commitRun(manifest, endDate);
+
+                // Counted by dictionary id during the run, kept by symbol between runs since ids follow the list
+                for (String symbol : activeSymbols) {
+                    int bars = barCounts[dictionary.id(symbol)];
+                    currentStats.getBarCounts().put(symbol, bars);
+                    if (bars == 0) {
+                        currentStats.getZeroRuns().put(symbol, previousStats.getZeroRuns().getOrDefault(symbol, 0) + 1);
+                    }
+                }
+                // A replay must not disturb the planning state of the live runs
+                if (!pageCache.isReplaying()) {
+                    saveSymbolStats(currentStats);
+                }
+                logger.info("Total retrieved price records: " + totalRecords);
+
+                return RunReport.builder()
+                    .recordsProcessed(totalRecords)
+                    .validation(validationReport)
+                    .manifestKey(manifestKey)
+                    .build();
+            } finally {
+                // A failed run must not leave the mapped spill file behind on a warm container
+                if (matrix != null) {
+                    matrix.close();
+                }
+            }
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Failed to process price data: " + e.getMessage(), e);
             throw new RuntimeException("Failed to process price data: " + e.getMessage(), e);
@@ -104,36 +306,221 @@ public class StockPriceServiceImpl implements StockPriceService {
     }
 
     /**
-     * Generates an S3 key in the format "stock_prices_YYYY-MM-DD_{batch number}.csv.gz"
+     * Each recorded run is kept under its own as-of instant, so recording again does not replace it.
+     *
+     * @param asOf An ISO-8601 time with an offset, in any zone
      */
-    private String generateS3Key(LocalDate date, int batchNumber) {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        return String.format("stock_prices_%s_%d.csv.gz", date.format(formatter), batchNumber);
+    private static String recordedRunKey(String asOf) {
+        return PageCache.key("run", ZonedDateTime.parse(asOf).toInstant());
+    }
+
+    /**
+     * Waits for a start up task, rethrowing its own failure rather than the CompletionException wrapper.
+     */
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
     }
 
     /**
-     * Converts a list of StorageStockBar objects to a compressed CSV byte array.
+     * Removes symbols that produced no bars for inactive-after-runs consecutive runs. Once every
+     * probe-interval-days those symbols are swept over the most recent session alone, and any that
+     * trade again rejoin this run. Streaks of symbols left out are carried into the current stats.
+     */
+    private List<String> selectActiveSymbols(List<String> symbols, SymbolStats previousStats, SymbolStats currentStats,
+                                             List<TradingSession> sessions, LocalDate today) throws Exception {
+        currentStats.setLastProbeDate(previousStats.getLastProbeDate());
+        if (inactiveAfterRuns <= 0) {
+            return symbols;
+        }
+        Map<String, Integer> previousZeroRuns = previousStats.getZeroRuns();
+        List<String> inactive = symbols.stream()
+            .filter(symbol -> previousZeroRuns.getOrDefault(symbol, 0) >= inactiveAfterRuns)
+            .toList();
+        if (inactive.isEmpty()) {
+            return symbols;
+        }
+
+        Set<String> revived = Set.of();
+        String lastProbe = previousStats.getLastProbeDate();
+        boolean probeDue = lastProbe == null || !LocalDate.parse(lastProbe).plusDays(probeIntervalDays).isAfter(today);
+        if (probeDue && !sessions.isEmpty()) {
+            revived = probeSymbols(inactive, previousStats, sessions.getLast());
+            currentStats.setLastProbeDate(today.toString());
+            logger.info("Probed " + inactive.size() + " inactive symbols, " + revived.size() + " are trading again");
+        }
+
+        Set<String> excluded = new HashSet<>(inactive);
+        excluded.removeAll(revived);
+        excluded.forEach(symbol -> {
+            currentStats.getZeroRuns().put(symbol, previousZeroRuns.get(symbol));
+            currentStats.getBarCounts().put(symbol, 0);
+        });
+        logger.info("Skipping " + excluded.size() + " inactive symbols");
+        return symbols.stream().filter(symbol -> !excluded.contains(symbol)).toList();
+    }
+
+    /**
+     * Requests a single session for the given symbols, keeping only the bar counts.
+     *
+     * @return The symbols that produced at least one bar
      */
-    private byte[] generateCompressedCSV(List<StorageStockBar> priceData) throws IOException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        GZIPOutputStream gzipOut = new GZIPOutputStream(out);
-        OutputStreamWriter writer = new OutputStreamWriter(gzipOut);
-
-        try (CSVPrinter printer = new CSVPrinter(writer,
-            CSVFormat.DEFAULT.builder().setHeader("symbol", "timestamp", "open", "high", "low", "close", "volume").get())) {
-            for (StorageStockBar bar : priceData) {
-                printer.printRecord(
-                    bar.getSymbol(),
-                    bar.getTimestamp(),
-                    bar.getOpen(),
-                    bar.getHigh(),
-                    bar.getLow(),
-                    bar.getClose(),
-                    bar.getVolume()
-                );
+    private Set<String> probeSymbols(List<String> symbols, SymbolStats previousStats, TradingSession session) throws Exception {
+        Set<String> trading = new HashSet<>();
+        List<TimeWindow> windows = tradingCalendarService.requestWindows(List.of(session), sessionHours);
+        for (OutputBatch batch : batchPlanner.plan(symbols, previousStats)) {
+            for (List<String> requestChunk : batch.getRequestChunks()) {
+                for (TimeWindow window : windows) {
+                    priceDataDTO.streamPriceData(requestChunk, window.getStart(), window.getEnd(),
+                        page -> page.forEach(bar -> trading.add(bar.getSymbol())));
+                }
+            }
+        }
+        return trading;
+    }
+
+    /**
+     * Parses the configured rollup timeframes, rejecting any that cannot be built exactly from the downloaded bars.
+     */
+    private List<Timeframe> resolveRollups() {
+        if (rollupTimeframes == null) {
+            return List.of();
+        }
+        Timeframe base = priceDataDTO.getTimeframe();
+        List<Timeframe> rollups = rollupTimeframes.stream()
+            .filter(value -> !value.isBlank())
+            .map(Timeframe::parse)
+            .toList();
+        rollups.stream()
+            .filter(rollup -> !rollup.isRollupOf(base))
+            .findFirst()
+            .ifPresent(rollup -> {
+                throw new IllegalArgumentException("Rollup " + rollup.label() + " cannot be built from " + base.label() + " bars");
+            });
+        return rollups;
+    }
+
+    /**
+     * Finishes the batch file and uploads it, streaming from disk when it was spilled, followed by its rollups.
+     *
+     * @return Number of price records in the batch
+     */
+    private int uploadBatch(BatchFile batchFile, LocalDate endDate, SymbolStats currentStats,
+                            RunManifest manifest) throws IOException {
+        int batchNumber = batchFile.batchNumber;
+        SpillableOutputStream buffer = batchFile.buffer;
+        try {
+            batchFile.writer.close();
+            logger.info("Retrieved " + batchFile.writer.records() + " price records for batch " + batchNumber);
+            logger.info("Generated compressed CSV data for batch " + batchNumber + ": " + buffer.size() + " bytes"
+                       + (buffer.isSpilled() ? " (spilled to " + buffer.getPath() + ")" : ""));
+
+            // Create S3 key with today's date and batch number
+            String key = PriceCsvWriter.objectKey(endDate, batchNumber);
+
+            // Upload batch to S3
+            if (buffer.isSpilled()) {
+                manifest.getObjects().add(s3Service.putObject(dataBucketName, key, buffer.getPath(), buffer.sha256()));
+            } else {
+                manifest.getObjects().add(s3Service.putObject(dataBucketName, key, buffer.getChunks(), buffer.size(), buffer.sha256()));
+            }
+            logger.info("Successfully uploaded batch " + batchNumber + " price data to S3: " + key);
+        } finally {
+            buffer.delete();
+        }
+
+        for (BarRollup rollup : batchFile.rollups) {
+            String label = rollup.getTimeframe().label();
+            String rollupKey = rollupPrefix + label + "/" + PriceCsvWriter.objectKey(label, endDate, batchNumber);
+            manifest.getObjects().add(s3Service.putObject(dataBucketName, rollupKey, PriceCsvWriter.encode(rollup.finish())));
+            logger.info("Successfully uploaded batch " + batchNumber + " " + label + " rollup to S3: " + rollupKey);
+        }
+
+        currentStats.setBarsWritten(currentStats.getBarsWritten() + batchFile.writer.records());
+        currentStats.setBytesWritten(currentStats.getBytesWritten() + buffer.size());
+        return batchFile.writer.records();
+    }
+
+    /**
+     * Makes the run visible to readers by writing its manifest and then pointing the date's
+     * CURRENT object at it. The manifest is named by a hash of its content, so a re-run that found
+     * every object unchanged rewrites the same manifest key, and a run that fails before this point
+     * leaves the previous run's pointer in place.
+     *
+     * @return Key of the manifest
+     */
+    private String commitRun(RunManifest manifest, LocalDate endDate) throws Exception {
+        byte[] content = mapper.writeValueAsBytes(manifest);
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(content);
+        String manifestKey = manifestPrefix + endDate + "/" + HexFormat.of().formatHex(hash, 0, 16) + ".json";
+        s3Service.putObject(dataBucketName, manifestKey, content);
+        s3Service.putObject(dataBucketName, manifestPrefix + endDate + "/CURRENT", manifestKey.getBytes(StandardCharsets.UTF_8));
+        logger.info("Committed " + manifest.getObjects().size() + " objects in run manifest: " + manifestKey);
+        return manifestKey;
+    }
+
+    /**
+     * The stats only tune the next plan, so failing to save them must not fail a run whose data is already stored.
+     */
+    private void saveSymbolStats(SymbolStats symbolStats) {
+        try {
+            symbolStatsService.save(symbolStats);
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Failed to save symbol stats: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * One output file being written: pages are validated, encoded into a spillable buffer as they
+     * arrive and fed to the rollups, the daily summary and the matrix, so a batch never has to be
+     * held as a list of bars.
+     */
+    private class BatchFile {
+        private final int batchNumber;
+        private final SpillableOutputStream buffer;
+        private final PriceFileWriter writer;
+        private final List<BarRollup> rollups;
+        private final SymbolDictionary dictionary;
+        private final int[] barCounts;
+        private final DailySummary dailySummary;
+        private final BarValidator validator;
+        private final BarMatrixWriter matrix;
+
+        BatchFile(int batchNumber, List<Timeframe> timeframes, SymbolDictionary dictionary, int[] barCounts,
+                  DailySummary dailySummary, BarValidator validator, BarMatrixWriter matrix) throws IOException {
+            this.batchNumber = batchNumber;
+            this.buffer = memoryMonitor.newOutputBuffer();
+            this.writer = encoderPool.newWriter(buffer);
+            this.rollups = timeframes.stream().map(BarRollup::new).toList();
+            this.dictionary = dictionary;
+            this.barCounts = barCounts;
+            this.dailySummary = dailySummary;
+            this.validator = validator;
+            this.matrix = matrix;
+        }
+
+        void write(List<StorageStockBar> received) {
+            List<StorageStockBar> page = validator.validate(received);
+            try {
+                writer.write(page);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to encode batch " + batchNumber, e);
+            }
+            rollups.forEach(rollup -> rollup.addAll(page));
+            // The validator has rejected symbols outside the dictionary
+            page.forEach(bar -> barCounts[dictionary.id(bar.getSymbol())]++);
+            if (dailySummary != null) {
+                dailySummary.addAll(page);
+            }
+            if (matrix != null) {
+                matrix.addAll(page);
             }
         }
-        gzipOut.finish();
-        return out.toByteArray();
     }
 }
@@ -0,0 +1,191 @@
+package com.darylmathison.market.service.impl;
+
+import com.darylmathison.market.io.MemoryMonitor;
+import com.darylmathison.market.io.PriceCsvWriter;
+import com.darylmathison.market.io.SpillableOutputStream;
+import com.darylmathison.market.model.StorageStockBar;
+import com.darylmathison.market.service.S3Service;
+import com.darylmathison.market.service.StreamingService;
+import com.darylmathison.market.stream.BarStream;
+import com.darylmathison.market.stream.RingBuffer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes live minute bars to the data bucket in micro-batches. Bars are handed from the stream's
+ * thread to this one through a ring buffer, encoded as they are drained, and each micro-batch is
+ * uploaded once it holds stream.flush-bars bars or has been open for stream.flush-interval-ms.
+ * The stream's thread never waits on the buffer: a bar that finds it full is dropped and counted.
+ */
+@Service
+public class StreamingServiceImpl implements StreamingService {
+
+    private static final Logger logger = Logger.getLogger(StreamingServiceImpl.class.getName());
+    private static final ZoneId MARKET_ZONE = ZoneId.of("America/New_York");
+
+    @Value("${data.bucket.name}")
+    private String dataBucketName;
+
+    @Value("${data.symbols.file}")
+    private String symbolsFileKey;
+
+    @Value("${stream.buffer-capacity:65536}")
+    private int bufferCapacity;
+
+    @Value("${stream.flush-bars:50000}")
+    private int flushBars;
+
+    @Value("${stream.flush-interval-ms:60000}")
+    private long flushIntervalMillis;
+
+    @Value("${stream.poll-interval-ms:100}")
+    private long pollIntervalMillis;
+
+    @Value("${stream.key-prefix:stream/}")
+    private String keyPrefix;
+
+    private final BarStream barStream;
+    private final S3Service s3Service;
+    private final MemoryMonitor memoryMonitor;
+
+    private int lastSequence;
+
+    public StreamingServiceImpl(BarStream barStream, S3Service s3Service, MemoryMonitor memoryMonitor) {
+        this.barStream = barStream;
+        this.s3Service = s3Service;
+        this.memoryMonitor = memoryMonitor;
+    }
+
+    /**
+     * Streams bars for the configured symbols until the duration has passed or the stream ends.
+     *
+     * @return Number of price records written
+     */
+    @Override
+    public int stream(Duration duration) {
+        try {
+            List<String> symbols = s3Service.fetchList(dataBucketName, symbolsFileKey);
+            RingBuffer<StorageStockBar> buffer = new RingBuffer<>(bufferCapacity);
+            AtomicLong dropped = new AtomicLong();
+            long reportedDrops = 0;
+            long deadline = System.currentTimeMillis() + duration.toMillis();
+
+            int totalRecords = 0;
+            MicroBatch batch = null;
+            try {
+                barStream.subscribe(symbols, bar -> {
+                    if (!buffer.offer(bar)) {
+                        dropped.incrementAndGet();
+                    }
+                });
+                logger.info("Streaming " + symbols.size() + " symbols for " + duration);
+
+                while (System.currentTimeMillis() < deadline && barStream.isOpen()) {
+                    if (batch == null) {
+                        batch = new MicroBatch();
+                    }
+                    int drained = buffer.drainTo(batch::write, flushBars - batch.writer.records());
+                    if (batch.writer.records() >= flushBars
+                        || (batch.writer.records() > 0 && System.currentTimeMillis() - batch.openedAt >= flushIntervalMillis)) {
+                        totalRecords += flush(batch);
+                        batch = null;
+                        reportedDrops = reportDrops(dropped.get(), reportedDrops);
+                    } else if (drained == 0) {
+                        Thread.sleep(pollIntervalMillis);
+                    }
+                }
+            } finally {
+                barStream.close();
+            }
+
+            // Keep whatever arrived before the stream closed
+            do {
+                if (batch == null) {
+                    batch = new MicroBatch();
+                }
+                buffer.drainTo(batch::write, flushBars - batch.writer.records());
+                if (batch.writer.records() > 0) {
+                    totalRecords += flush(batch);
+                } else {
+                    batch.buffer.delete();
+                }
+                batch = null;
+            } while (buffer.size() > 0);
+
+            reportDrops(dropped.get(), reportedDrops);
+            if (barStream.failure() != null) {
+                throw new IllegalStateException("Stream ended early after " + totalRecords + " price records: "
+                    + barStream.failure().getMessage(), barStream.failure());
+            }
+            logger.info("Streamed " + totalRecords + " price records, " + dropped.get() + " dropped on a full buffer");
+            return totalRecords;
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Failed to stream price data: " + e.getMessage(), e);
+            throw new RuntimeException("Failed to stream price data: " + e.getMessage(), e);
+        }
+    }
+
+    private long reportDrops(long dropped, long reported) {
+        if (dropped > reported) {
+            logger.warning("Dropped " + (dropped - reported) + " bars on a full ring buffer (" + dropped
+                + " in all), consider a larger stream.buffer-capacity");
+        }
+        return dropped;
+    }
+
+    private int flush(MicroBatch batch) throws IOException {
+        SpillableOutputStream buffer = batch.buffer;
+        try {
+            batch.writer.close();
+            String key = keyPrefix + PriceCsvWriter.objectKey(LocalDate.now(MARKET_ZONE), nextSequence());
+            if (buffer.isSpilled()) {
+                s3Service.putObject(dataBucketName, key, buffer.getPath(), buffer.sha256());
+            } else {
+                s3Service.putObject(dataBucketName, key, buffer.getChunks(), buffer.size(), buffer.sha256());
+            }
+            logger.info("Uploaded " + batch.writer.records() + " streamed price records to S3: " + key);
+            return batch.writer.records();
+        } finally {
+            buffer.delete();
+        }
+    }
+
+    /**
+     * Seconds since midnight in New York, bumped when two flushes land in the same second, so
+     * micro-batch keys sort by time and never collide within a day.
+     */
+    private int nextSequence() {
+        lastSequence = Math.max(LocalTime.now(MARKET_ZONE).toSecondOfDay(), lastSequence + 1);
+        return lastSequence;
+    }
+
+    private class MicroBatch {
+        private final SpillableOutputStream buffer;
+        private final PriceCsvWriter writer;
+        private final long openedAt = System.currentTimeMillis();
+
+        MicroBatch() throws IOException {
+            this.buffer = memoryMonitor.newOutputBuffer();
+            this.writer = new PriceCsvWriter(buffer);
+        }
+
+        void write(StorageStockBar bar) {
+            try {
+                writer.write(List.of(bar));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to encode streamed bar", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.darylmathison.market.service.impl;
+
+import com.darylmathison.market.model.SymbolStats;
+import com.darylmathison.market.service.S3Service;
+import com.darylmathison.market.service.SymbolStatsService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps SymbolStats as a small gzipped JSON object in the data bucket.
+ */
+@Service
+public class SymbolStatsServiceImpl implements SymbolStatsService {
+
+    private static final Logger logger = Logger.getLogger(SymbolStatsServiceImpl.class.getName());
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Value("${data.bucket.name}")
+    private String dataBucketName;
+
+    @Value("${data.state.symbol-stats-key:state/symbol_stats.json.gz}")
+    private String symbolStatsKey;
+
+    private final S3Service s3Service;
+
+    public SymbolStatsServiceImpl(S3Service s3Service) {
+        this.s3Service = s3Service;
+    }
+
+    /**
+     * Loads the stats written by the previous run.
+     *
+     * @return The stored stats, or empty stats on the first run or when the object cannot be read
+     */
+    @Override
+    public SymbolStats load() {
+        try {
+            byte[] data = s3Service.getObjectIfExists(dataBucketName, symbolStatsKey);
+            if (data == null) {
+                logger.info("No symbol stats found at " + symbolStatsKey + ", planning without history");
+                return new SymbolStats();
+            }
+            try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+                return mapper.readValue(in, SymbolStats.class);
+            }
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Failed to load symbol stats, planning without history", e);
+            return new SymbolStats();
+        }
+    }
+
+    @Override
+    public void save(SymbolStats symbolStats) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+                mapper.writeValue(gzipOut, symbolStats);
+            }
+            s3Service.putObject(dataBucketName, symbolStatsKey, out.toByteArray());
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to save symbol stats: " + e.getMessage(), e);
+        }
+    }
+}
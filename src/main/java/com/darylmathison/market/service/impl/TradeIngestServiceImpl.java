@@ -0,0 +1,139 @@
+package com.darylmathison.market.service.impl;
+
+import com.darylmathison.market.aggregate.TradeBarAggregator;
+import com.darylmathison.market.dto.TradeDataDTO;
+import com.darylmathison.market.io.MemoryMonitor;
+import com.darylmathison.market.io.PriceCsvWriter;
+import com.darylmathison.market.io.SpillableOutputStream;
+import com.darylmathison.market.io.TradeBarCsvWriter;
+import com.darylmathison.market.model.SessionHours;
+import com.darylmathison.market.model.TimeWindow;
+import com.darylmathison.market.model.TradeBarType;
+import com.darylmathison.market.model.TradingSession;
+import com.darylmathison.market.service.S3Service;
+import com.darylmathison.market.service.TradeIngestService;
+import com.darylmathison.market.service.TradingCalendarService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Builds bars from historical trades for a few selected symbols, for timeframes Alpaca does not
+ * serve and for true share volume, VWAP and trade count. Trades are aggregated as they are paged
+ * in, so a whole session of a liquid symbol never has to be held.
+ */
+@Service
+public class TradeIngestServiceImpl implements TradeIngestService {
+
+    private static final Logger logger = Logger.getLogger(TradeIngestServiceImpl.class.getName());
+    private static final ZoneId MARKET_ZONE = ZoneId.of("America/New_York");
+
+    @Value("${data.bucket.name}")
+    private String dataBucketName;
+
+    @Value("${trades.symbols:}")
+    private List<String> defaultSymbols;
+
+    @Value("${trades.bar-type:TIME}")
+    private TradeBarType barType;
+
+    @Value("${trades.bar-size:60}")
+    private long barSize;
+
+    @Value("${trades.sessions:1}")
+    private int sessionCount;
+
+    @Value("${trades.prefix:trades/}")
+    private String tradesPrefix;
+
+    @Value("${history.session-hours:EXTENDED}")
+    private SessionHours sessionHours;
+
+    private final TradeDataDTO tradeDataDTO;
+    private final S3Service s3Service;
+    private final TradingCalendarService tradingCalendarService;
+    private final MemoryMonitor memoryMonitor;
+
+    public TradeIngestServiceImpl(TradeDataDTO tradeDataDTO, S3Service s3Service,
+                                  TradingCalendarService tradingCalendarService, MemoryMonitor memoryMonitor) {
+        this.tradeDataDTO = tradeDataDTO;
+        this.s3Service = s3Service;
+        this.tradingCalendarService = tradingCalendarService;
+        this.memoryMonitor = memoryMonitor;
+    }
+
+    /**
+     * Aggregates the last completed sessions' trades for the symbols into one file of bars.
+     *
+     * @param symbols Symbols to ingest, or null or empty for trades.symbols
+     * @return Number of bars written
+     */
+    @Override
+    public int ingest(List<String> symbols) {
+        try {
+            List<String> selected = symbols == null || symbols.isEmpty() ? defaultSymbols : symbols;
+            if (selected == null || selected.isEmpty()) {
+                logger.warning("No symbols selected for trade ingest");
+                return 0;
+            }
+
+            ZonedDateTime asOf = ZonedDateTime.now(MARKET_ZONE);
+            List<TradingSession> sessions = tradingCalendarService.completedSessions(sessionCount, asOf, sessionHours);
+            logger.info("Ingesting trades for " + selected.size() + " symbols over " + sessions.size() + " sessions into "
+                       + barType + " bars of " + barSize);
+
+            SpillableOutputStream buffer = memoryMonitor.newOutputBuffer();
+            try {
+                TradeBarCsvWriter writer = new TradeBarCsvWriter(buffer);
+                TradeBarAggregator aggregator = new TradeBarAggregator(barType, barSize, bar -> {
+                    try {
+                        writer.write(bar);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to encode trade bar", e);
+                    }
+                });
+                // One session at a time, so tick and volume bars do not carry over the overnight gap
+                for (TradingSession session : sessions) {
+                    for (TimeWindow window : tradingCalendarService.requestWindows(List.of(session), sessionHours)) {
+                        tradeDataDTO.streamTrades(selected, window.getStart(), window.getEnd(), aggregator);
+                    }
+                    aggregator.finish();
+                }
+                writer.close();
+
+                // Kept out of the raw price files' key space, which readers match as stock_prices_*.csv.gz
+                String key = tradesPrefix + PriceCsvWriter.objectKey(label(), asOf.toLocalDate());
+                if (buffer.isSpilled()) {
+                    s3Service.putObject(dataBucketName, key, buffer.getPath(), buffer.sha256());
+                } else {
+                    s3Service.putObject(dataBucketName, key, buffer.getChunks(), buffer.size(), buffer.sha256());
+                }
+                logger.info("Uploaded " + writer.records() + " trade bars to S3: " + key);
+                return writer.records();
+            } finally {
+                buffer.delete();
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Failed to ingest trades: " + e.getMessage(), e);
+            throw new RuntimeException("Failed to ingest trades: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * File label such as "trades_60s", "trades_500tick" or "trades_100000vol".
+     */
+    private String label() {
+        return "trades_" + barSize + switch (barType) {
+            case TIME -> "s";
+            case TICK -> "tick";
+            case VOLUME -> "vol";
+        };
+    }
+}
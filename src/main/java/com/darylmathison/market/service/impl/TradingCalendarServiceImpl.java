@@ -0,0 +1,280 @@
+package com.darylmathison.market.service.impl;
+
+import com.darylmathison.market.model.SessionHours;
+import com.darylmathison.market.model.TimeWindow;
+import com.darylmathison.market.model.TradingSession;
+import com.darylmathison.market.service.TradingCalendarService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.Month;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * NYSE session calendar. Regular holidays and early closes are computed from the exchange's rules;
+ * one-off closures come from a bundled exceptions file. Computed years are cached for the life of
+ * the Lambda container so warm invocations skip the work.
+ */
+@Service
+public class TradingCalendarServiceImpl implements TradingCalendarService {
+
+    private static final Logger logger = Logger.getLogger(TradingCalendarServiceImpl.class.getName());
+    private static final ZoneId MARKET_ZONE = ZoneId.of("America/New_York");
+    private static final LocalTime EXTENDED_OPEN = LocalTime.of(4, 0);
+    private static final LocalTime REGULAR_OPEN = LocalTime.of(9, 30);
+    private static final LocalTime REGULAR_CLOSE = LocalTime.of(16, 0);
+    private static final LocalTime EXTENDED_CLOSE = LocalTime.of(20, 0);
+    private static final LocalTime EARLY_REGULAR_CLOSE = LocalTime.of(13, 0);
+    private static final LocalTime EARLY_EXTENDED_CLOSE = LocalTime.of(17, 0);
+    private static final int MAX_LOOKBACK_DAYS = 3660;
+
+    private static final Map<Integer, YearSchedule> scheduleCache = new ConcurrentHashMap<>();
+    private static volatile Map<LocalDate, String> exceptions;
+
+    @Value("${calendar.exceptions-file:classpath:calendar/nyse_exceptions.csv}")
+    private Resource exceptionsFile;
+
+    private record YearSchedule(Set<LocalDate> closed, Set<LocalDate> earlyClose) {}
+
+    /**
+     * Gets the session for a date.
+     *
+     * @param date The New York calendar date
+     * @return The session, or null when the exchange is closed that day
+     */
+    @Override
+    public TradingSession getSession(LocalDate date) {
+        DayOfWeek dayOfWeek = date.getDayOfWeek();
+        YearSchedule schedule = schedule(date.getYear());
+        if (dayOfWeek == DayOfWeek.SATURDAY || dayOfWeek == DayOfWeek.SUNDAY || schedule.closed().contains(date)) {
+            return null;
+        }
+        boolean early = schedule.earlyClose().contains(date);
+        return TradingSession.builder()
+            .date(date)
+            .extendedOpen(date.atTime(EXTENDED_OPEN).atZone(MARKET_ZONE))
+            .regularOpen(date.atTime(REGULAR_OPEN).atZone(MARKET_ZONE))
+            .regularClose(date.atTime(early ? EARLY_REGULAR_CLOSE : REGULAR_CLOSE).atZone(MARKET_ZONE))
+            .extendedClose(date.atTime(early ? EARLY_EXTENDED_CLOSE : EXTENDED_CLOSE).atZone(MARKET_ZONE))
+            .earlyClose(early)
+            .build();
+    }
+
+    /**
+     * Finds the most recent sessions that had closed by the given time, so a run during market
+     * hours never requests a partial day.
+     *
+     * @param count Number of sessions
+     * @param asOf The time of the run
+     * @param hours Whether the session closes at the regular or extended close
+     * @return The sessions in chronological order
+     */
+    @Override
+    public List<TradingSession> completedSessions(int count, ZonedDateTime asOf, SessionHours hours) {
+        List<TradingSession> sessions = new ArrayList<>(count);
+        LocalDate date = asOf.withZoneSameInstant(MARKET_ZONE).toLocalDate();
+        for (int i = 0; sessions.size() < count && i < MAX_LOOKBACK_DAYS; i++, date = date.minusDays(1)) {
+            TradingSession session = getSession(date);
+            if (session != null && !session.close(hours).isAfter(asOf)) {
+                sessions.add(session);
+            }
+        }
+        Collections.reverse(sessions);
+        return sessions;
+    }
+
+    /**
+     * Lists the sessions between two dates, both inclusive, leaving out any that had not closed
+     * by the given time.
+     *
+     * @param from First date
+     * @param to Last date
+     * @param asOf The time of the run
+     * @param hours Whether the session closes at the regular or extended close
+     * @return The sessions in chronological order
+     */
+    @Override
+    public List<TradingSession> sessionsBetween(LocalDate from, LocalDate to, ZonedDateTime asOf, SessionHours hours) {
+        List<TradingSession> sessions = new ArrayList<>();
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            TradingSession session = getSession(date);
+            if (session != null && !session.close(hours).isAfter(asOf)) {
+                sessions.add(session);
+            }
+        }
+        return sessions;
+    }
+
+    /**
+     * Turns sessions into request ranges. Regular hours need one range per session to leave out
+     * the pre- and post-market bars. Extended hours cover everything the feed trades, so
+     * consecutive sessions are merged into a single range and the closed nights in between cost
+     * nothing.
+     */
+    @Override
+    public List<TimeWindow> requestWindows(List<TradingSession> sessions, SessionHours hours) {
+        List<TimeWindow> windows = new ArrayList<>();
+        for (TradingSession session : sessions) {
+            TimeWindow last = windows.isEmpty() ? null : windows.getLast();
+            if (hours == SessionHours.EXTENDED && last != null && isPreviousSession(last.getEnd(), session)) {
+                last.setEnd(session.close(hours));
+            } else {
+                windows.add(new TimeWindow(session.open(hours), session.close(hours)));
+            }
+        }
+        return windows;
+    }
+
+    /**
+     * Drops cached years and reloads the exceptions file.
+     */
+    @Override
+    public void refresh() {
+        exceptions = loadExceptions();
+        scheduleCache.clear();
+    }
+
+    private boolean isPreviousSession(ZonedDateTime previousClose, TradingSession session) {
+        LocalDate date = previousClose.withZoneSameInstant(MARKET_ZONE).toLocalDate().plusDays(1);
+        while (date.isBefore(session.getDate())) {
+            if (getSession(date) != null) {
+                return false;
+            }
+            date = date.plusDays(1);
+        }
+        return true;
+    }
+
+    private YearSchedule schedule(int year) {
+        return scheduleCache.computeIfAbsent(year, this::buildSchedule);
+    }
+
+    private YearSchedule buildSchedule(int year) {
+        Set<LocalDate> closed = new HashSet<>();
+        Set<LocalDate> earlyClose = new HashSet<>();
+
+        // New Year's Day falling on a Saturday is not observed on the Friday before
+        LocalDate newYear = LocalDate.of(year, Month.JANUARY, 1);
+        closed.add(newYear.getDayOfWeek() == DayOfWeek.SUNDAY ? newYear.plusDays(1) : newYear);
+        closed.add(nthWeekday(year, Month.JANUARY, DayOfWeek.MONDAY, 3));
+        closed.add(nthWeekday(year, Month.FEBRUARY, DayOfWeek.MONDAY, 3));
+        closed.add(easterSunday(year).minusDays(2));
+        closed.add(LocalDate.of(year, Month.MAY, 1).with(TemporalAdjusters.lastInMonth(DayOfWeek.MONDAY)));
+        if (year >= 2022) {
+            closed.add(observed(LocalDate.of(year, Month.JUNE, 19)));
+        }
+        closed.add(observed(LocalDate.of(year, Month.JULY, 4)));
+        closed.add(nthWeekday(year, Month.SEPTEMBER, DayOfWeek.MONDAY, 1));
+        LocalDate thanksgiving = nthWeekday(year, Month.NOVEMBER, DayOfWeek.THURSDAY, 4);
+        closed.add(thanksgiving);
+        closed.add(observed(LocalDate.of(year, Month.DECEMBER, 25)));
+
+        // The day before Independence Day and Christmas Eve close early when they fall Monday to Thursday
+        addIfMondayToThursday(earlyClose, LocalDate.of(year, Month.JULY, 3));
+        earlyClose.add(thanksgiving.plusDays(1));
+        addIfMondayToThursday(earlyClose, LocalDate.of(year, Month.DECEMBER, 24));
+
+        exceptions().forEach((date, type) -> {
+            if (date.getYear() != year) {
+                return;
+            }
+            if ("CLOSED".equals(type)) {
+                closed.add(date);
+            } else if ("EARLY_CLOSE".equals(type)) {
+                earlyClose.add(date);
+            }
+        });
+        earlyClose.removeAll(closed);
+        return new YearSchedule(closed, earlyClose);
+    }
+
+    private Map<LocalDate, String> exceptions() {
+        Map<LocalDate, String> loaded = exceptions;
+        if (loaded == null) {
+            synchronized (TradingCalendarServiceImpl.class) {
+                if (exceptions == null) {
+                    exceptions = loadExceptions();
+                }
+                loaded = exceptions;
+            }
+        }
+        return loaded;
+    }
+
+    private Map<LocalDate, String> loadExceptions() {
+        Map<LocalDate, String> loaded = new HashMap<>();
+        if (exceptionsFile == null || !exceptionsFile.exists()) {
+            logger.warning("No calendar exceptions file found, using computed holidays only");
+            return loaded;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(exceptionsFile.getInputStream(), StandardCharsets.UTF_8))) {
+            reader.lines()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .forEach(line -> {
+                    String[] fields = line.split(",");
+                    loaded.put(LocalDate.parse(fields[0].trim()), fields[1].trim());
+                });
+            return loaded;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load calendar exceptions: " + exceptionsFile, e);
+        }
+    }
+
+    private static void addIfMondayToThursday(Set<LocalDate> dates, LocalDate date) {
+        if (date.getDayOfWeek().getValue() <= DayOfWeek.THURSDAY.getValue()) {
+            dates.add(date);
+        }
+    }
+
+    private static LocalDate observed(LocalDate holiday) {
+        return switch (holiday.getDayOfWeek()) {
+            case SATURDAY -> holiday.minusDays(1);
+            case SUNDAY -> holiday.plusDays(1);
+            default -> holiday;
+        };
+    }
+
+    private static LocalDate nthWeekday(int year, Month month, DayOfWeek dayOfWeek, int n) {
+        return LocalDate.of(year, month, 1).with(TemporalAdjusters.dayOfWeekInMonth(n, dayOfWeek));
+    }
+
+    /**
+     * Anonymous Gregorian algorithm.
+     */
+    private static LocalDate easterSunday(int year) {
+        int a = year % 19;
+        int b = year / 100;
+        int c = year % 100;
+        int d = b / 4;
+        int e = b % 4;
+        int f = (b + 8) / 25;
+        int g = (b - f + 1) / 3;
+        int h = (19 * a + b - d - g + 15) % 30;
+        int i = c / 4;
+        int k = c % 4;
+        int l = (32 + 2 * e + 2 * i - h - k) % 7;
+        int m = (a + 11 * h + 22 * l) / 451;
+        int month = (h + l - 7 * m + 114) / 31;
+        int day = (h + l - 7 * m + 114) % 31 + 1;
+        return LocalDate.of(year, month, day);
+    }
+}
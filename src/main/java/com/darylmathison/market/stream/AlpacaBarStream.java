@@ -0,0 +1,347 @@
+package com.darylmathison.market.stream;
+
+import com.darylmathison.market.model.ApiKeyPair;
+import com.darylmathison.market.model.StorageStockBar;
+import com.darylmathison.market.service.SecretsService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Minute bars from Alpaca's market data websocket. Speaks the documented JSON protocol directly so
+ * the endpoint can be pointed at a local stand-in with alpaca.stream.url. When the server closes
+ * the connection, it fails or it stops answering pings, the stream connects again and
+ * resubscribes, backing off between attempts; once alpaca.stream.max-reconnects attempts in a row
+ * have failed it ends and reports the failure.
+ */
+@Component
+@ConditionalOnProperty(name = "stream.source", havingValue = "alpaca", matchIfMissing = true)
+public class AlpacaBarStream implements BarStream {
+
+  private static final Logger logger = Logger.getLogger(AlpacaBarStream.class.getName());
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  @Value("${alpaca.stream.url:wss://stream.data.alpaca.markets/v2/iex}")
+  private String streamUrl;
+
+  @Value("${alpaca.stream.connect-timeout-ms:10000}")
+  private long connectTimeoutMillis;
+
+  @Value("${alpaca.stream.max-reconnects:5}")
+  private int maxReconnects;
+
+  @Value("${alpaca.stream.reconnect-delay-ms:1000}")
+  private long reconnectDelayMillis;
+
+  @Value("${alpaca.stream.heartbeat-ms:30000}")
+  private long heartbeatMillis;
+
+  @Value("${alpaca.secret-name}")
+  private String alpacaSecretName;
+
+  private final SecretsService secretsService;
+  // Shared by every connection and reconnect so each one reuses the same selector thread and pool
+  private final HttpClient httpClient = HttpClient.newHttpClient();
+
+  private volatile WebSocket webSocket;
+  private volatile Listener connection;
+  private volatile boolean open;
+  private volatile boolean closing;
+  private volatile Throwable failure;
+  private volatile CompletableFuture<Void> subscribed;
+  private final AtomicBoolean reconnecting = new AtomicBoolean();
+  private Consumer<StorageStockBar> listener;
+  private ApiKeyPair apiKeyPair;
+  private Collection<String> symbols;
+
+  public AlpacaBarStream(SecretsService secretsService) {
+    this.secretsService = secretsService;
+  }
+
+  @Override
+  public void subscribe(Collection<String> symbols, Consumer<StorageStockBar> listener) throws Exception {
+    this.symbols = symbols;
+    this.listener = listener;
+    this.apiKeyPair = secretsService.getSecretApiKeyPair(alpacaSecretName);
+    this.closing = false;
+    this.failure = null;
+
+    open = true;
+    try {
+      connect();
+    } catch (Exception e) {
+      open = false;
+      throw e;
+    }
+    Thread.ofVirtual().name("bar-stream-heartbeat").start(this::heartbeat);
+    logger.info("Subscribed to minute bars for " + symbols.size() + " symbols at " + streamUrl);
+  }
+
+  @Override
+  public boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public Throwable failure() {
+    return failure;
+  }
+
+  @Override
+  public void close() {
+    closing = true;
+    open = false;
+    WebSocket socket = webSocket;
+    if (socket != null && !socket.isOutputClosed()) {
+      socket.sendClose(WebSocket.NORMAL_CLOSURE, "done");
+    }
+  }
+
+  /**
+   * Opens a connection and waits until the server has confirmed the subscription.
+   */
+  private void connect() throws Exception {
+    Listener attempt = new Listener();
+    subscribed = attempt.subscribed;
+    connection = attempt;
+    WebSocket socket = httpClient.newWebSocketBuilder()
+        .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+        .buildAsync(URI.create(streamUrl), attempt)
+        .get(connectTimeoutMillis, TimeUnit.MILLISECONDS);
+    webSocket = socket;
+    try {
+      attempt.subscribed.get(connectTimeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (Exception e) {
+      socket.abort();
+      throw e;
+    }
+  }
+
+  /**
+   * Pings the server every alpaca.stream.heartbeat-ms and gives the connection up as lost once
+   * nothing has come back for two intervals. This catches connections that end without the client
+   * being told, as when the network drops them or the server's close arrives in the same read as
+   * its last frame, which the JDK client does not report.
+   */
+  private void heartbeat() {
+    try {
+      while (!closing && open) {
+        Thread.sleep(heartbeatMillis);
+        Listener current = connection;
+        WebSocket socket = current.socket;
+        if (socket == null || !current.isSubscribed()) {
+          continue;
+        }
+        long silentMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - current.lastHeard);
+        if (silentMillis > 2 * heartbeatMillis) {
+          socket.abort();
+          current.ended("nothing heard for " + silentMillis + " ms",
+              new IllegalStateException("Stream silent for " + silentMillis + " ms"));
+        } else if (!socket.isOutputClosed()) {
+          socket.sendPing(ByteBuffer.allocate(0));
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Called when a subscribed connection ends without close having been called. Reconnects off the
+   * socket's own thread, so the listener returns straight away.
+   */
+  private void connectionLost(Listener lost, String reason) {
+    if (closing || lost != connection || !reconnecting.compareAndSet(false, true)) {
+      return;
+    }
+    logger.warning("Stream connection lost (" + reason + "), reconnecting");
+    Thread.ofVirtual().name("bar-stream-reconnect").start(() -> {
+      try {
+        reconnect(reason);
+      } finally {
+        reconnecting.set(false);
+      }
+      // A new connection lost while this one was still finishing up went unanswered
+      Listener current = connection;
+      if (current != lost && current.lost) {
+        connectionLost(current, "lost right after resubscribing");
+      }
+    });
+  }
+
+  private void reconnect(String reason) {
+    for (int attempt = 1; !closing; attempt++) {
+      try {
+        Thread.sleep(Math.min(reconnectDelayMillis << Math.min(attempt - 1, 10), 60_000L));
+        connect();
+        logger.info("Stream resubscribed to " + symbols.size() + " symbols after " + attempt + " attempts");
+        return;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception e) {
+        if (attempt >= maxReconnects) {
+          failure = new IllegalStateException("Stream lost after " + attempt + " reconnect attempts: " + reason, e);
+          logger.log(Level.SEVERE, failure.getMessage(), e);
+          open = false;
+          return;
+        }
+        logger.log(Level.WARNING, "Stream reconnect attempt " + attempt + " failed", e);
+      }
+    }
+  }
+
+  /**
+   * Handles one complete message, which the server always sends as an array of events.
+   */
+  void onMessage(WebSocket socket, String text) throws Exception {
+    onMessage(socket, text, subscribed);
+  }
+
+  private void onMessage(WebSocket socket, String text, CompletableFuture<Void> subscribed) throws Exception {
+    for (JsonNode event : mapper.readTree(text)) {
+      switch (event.path("T").asText()) {
+        case "b" -> listener.accept(toStorageStockBar(event));
+        case "success" -> {
+          if ("connected".equals(event.path("msg").asText())) {
+            socket.sendText(authMessage(), true);
+          } else if ("authenticated".equals(event.path("msg").asText())) {
+            socket.sendText(subscribeMessage(), true);
+          }
+        }
+        case "subscription" -> subscribed.complete(null);
+        case "error" -> {
+          IllegalStateException error = new IllegalStateException(
+              "Stream error " + event.path("code").asInt() + ": " + event.path("msg").asText());
+          if (!subscribed.completeExceptionally(error)) {
+            logger.warning(error.getMessage());
+          }
+        }
+        default -> { }
+      }
+    }
+  }
+
+  /**
+   * Same mapping as the historical bars, including the trade count in the volume column.
+   */
+  static StorageStockBar toStorageStockBar(JsonNode event) {
+    return StorageStockBar.builder()
+        .symbol(event.path("S").asText())
+        .timestamp(ZonedDateTime.parse(event.path("t").asText()))
+        .open(event.path("o").asDouble())
+        .high(event.path("h").asDouble())
+        .low(event.path("l").asDouble())
+        .close(event.path("c").asDouble())
+        .volume(event.path("n").asDouble())
+        .build();
+  }
+
+  private String authMessage() throws Exception {
+    ObjectNode message = mapper.createObjectNode();
+    message.put("action", "auth");
+    message.put("key", apiKeyPair.getApiKey());
+    message.put("secret", apiKeyPair.getSecretKey());
+    return mapper.writeValueAsString(message);
+  }
+
+  private String subscribeMessage() throws Exception {
+    ObjectNode message = mapper.createObjectNode();
+    message.put("action", "subscribe");
+    symbols.forEach(message.putArray("bars")::add);
+    return mapper.writeValueAsString(message);
+  }
+
+  /**
+   * One per connection, so a late callback from a replaced connection cannot confirm or end the
+   * current one. Only a connection whose subscription was confirmed counts as lost when it ends;
+   * one that fails before that fails its connect.
+   */
+  private class Listener implements WebSocket.Listener {
+    private final StringBuilder partial = new StringBuilder();
+    private final CompletableFuture<Void> subscribed = new CompletableFuture<>();
+    private volatile WebSocket socket;
+    private volatile long lastHeard = System.nanoTime();
+    private volatile boolean lost;
+
+    @Override
+    public void onOpen(WebSocket socket) {
+      this.socket = socket;
+      socket.request(1);
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket socket, CharSequence data, boolean last) {
+      lastHeard = System.nanoTime();
+      partial.append(data);
+      if (last) {
+        try {
+          onMessage(socket, partial.toString(), subscribed);
+        } catch (Exception e) {
+          logger.log(Level.WARNING, "Failed to handle stream message", e);
+        }
+        partial.setLength(0);
+      }
+      socket.request(1);
+      return null;
+    }
+
+    @Override
+    public CompletionStage<?> onPing(WebSocket socket, ByteBuffer message) {
+      lastHeard = System.nanoTime();
+      socket.request(1);
+      return null;
+    }
+
+    @Override
+    public CompletionStage<?> onPong(WebSocket socket, ByteBuffer message) {
+      lastHeard = System.nanoTime();
+      socket.request(1);
+      return null;
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket socket, int statusCode, String reason) {
+      logger.info("Stream closed: " + statusCode + " " + reason);
+      ended("closed with " + statusCode + " " + reason,
+          new IllegalStateException("Stream closed: " + statusCode + " " + reason));
+      return null;
+    }
+
+    @Override
+    public void onError(WebSocket socket, Throwable error) {
+      logger.log(Level.WARNING, "Stream failed", error);
+      ended(String.valueOf(error), error);
+    }
+
+    private boolean isSubscribed() {
+      return subscribed.isDone() && !subscribed.isCompletedExceptionally();
+    }
+
+    private void ended(String reason, Throwable cause) {
+      boolean wasSubscribed = isSubscribed();
+      subscribed.completeExceptionally(cause);
+      if (wasSubscribed && !lost) {
+        lost = true;
+        connectionLost(this, reason);
+      }
+    }
+  }
+}
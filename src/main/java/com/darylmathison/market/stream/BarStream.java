@@ -0,0 +1,34 @@
+package com.darylmathison.market.stream;
+
+import com.darylmathison.market.model.StorageStockBar;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * A live source of minute bars. The listener is called from the stream's own thread and must not
+ * block.
+ */
+public interface BarStream extends AutoCloseable {
+
+  /**
+   * Connects and subscribes to minute bars for the symbols, returning once the subscription is
+   * confirmed.
+   */
+  void subscribe(Collection<String> symbols, Consumer<StorageStockBar> listener) throws Exception;
+
+  /**
+   * Whether bars may still arrive. A replay ends on its own; a live stream only when it cannot
+   * get its connection back.
+   */
+  boolean isOpen();
+
+  /**
+   * Why the stream ended early, or null while it is open or when it ended on its own.
+   */
+  default Throwable failure() {
+    return null;
+  }
+
+  @Override
+  void close();
+}
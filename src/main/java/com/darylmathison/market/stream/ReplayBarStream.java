@@ -0,0 +1,138 @@
+package com.darylmathison.market.stream;
+
+import com.darylmathison.market.model.StorageStockBar;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stand-in for the live stream that plays back a recorded price file, or synthetic bars when no
+ * file is configured, so the streaming path can run offline and in tests.
+ */
+@Component
+@ConditionalOnProperty(name = "stream.source", havingValue = "replay")
+public class ReplayBarStream implements BarStream {
+
+  private static final Logger logger = Logger.getLogger(ReplayBarStream.class.getName());
+  private static final ZoneId MARKET_ZONE = ZoneId.of("America/New_York");
+
+  /** A stock_prices_*.csv.gz file written by this project. */
+  @Value("${stream.replay.file:}")
+  private String replayFile;
+
+  @Value("${stream.replay.bars-per-symbol:390}")
+  private int barsPerSymbol;
+
+  @Value("${stream.replay.interval-ms:0}")
+  private long intervalMillis;
+
+  private volatile boolean open;
+  private Thread player;
+
+  @Override
+  public void subscribe(Collection<String> symbols, Consumer<StorageStockBar> listener) {
+    Set<String> subscribed = new HashSet<>(symbols);
+    open = true;
+    player = Thread.ofPlatform().daemon().name("bar-replay").start(() -> {
+      try {
+        if (replayFile == null || replayFile.isBlank()) {
+          playSynthetic(subscribed, listener);
+        } else {
+          playFile(subscribed, listener);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (Exception e) {
+        logger.log(Level.WARNING, "Replay failed", e);
+      } finally {
+        open = false;
+      }
+    });
+  }
+
+  @Override
+  public boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public void close() {
+    open = false;
+    if (player != null) {
+      player.interrupt();
+    }
+  }
+
+  private void playFile(Set<String> symbols, Consumer<StorageStockBar> listener) throws Exception {
+    try (Reader reader = new InputStreamReader(new GZIPInputStream(Files.newInputStream(Path.of(replayFile))),
+        StandardCharsets.UTF_8)) {
+      for (CSVRecord record : CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true).get().parse(reader)) {
+        if (!open) {
+          return;
+        }
+        if (symbols.contains(record.get("symbol"))) {
+          emit(listener, StorageStockBar.builder()
+              .symbol(record.get("symbol"))
+              .timestamp(ZonedDateTime.parse(record.get("timestamp")))
+              .open(Double.parseDouble(record.get("open")))
+              .high(Double.parseDouble(record.get("high")))
+              .low(Double.parseDouble(record.get("low")))
+              .close(Double.parseDouble(record.get("close")))
+              .volume(Double.parseDouble(record.get("volume")))
+              .build());
+        }
+      }
+    }
+  }
+
+  /**
+   * A random walk per symbol, one bar a minute from today's regular open.
+   */
+  private void playSynthetic(Set<String> symbols, Consumer<StorageStockBar> listener) throws Exception {
+    Random random = new Random(42);
+    ZonedDateTime sessionOpen = ZonedDateTime.now(MARKET_ZONE).truncatedTo(ChronoUnit.DAYS).withHour(9).withMinute(30);
+    double[] prices = symbols.stream().mapToDouble(symbol -> 10 + random.nextInt(500)).toArray();
+    for (int minute = 0; minute < barsPerSymbol && open; minute++) {
+      int i = 0;
+      for (String symbol : symbols) {
+        double first = prices[i];
+        double last = first * (1 + random.nextGaussian() * 0.001);
+        prices[i++] = last;
+        emit(listener, StorageStockBar.builder()
+            .symbol(symbol)
+            .timestamp(sessionOpen.plusMinutes(minute))
+            .open(first)
+            .high(Math.max(first, last) * (1 + random.nextDouble() * 0.0005))
+            .low(Math.min(first, last) * (1 - random.nextDouble() * 0.0005))
+            .close(last)
+            .volume(1 + random.nextInt(200))
+            .build());
+      }
+    }
+  }
+
+  private void emit(Consumer<StorageStockBar> listener, StorageStockBar bar) throws InterruptedException {
+    listener.accept(bar);
+    if (intervalMillis > 0) {
+      Thread.sleep(intervalMillis);
+    }
+  }
+}
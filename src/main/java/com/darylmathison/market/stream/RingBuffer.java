@@ -0,0 +1,112 @@
+package com.darylmathison.market.stream;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded lock-free queue between the threads receiving bars and the thread encoding them. Each
+ * slot carries a sequence number telling producers and consumers whose turn it is, so neither
+ * side takes a lock or allocates per element. A full buffer rejects the element instead of
+ * blocking the receiving thread.
+ */
+public class RingBuffer<T> {
+
+  private final int mask;
+  private final AtomicReferenceArray<T> items;
+  private final AtomicLongArray sequences;
+  private final AtomicLong tail = new AtomicLong();
+  private final AtomicLong head = new AtomicLong();
+
+  /**
+   * @param capacity Number of slots, rounded up to a power of two
+   */
+  public RingBuffer(int capacity) {
+    int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+    this.mask = size - 1;
+    this.items = new AtomicReferenceArray<>(size);
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * @return false when the buffer is full
+   */
+  public boolean offer(T item) {
+    long position = tail.get();
+    while (true) {
+      int index = (int) (position & mask);
+      long difference = sequences.get(index) - position;
+      if (difference == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          items.set(index, item);
+          sequences.set(index, position + 1);
+          return true;
+        }
+        position = tail.get();
+      } else if (difference < 0) {
+        return false;
+      } else {
+        position = tail.get();
+      }
+    }
+  }
+
+  /**
+   * @return The oldest element, or null when the buffer is empty
+   */
+  public T poll() {
+    long position = head.get();
+    while (true) {
+      int index = (int) (position & mask);
+      long difference = sequences.get(index) - (position + 1);
+      if (difference == 0) {
+        if (head.compareAndSet(position, position + 1)) {
+          T item = items.getAndSet(index, null);
+          sequences.set(index, position + mask + 1);
+          return item;
+        }
+        position = head.get();
+      } else if (difference < 0) {
+        return null;
+      } else {
+        position = head.get();
+      }
+    }
+  }
+
+  /**
+   * Hands every element currently in the buffer to the consumer.
+   *
+   * @return Number of elements drained
+   */
+  public int drainTo(Consumer<T> consumer) {
+    return drainTo(consumer, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Hands at most the given number of elements to the consumer.
+   *
+   * @return Number of elements drained
+   */
+  public int drainTo(Consumer<T> consumer, int max) {
+    int count = 0;
+    T item;
+    while (count < max && (item = poll()) != null) {
+      consumer.accept(item);
+      count++;
+    }
+    return count;
+  }
+
+  public int capacity() {
+    return mask + 1;
+  }
+
+  public int size() {
+    return (int) Math.max(0, tail.get() - head.get());
+  }
+}
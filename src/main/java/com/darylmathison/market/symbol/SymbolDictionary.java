@@ -0,0 +1,64 @@
+package com.darylmathison.market.symbol;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The configured symbols compiled once per run: trimmed, de-duplicated, interned and sorted, with
+ * each symbol's position in that order as its int id. Ids are dense, so per-symbol state can live
+ * in plain arrays indexed by id, and the sorted order keeps batches and output files in the same
+ * symbol order from run to run.
+ */
+public final class SymbolDictionary {
+
+  private final String[] symbols;
+  private final Map<String, Integer> ids;
+
+  private SymbolDictionary(String[] symbols) {
+    this.symbols = symbols;
+    this.ids = new HashMap<>(symbols.length * 2);
+    for (int id = 0; id < symbols.length; id++) {
+      ids.put(symbols[id], id);
+    }
+  }
+
+  /**
+   * @param lines Symbol list lines; blank lines and surrounding whitespace are ignored
+   */
+  public static SymbolDictionary compile(Collection<String> lines) {
+    return new SymbolDictionary(lines.stream()
+        .map(String::strip)
+        .filter(symbol -> !symbol.isEmpty())
+        .distinct()
+        .sorted()
+        .map(String::intern)
+        .toArray(String[]::new));
+  }
+
+  public int size() {
+    return symbols.length;
+  }
+
+  /**
+   * @return The symbol's id, or -1 when it is not in the dictionary
+   */
+  public int id(String symbol) {
+    Integer id = ids.get(symbol);
+    return id == null ? -1 : id;
+  }
+
+  public String symbol(int id) {
+    return symbols[id];
+  }
+
+  /**
+   * @return The symbols in id order, which is sorted order
+   */
+  public List<String> symbols() {
+    return Collections.unmodifiableList(Arrays.asList(symbols));
+  }
+}
@@ -0,0 +1,172 @@
+package com.darylmathison.market.validation;
+
+import com.darylmathison.market.aggregate.Timeframe;
+import com.darylmathison.market.model.StorageStockBar;
+import com.darylmathison.market.model.ValidationReport;
+import com.darylmathison.market.symbol.SymbolDictionary;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+/**
+ * Checks bars between the download and the writers in a single pass over each page: OHLC
+ * invariants, non-finite values, per-symbol ordering and duplicates, which carry across pages,
+ * and skipped bar slots within a session. Rejected bars are kept aside with their reason for a
+ * quarantine file. A clean page is returned as it is; a copy is only made once a page turns out
+ * to hold a bad bar. Where each symbol's accepted bars have reached is kept in arrays indexed by
+ * its dictionary id, so a bar that is not in the dictionary is rejected as well.
+ */
+public class BarValidator {
+
+  private static final ZoneRules MARKET_RULES = ZoneId.of("America/New_York").getRules();
+  private static final long SECONDS_PER_DAY = 86_400;
+
+  private final long slotSeconds;
+  private final boolean daily;
+  private final int expectedSessions;
+  private final ValidationReport report = new ValidationReport();
+  private final SymbolDictionary dictionary;
+  private final long[] lastEpochSeconds;
+  private final long[] lastDays;
+  private final int[] sessionsSeen;
+  private final List<StorageStockBar> quarantined = new ArrayList<>();
+  private final List<String> reasons = new ArrayList<>();
+
+  /**
+   * @param dictionary The run's symbols
+   * @param timeframe Duration of one bar, used to count skipped slots
+   * @param expectedSessions Number of sessions the run requested
+   */
+  public BarValidator(SymbolDictionary dictionary, Timeframe timeframe, int expectedSessions) {
+    this.dictionary = dictionary;
+    this.slotSeconds = timeframe.minutes() * 60L;
+    this.daily = timeframe.isDaily();
+    this.expectedSessions = expectedSessions;
+    this.lastEpochSeconds = new long[dictionary.size()];
+    this.lastDays = new long[dictionary.size()];
+    this.sessionsSeen = new int[dictionary.size()];
+    Arrays.fill(lastEpochSeconds, Long.MIN_VALUE);
+    Arrays.fill(lastDays, Long.MIN_VALUE);
+  }
+
+  /**
+   * @return The page itself when every bar passed, otherwise a copy without the rejected bars
+   */
+  public List<StorageStockBar> validate(List<StorageStockBar> page) {
+    List<StorageStockBar> accepted = null;
+    for (int i = 0; i < page.size(); i++) {
+      StorageStockBar bar = page.get(i);
+      String reason = check(bar);
+      if (reason != null) {
+        if (accepted == null) {
+          accepted = new ArrayList<>(page.subList(0, i));
+        }
+        quarantined.add(bar);
+        reasons.add(reason);
+      } else if (accepted != null) {
+        accepted.add(bar);
+      }
+    }
+    List<StorageStockBar> result = accepted == null ? page : accepted;
+    report.setBarsChecked(report.getBarsChecked() + page.size());
+    report.setBarsAccepted(report.getBarsAccepted() + result.size());
+    return result;
+  }
+
+  /**
+   * Completes the counts with the sessions each requested symbol never reported, all of them for
+   * a symbol that returned no bars at all.
+   *
+   * @param requested The symbols the run asked for
+   */
+  public ValidationReport finish(Collection<String> requested) {
+    long missing = 0;
+    for (String symbol : requested) {
+      int id = dictionary.id(symbol);
+      missing += Math.max(0, expectedSessions - (id < 0 ? 0 : sessionsSeen[id]));
+    }
+    report.setMissingSessions(missing);
+    return report;
+  }
+
+  public boolean hasQuarantined() {
+    return !quarantined.isEmpty();
+  }
+
+  /**
+   * The rejected bars as gzip compressed CSV, in the price file layout plus a reason column.
+   */
+  public byte[] quarantineCsv() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (CSVPrinter printer = new CSVPrinter(
+        new OutputStreamWriter(new GZIPOutputStream(out), StandardCharsets.UTF_8),
+        CSVFormat.DEFAULT.builder().setHeader("symbol", "timestamp", "open", "high", "low", "close",
+            "volume", "reason").get())) {
+      for (int i = 0; i < quarantined.size(); i++) {
+        StorageStockBar bar = quarantined.get(i);
+        printer.printRecord(bar.getSymbol(), bar.getTimestamp(), bar.getOpen(), bar.getHigh(),
+            bar.getLow(), bar.getClose(), bar.getVolume(), reasons.get(i));
+      }
+    }
+    return out.toByteArray();
+  }
+
+  private String check(StorageStockBar bar) {
+    if (bar.getSymbol() == null || bar.getTimestamp() == null) {
+      report.setMissingFields(report.getMissingFields() + 1);
+      return "missing_field";
+    }
+    if (!Double.isFinite(bar.getOpen()) || !Double.isFinite(bar.getHigh()) || !Double.isFinite(bar.getLow())
+        || !Double.isFinite(bar.getClose()) || !Double.isFinite(bar.getVolume())) {
+      report.setNonFinite(report.getNonFinite() + 1);
+      return "non_finite";
+    }
+    if (bar.getLow() <= 0 || bar.getHigh() < bar.getLow()
+        || bar.getOpen() < bar.getLow() || bar.getOpen() > bar.getHigh()
+        || bar.getClose() < bar.getLow() || bar.getClose() > bar.getHigh()
+        || bar.getVolume() < 0) {
+      report.setOhlcViolations(report.getOhlcViolations() + 1);
+      return "ohlc";
+    }
+
+    int id = dictionary.id(bar.getSymbol());
+    if (id < 0) {
+      report.setUnknownSymbols(report.getUnknownSymbols() + 1);
+      return "unknown_symbol";
+    }
+    long epochSecond = bar.getTimestamp().toEpochSecond();
+    if (epochSecond == lastEpochSeconds[id]) {
+      report.setDuplicates(report.getDuplicates() + 1);
+      return "duplicate";
+    }
+    if (epochSecond < lastEpochSeconds[id]) {
+      report.setOutOfOrder(report.getOutOfOrder() + 1);
+      return "out_of_order";
+    }
+
+    long localSecond = epochSecond + MARKET_RULES.getOffset(Instant.ofEpochSecond(epochSecond)).getTotalSeconds();
+    long day = Math.floorDiv(localSecond, SECONDS_PER_DAY);
+    if (day != lastDays[id]) {
+      lastDays[id] = day;
+      sessionsSeen[id]++;
+    } else if (!daily) {
+      long skipped = (epochSecond - lastEpochSeconds[id]) / slotSeconds - 1;
+      if (skipped > 0) {
+        report.setGapSlots(report.getGapSlots() + skipped);
+      }
+    }
+    lastEpochSeconds[id] = epochSecond;
+    return null;
+  }
+}
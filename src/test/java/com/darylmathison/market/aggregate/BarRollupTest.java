@@ -0,0 +1,92 @@
+package com.darylmathison.market.aggregate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.darylmathison.market.model.StorageStockBar;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Comparator;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class BarRollupTest {
+
+  private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+
+  private StorageStockBar bar(String symbol, ZonedDateTime timestamp, double open, double high,
+      double low, double close, double volume) {
+    return StorageStockBar.builder().symbol(symbol).timestamp(timestamp).open(open).high(high)
+        .low(low).close(close).volume(volume).build();
+  }
+
+  @Test
+  void add_shouldRollUpBarsIntoClockAlignedBuckets() {
+    // Arrange: 15 minute bars from 9:30 to 10:15, in UTC like Alpaca returns them
+    ZonedDateTime start = ZonedDateTime.of(2023, 5, 15, 9, 30, 0, 0, NEW_YORK)
+        .withZoneSameInstant(ZoneOffset.UTC);
+    BarRollup rollup = new BarRollup(Timeframe.parse("30Min"));
+
+    // Act
+    rollup.addAll(List.of(
+        bar("AAPL", start, 10, 11, 9, 10.5, 100),
+        bar("AAPL", start.plusMinutes(15), 10.5, 12, 10, 11, 200),
+        bar("AAPL", start.plusMinutes(30), 11, 11.5, 8, 9, 50),
+        bar("AAPL", start.plusMinutes(45), 9, 10, 9, 9.5, 25)));
+    List<StorageStockBar> result = rollup.finish();
+
+    // Assert
+    assertEquals(2, result.size());
+    StorageStockBar first = result.getFirst();
+    assertEquals(start, first.getTimestamp());
+    assertEquals(10, first.getOpen());
+    assertEquals(12, first.getHigh());
+    assertEquals(9, first.getLow());
+    assertEquals(11, first.getClose());
+    assertEquals(300, first.getVolume());
+    StorageStockBar second = result.get(1);
+    assertEquals(start.plusMinutes(30), second.getTimestamp());
+    assertEquals(8, second.getLow());
+    assertEquals(75, second.getVolume());
+  }
+
+  @Test
+  void add_shouldRollUpSessionDayPerSymbol() {
+    // Arrange
+    ZonedDateTime morning = ZonedDateTime.of(2023, 11, 3, 9, 30, 0, 0, NEW_YORK);
+    BarRollup rollup = new BarRollup(Timeframe.parse("1Day"));
+
+    // Act
+    rollup.addAll(List.of(
+        bar("AAPL", morning, 10, 11, 9, 10, 1),
+        bar("AAPL", morning.plusHours(6), 10, 13, 10, 12, 1),
+        bar("MSFT", morning, 300, 301, 299, 300, 1),
+        bar("AAPL", morning.plusDays(3), 12, 12, 12, 12, 1)));
+    List<StorageStockBar> result = rollup.finish().stream()
+        .sorted(Comparator.comparing(StorageStockBar::getSymbol)
+            .thenComparing(StorageStockBar::getTimestamp))
+        .toList();
+
+    // Assert
+    assertEquals(3, result.size());
+    assertEquals(morning.toLocalDate().atStartOfDay(NEW_YORK), result.getFirst().getTimestamp());
+    assertEquals(13, result.getFirst().getHigh());
+    assertEquals(12, result.getFirst().getClose());
+    assertEquals(2, result.getFirst().getVolume());
+    assertEquals("MSFT", result.get(2).getSymbol());
+  }
+
+  @Test
+  void timeframe_shouldOnlyRollUpWholeMultiples() {
+    Timeframe base = Timeframe.parse("15Min");
+    assertTrue(Timeframe.parse("30Min").isRollupOf(base));
+    assertTrue(Timeframe.parse("1Hour").isRollupOf(base));
+    assertTrue(Timeframe.parse("1Day").isRollupOf(base));
+    assertFalse(Timeframe.parse("20Min").isRollupOf(base));
+    assertFalse(Timeframe.parse("15Min").isRollupOf(base));
+    assertThrows(IllegalArgumentException.class, () -> Timeframe.parse("2Week"));
+  }
+}
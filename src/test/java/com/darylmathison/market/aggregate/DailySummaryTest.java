@@ -0,0 +1,76 @@
+package com.darylmathison.market.aggregate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.darylmathison.market.model.StorageStockBar;
+import com.darylmathison.market.symbol.SymbolDictionary;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+
+class DailySummaryTest {
+
+  private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+
+  @Test
+  void add_shouldSummariseEachSymbolPerSession() throws Exception {
+    DailySummary summary = new DailySummary(SymbolDictionary.compile(List.of("AAPL", "MSFT")));
+    ZonedDateTime monday = ZonedDateTime.of(2024, 7, 1, 9, 30, 0, 0, NEW_YORK);
+
+    // Pages can arrive out of time order, UTC timestamps after 20:00 UTC still belong to the New York day, and
+    // symbols the run did not request are left out
+    summary.addAll(List.of(
+        bar("MSFT", monday.plusMinutes(1), 20, 22, 19, 21, 0),
+        bar("AAPL", monday.plusMinutes(1), 11, 12, 10, 12, 1),
+        bar("AAPL", monday.withZoneSameInstant(ZoneId.of("UTC")), 10, 11, 9, 11, 3),
+        bar("NVDA", monday, 100, 101, 99, 100, 5)));
+    summary.add(bar("AAPL", monday.plusDays(1), 12, 14, 12, 13, 1));
+
+    assertEquals(3, summary.size());
+    List<String> rows = gunzipLines(summary.toCompressedCsv());
+    assertEquals(List.of(
+        "symbol,date,bars,twap_by_trades,open,high,low,close,range,return",
+        "AAPL,2024-07-01,2,10.583333333333334,10.0,12.0,9.0,12.0,3.0,0.19999999999999996",
+        "AAPL,2024-07-02,1,13.0,12.0,14.0,12.0,13.0,2.0,0.08333333333333326",
+        "MSFT,2024-07-01,1,20.666666666666668,20.0,22.0,19.0,21.0,3.0,0.050000000000000044"), rows);
+  }
+
+  @Test
+  void add_shouldGrowPastInitialCapacity() throws Exception {
+    List<String> symbols = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      symbols.add("SYM" + i);
+    }
+    DailySummary summary = new DailySummary(SymbolDictionary.compile(symbols));
+    ZonedDateTime open = ZonedDateTime.of(2024, 7, 1, 9, 30, 0, 0, NEW_YORK);
+    List<StorageStockBar> page = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      page.add(bar("SYM" + i, open, 1, 1, 1, 1, 1));
+      page.add(bar("SYM" + i, open.plusMinutes(1), 1, 2, 1, 2, 1));
+    }
+
+    summary.addAll(page);
+
+    assertEquals(500, summary.size());
+    List<String> rows = gunzipLines(summary.toCompressedCsv());
+    assertEquals(501, rows.size());
+    assertEquals("SYM0,2024-07-01,2,1.3333333333333335,1.0,2.0,1.0,2.0,1.0,1.0", rows.get(1));
+  }
+
+  private StorageStockBar bar(String symbol, ZonedDateTime timestamp, double open, double high, double low,
+      double close, double volume) {
+    return StorageStockBar.builder().symbol(symbol).timestamp(timestamp).open(open).high(high).low(low)
+        .close(close).volume(volume).build();
+  }
+
+  private List<String> gunzipLines(byte[] data) throws Exception {
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8).lines().toList();
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package com.darylmathison.market.aggregate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.darylmathison.market.model.TradeBar;
+import com.darylmathison.market.model.TradeBarType;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class TradeBarAggregatorTest {
+
+  private static final long SECOND = 1_000_000_000L;
+  private static final ZonedDateTime OPEN = ZonedDateTime.of(2024, 7, 1, 13, 30, 0, 0, ZoneOffset.UTC);
+  private static final long OPEN_NANOS = OPEN.toEpochSecond() * SECOND;
+
+  @Test
+  void trade_shouldBuildTimeBarsWithShareVolumeAndVwap() {
+    List<TradeBar> bars = new ArrayList<>();
+    TradeBarAggregator aggregator = new TradeBarAggregator(TradeBarType.TIME, 60, bars::add);
+
+    aggregator.trade("AAPL", OPEN_NANOS + 5 * SECOND, 10.0, 100);
+    aggregator.trade("MSFT", OPEN_NANOS + 6 * SECOND, 50.0, 10);
+    aggregator.trade("AAPL", OPEN_NANOS + 30 * SECOND, 12.0, 300);
+    aggregator.trade("AAPL", OPEN_NANOS + 59 * SECOND, 9.0, 100);
+    aggregator.trade("AAPL", OPEN_NANOS + 61 * SECOND, 11.0, 50);
+    aggregator.finish();
+
+    assertEquals(3, bars.size());
+    TradeBar first = bars.getFirst();
+    assertEquals("AAPL", first.getSymbol());
+    assertEquals(OPEN, first.getTimestamp());
+    assertEquals(10.0, first.getOpen());
+    assertEquals(12.0, first.getHigh());
+    assertEquals(9.0, first.getLow());
+    assertEquals(9.0, first.getClose());
+    assertEquals(500, first.getVolume());
+    assertEquals((10.0 * 100 + 12.0 * 300 + 9.0 * 100) / 500, first.getVwap());
+    assertEquals(3, first.getTradeCount());
+    // Remaining bars are flushed in symbol order
+    assertEquals(List.of("AAPL", "MSFT"), bars.subList(1, 3).stream().map(TradeBar::getSymbol).toList());
+    assertEquals(OPEN.plusMinutes(1), bars.get(1).getTimestamp());
+  }
+
+  @Test
+  void trade_shouldCloseTickAndVolumeBarsOnTheirSize() {
+    List<TradeBar> tickBars = new ArrayList<>();
+    TradeBarAggregator ticks = new TradeBarAggregator(TradeBarType.TICK, 2, tickBars::add);
+    List<TradeBar> volumeBars = new ArrayList<>();
+    TradeBarAggregator volume = new TradeBarAggregator(TradeBarType.VOLUME, 250, volumeBars::add);
+
+    for (int i = 0; i < 5; i++) {
+      ticks.trade("AAPL", OPEN_NANOS + i * SECOND, 10 + i, 100);
+      volume.trade("AAPL", OPEN_NANOS + i * SECOND, 10 + i, 100);
+    }
+    ticks.finish();
+    volume.finish();
+
+    assertEquals(List.of(2, 2, 1), tickBars.stream().map(TradeBar::getTradeCount).toList());
+    assertEquals(OPEN.plusSeconds(2), tickBars.get(1).getTimestamp());
+    assertEquals(List.of(300L, 200L), volumeBars.stream().map(TradeBar::getVolume).toList());
+  }
+
+  @Test
+  void constructor_shouldRejectNonPositiveSize() {
+    assertThrows(IllegalArgumentException.class, () -> new TradeBarAggregator(TradeBarType.TICK, 0, bar -> { }));
+  }
+}
@@ -2,30 +2,47 @@ package com.darylmathison.market.dto.impl;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import com.darylmathison.market.aggregate.Timeframe;
+import com.darylmathison.market.io.PageCache;
+import com.darylmathison.market.model.PageCacheMode;
 import com.darylmathison.market.model.StorageStockBar;
+import com.darylmathison.market.retry.RequestThrottle;
+import com.darylmathison.market.retry.RetryPolicy;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import net.jacobpeterson.alpaca.AlpacaAPI;
 import net.jacobpeterson.alpaca.model.endpoint.marketdata.common.historical.bar.enums.BarTimePeriod;
 import net.jacobpeterson.alpaca.model.endpoint.marketdata.stock.historical.bar.MultiStockBarsResponse;
 import net.jacobpeterson.alpaca.model.endpoint.marketdata.stock.historical.bar.StockBar;
 import net.jacobpeterson.alpaca.model.endpoint.marketdata.stock.historical.bar.enums.BarAdjustment;
 import net.jacobpeterson.alpaca.model.endpoint.marketdata.stock.historical.bar.enums.BarFeed;
+import net.jacobpeterson.alpaca.rest.AlpacaClientException;
 import net.jacobpeterson.alpaca.rest.endpoint.marketdata.stock.StockMarketDataEndpoint;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
@@ -38,14 +55,28 @@ class PriceDataDTOImplTest {
   @Mock
   private StockMarketDataEndpoint stockMarketDataEndpoint;
 
+  @TempDir
+  Path cacheDirectory;
+
+  private PageCache pageCache;
+
   private PriceDataDTOImpl priceDataDTO;
 
   @BeforeEach
   void setUp() {
-    priceDataDTO = new PriceDataDTOImpl(alpacaAPI);
+    RetryPolicy retryPolicy = new RetryPolicy();
+    setField(retryPolicy, "maxAttempts", 3);
+    RequestThrottle requestThrottle = new RequestThrottle();
+    setField(requestThrottle, "errorThreshold", 100);
+    pageCache = new PageCache(null);
+    setField(pageCache, "mode", PageCacheMode.OFF);
+    setField(pageCache, "location", cacheDirectory.toString());
+    priceDataDTO = new PriceDataDTOImpl(() -> alpacaAPI, retryPolicy, requestThrottle, pageCache);
     // Set required fields using reflection
     setField(priceDataDTO, "dataBucketName", "test-bucket");
     setField(priceDataDTO, "symbolsFileKey", "symbols.txt");
+    setField(priceDataDTO, "barDuration", 15);
+    setField(priceDataDTO, "barTimePeriod", BarTimePeriod.MINUTE);
   }
 
   private void setField(Object target, String fieldName, Object value) {
@@ -151,6 +182,43 @@ class PriceDataDTOImplTest {
             eq(BarTimePeriod.MINUTE), eq(BarAdjustment.RAW), eq(BarFeed.IEX));
   }
 
+  @Test
+  void streamPriceData_shouldHandEachPageToConsumer() throws Exception {
+    // Arrange
+    StockBar appleBar = mock(StockBar.class);
+    when(appleBar.getTradeCount()).thenReturn(1000L);
+
+    HashMap<String, ArrayList<StockBar>> barsMap = new HashMap<>();
+    barsMap.put("AAPL", new ArrayList<>(List.of(appleBar, appleBar)));
+
+    MultiStockBarsResponse response1 = mock(MultiStockBarsResponse.class);
+    when(response1.getBars()).thenReturn(barsMap);
+    when(response1.getNextPageToken()).thenReturn("page2");
+
+    MultiStockBarsResponse response2 = mock(MultiStockBarsResponse.class);
+    when(response2.getBars()).thenReturn(barsMap);
+    when(response2.getNextPageToken()).thenReturn(null);
+
+    when(alpacaAPI.stockMarketData()).thenReturn(stockMarketDataEndpoint);
+    when(stockMarketDataEndpoint.getBars(anyList(), any(), any(), isNull(), isNull(), anyInt(),
+        any(), any(), any())).thenReturn(response1);
+    when(stockMarketDataEndpoint.getBars(anyList(), any(), any(), isNull(), eq("page2"), anyInt(),
+        any(), any(), any())).thenReturn(response2);
+
+    // Act
+    List<Integer> pageSizes = new ArrayList<>();
+    priceDataDTO.streamPriceData(List.of("AAPL"), LocalDate.of(2023, 1, 1),
+        LocalDate.of(2023, 1, 3), page -> pageSizes.add(page.size()));
+
+    // Assert
+    assertEquals(List.of(2, 2), pageSizes);
+  }
+
+  @Test
+  void getTimeframe_shouldReflectConfiguredBars() {
+    assertEquals(new Timeframe(15, ChronoUnit.MINUTES), priceDataDTO.getTimeframe());
+  }
+
   @Test
   void toZoneDateTime_shouldConvertLocalDateToZonedDateTime() throws Exception {
     // Use reflection to access the private method
@@ -173,4 +241,128 @@ class PriceDataDTOImplTest {
     assertEquals(0, result.getMinute());
     assertEquals(0, result.getSecond());
   }
-}
\ No newline at end of file
+
+  @Test
+  void getPriceData_shouldResumeFromLastPageToken_whenRequestFailsTransiently() throws Exception {
+    // Arrange
+    List<String> symbols = List.of("AAPL");
+    LocalDate startDate = LocalDate.of(2023, 1, 1);
+    LocalDate endDate = LocalDate.of(2023, 1, 3);
+
+    StockBar appleBar = mock(StockBar.class);
+    when(appleBar.getOpen()).thenReturn(150.0);
+    when(appleBar.getClose()).thenReturn(155.0);
+    when(appleBar.getHigh()).thenReturn(157.0);
+    when(appleBar.getLow()).thenReturn(149.0);
+    when(appleBar.getTradeCount()).thenReturn(1000L);
+
+    HashMap<String, ArrayList<StockBar>> barsMap = new HashMap<>();
+    barsMap.put("AAPL", new ArrayList<>(List.of(appleBar)));
+
+    MultiStockBarsResponse response1 = mock(MultiStockBarsResponse.class);
+    when(response1.getBars()).thenReturn(barsMap);
+    when(response1.getNextPageToken()).thenReturn("page2");
+
+    MultiStockBarsResponse response2 = mock(MultiStockBarsResponse.class);
+    when(response2.getBars()).thenReturn(barsMap);
+    when(response2.getNextPageToken()).thenReturn(null);
+
+    AlpacaClientException unavailable = alpacaClientException(503);
+
+    when(alpacaAPI.stockMarketData()).thenReturn(stockMarketDataEndpoint);
+    when(stockMarketDataEndpoint.getBars(anyList(), any(), any(), isNull(), isNull(), anyInt(),
+        any(), any(), any())).thenReturn(response1);
+    when(stockMarketDataEndpoint.getBars(anyList(), any(), any(), isNull(), eq("page2"), anyInt(),
+        any(), any(), any()))
+        .thenThrow(unavailable)
+        .thenReturn(response2);
+
+    // Act
+    List<StorageStockBar> result = priceDataDTO.getPriceData(symbols, startDate, endDate);
+
+    // Assert
+    assertEquals(2, result.size());
+    verify(stockMarketDataEndpoint, times(1)).getBars(anyList(), any(), any(), isNull(), isNull(),
+        anyInt(), any(), any(), any());
+    verify(stockMarketDataEndpoint, times(2)).getBars(anyList(), any(), any(), isNull(),
+        eq("page2"), anyInt(), any(), any(), any());
+  }
+
+  @Test
+  void getPriceData_shouldNotRetry_whenRequestIsRejected() throws Exception {
+    // Arrange
+    AlpacaClientException rejected = alpacaClientException(403);
+    when(alpacaAPI.stockMarketData()).thenReturn(stockMarketDataEndpoint);
+    when(stockMarketDataEndpoint.getBars(anyList(), any(), any(), isNull(), isNull(), anyInt(),
+        any(), any(), any())).thenThrow(rejected);
+
+    // Act & Assert
+    AlpacaClientException thrown = assertThrows(AlpacaClientException.class,
+        () -> priceDataDTO.getPriceData(List.of("AAPL"), LocalDate.of(2023, 1, 1),
+            LocalDate.of(2023, 1, 3)));
+    assertSame(rejected, thrown);
+    verify(stockMarketDataEndpoint, times(1)).getBars(anyList(), any(), any(), isNull(), isNull(),
+        anyInt(), any(), any(), any());
+  }
+
+  @Test
+  void streamPriceData_shouldReplayRecordedPagesWithoutCallingTheApi() throws Exception {
+    // Arrange: record a run of two pages
+    ZonedDateTime start = ZonedDateTime.of(2023, 1, 3, 9, 30, 0, 0, ZoneId.of("America/New_York"));
+    ZonedDateTime end = start.plusHours(7);
+    StockBar bar = new StockBar();
+    bar.setTimestamp(start);
+    bar.setOpen(150.0);
+    bar.setHigh(157.0);
+    bar.setLow(149.0);
+    bar.setClose(155.0);
+    bar.setVolume(120000L);
+    bar.setTradeCount(1000L);
+    MultiStockBarsResponse response1 = new MultiStockBarsResponse();
+    response1.setBars(new HashMap<>(Map.of("AAPL", new ArrayList<>(List.of(bar)))));
+    response1.setNextPageToken("page2");
+    MultiStockBarsResponse response2 = new MultiStockBarsResponse();
+    response2.setBars(new HashMap<>(Map.of("GOOG", new ArrayList<>(List.of(bar)))));
+
+    when(alpacaAPI.stockMarketData()).thenReturn(stockMarketDataEndpoint);
+    when(stockMarketDataEndpoint.getBars(anyList(), any(), any(), isNull(), isNull(), anyInt(),
+        any(), any(), any())).thenReturn(response1);
+    when(stockMarketDataEndpoint.getBars(anyList(), any(), any(), isNull(), eq("page2"), anyInt(),
+        any(), any(), any())).thenReturn(response2);
+
+    setField(pageCache, "mode", PageCacheMode.RECORD);
+    List<StorageStockBar> recorded = new ArrayList<>();
+    priceDataDTO.streamPriceData(List.of("AAPL", "GOOG"), start, end, recorded::addAll);
+
+    // Act
+    setField(pageCache, "mode", PageCacheMode.REPLAY);
+    List<StorageStockBar> replayed = new ArrayList<>();
+    priceDataDTO.prepare();
+    priceDataDTO.streamPriceData(List.of("AAPL", "GOOG"), start, end, replayed::addAll);
+
+    // Assert
+    assertEquals(2, replayed.size());
+    assertEquals(recorded, replayed);
+    verify(stockMarketDataEndpoint, times(2)).getBars(anyList(), any(), any(), isNull(), any(), anyInt(),
+        any(), any(), any());
+    verifyNoMoreInteractions(stockMarketDataEndpoint);
+  }
+
+  @Test
+  void streamPriceData_shouldFailReplay_whenPageWasNotRecorded() {
+    // Arrange
+    setField(pageCache, "mode", PageCacheMode.REPLAY);
+    ZonedDateTime start = ZonedDateTime.of(2023, 1, 3, 9, 30, 0, 0, ZoneId.of("America/New_York"));
+
+    // Act & Assert
+    assertThrows(IllegalStateException.class,
+        () -> priceDataDTO.streamPriceData(List.of("AAPL"), start, start.plusHours(7), page -> { }));
+    verifyNoInteractions(alpacaAPI);
+  }
+
+  private AlpacaClientException alpacaClientException(int status) {
+    AlpacaClientException exception = mock(AlpacaClientException.class);
+    when(exception.getResponseStatusCode()).thenReturn(status);
+    return exception;
+  }
+}
@@ -0,0 +1,95 @@
+package com.darylmathison.market.dto.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.when;
+
+import com.darylmathison.market.retry.RequestThrottle;
+import com.darylmathison.market.retry.RetryPolicy;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import net.jacobpeterson.alpaca.AlpacaAPI;
+import net.jacobpeterson.alpaca.model.endpoint.marketdata.stock.historical.trade.MultiStockTradesResponse;
+import net.jacobpeterson.alpaca.model.endpoint.marketdata.stock.historical.trade.StockTrade;
+import net.jacobpeterson.alpaca.rest.endpoint.marketdata.stock.StockMarketDataEndpoint;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class TradeDataDTOImplTest {
+
+  @Mock
+  private AlpacaAPI alpacaAPI;
+
+  @Mock
+  private StockMarketDataEndpoint stockMarketDataEndpoint;
+
+  private TradeDataDTOImpl tradeDataDTO;
+
+  @BeforeEach
+  void setUp() {
+    RetryPolicy retryPolicy = new RetryPolicy();
+    setField(retryPolicy, "maxAttempts", 3);
+    RequestThrottle requestThrottle = new RequestThrottle();
+    setField(requestThrottle, "errorThreshold", 100);
+    tradeDataDTO = new TradeDataDTOImpl(() -> alpacaAPI, retryPolicy, requestThrottle);
+    setField(tradeDataDTO, "pageLimit", 10000);
+  }
+
+  private void setField(Object target, String fieldName, Object value) {
+    try {
+      var field = target.getClass().getDeclaredField(fieldName);
+      field.setAccessible(true);
+      field.set(target, value);
+    } catch (Exception ignored) {
+    }
+  }
+
+  @Test
+  void streamTrades_shouldHandEveryTradeOfEveryPageToTheSink() throws Exception {
+    // Arrange
+    ZonedDateTime start = ZonedDateTime.of(2024, 7, 1, 9, 30, 0, 0, ZoneId.of("America/New_York"));
+    ZonedDateTime end = start.plusHours(1);
+    when(alpacaAPI.stockMarketData()).thenReturn(stockMarketDataEndpoint);
+    when(stockMarketDataEndpoint.getTrades(anyList(), eq(start), eq(end), eq(10000), isNull()))
+        .thenReturn(page("next", trade(start.plusNanos(1500), 10.0, 100), trade(start, null, 5)));
+    when(stockMarketDataEndpoint.getTrades(anyList(), eq(start), eq(end), eq(10000), eq("next")))
+        .thenReturn(page(null, trade(start.plusSeconds(1), 10.5, 50)));
+
+    // Act
+    List<String> received = new ArrayList<>();
+    tradeDataDTO.streamTrades(List.of("AAPL"), start, end,
+        (symbol, epochNanos, price, size) -> received.add(symbol + " " + epochNanos + " " + price + " " + size));
+
+    // Assert: the trade without a price is skipped
+    long openNanos = start.toEpochSecond() * 1_000_000_000L;
+    assertEquals(List.of(
+        "AAPL " + (openNanos + 1500) + " 10.0 100",
+        "AAPL " + (openNanos + 1_000_000_000L) + " 10.5 50"), received);
+  }
+
+  private static MultiStockTradesResponse page(String nextPageToken, StockTrade... trades) {
+    MultiStockTradesResponse response = new MultiStockTradesResponse();
+    HashMap<String, ArrayList<StockTrade>> bySymbol = new HashMap<>();
+    bySymbol.put("AAPL", new ArrayList<>(List.of(trades)));
+    response.setTrades(bySymbol);
+    response.setNextPageToken(nextPageToken);
+    return response;
+  }
+
+  private static StockTrade trade(ZonedDateTime timestamp, Double price, int size) {
+    StockTrade trade = new StockTrade();
+    trade.setTimestamp(timestamp);
+    trade.setPrice(price);
+    trade.setSize(size);
+    return trade;
+  }
+}
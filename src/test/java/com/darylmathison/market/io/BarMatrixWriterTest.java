@@ -0,0 +1,125 @@
+package com.darylmathison.market.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.darylmathison.market.aggregate.Timeframe;
+import com.darylmathison.market.model.SessionHours;
+import com.darylmathison.market.model.StorageStockBar;
+import com.darylmathison.market.model.TradingSession;
+import com.darylmathison.market.symbol.SymbolDictionary;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BarMatrixWriterTest {
+
+  private static final ZoneId MARKET_ZONE = ZoneId.of("America/New_York");
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void finish_shouldWriteAlignedPlanesWithForwardFillAndMask() throws Exception {
+    // Two regular sessions of 30 minute slots; the early 9:30 open shares the 9:30 slot
+    List<TradingSession> sessions = List.of(session(LocalDate.of(2024, 7, 1)), session(LocalDate.of(2024, 7, 2)));
+    SymbolDictionary dictionary = SymbolDictionary.compile(List.of("MSFT", "AAPL"));
+    ZonedDateTime open = sessions.getFirst().getRegularOpen();
+    Path file = Files.createFile(directory.resolve("matrix.bin"));
+
+    ByteBuffer matrix;
+    try (BarMatrixWriter writer = new BarMatrixWriter(file, dictionary, sessions, SessionHours.REGULAR,
+        Timeframe.parse("30Min"))) {
+      writer.addAll(List.of(
+          bar("AAPL", open.plusMinutes(30), 10, 11),
+          bar("AAPL", open.plusMinutes(30), 11, 12),
+          bar("MSFT", sessions.getLast().getRegularOpen(), 20, 21),
+          bar("NVDA", open, 1, 1),
+          bar("AAPL", open.minusHours(2), 1, 1)));
+      writer.finish();
+      assertEquals(26, writer.slots());
+      assertEquals(2, writer.observed());
+      assertEquals(2, writer.dropped());
+      matrix = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+      assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(matrix.array()), writer.sha256());
+    }
+    assertFalse(Files.exists(file));
+
+    assertEquals("BARMATRX", new String(matrix.array(), 0, 8, StandardCharsets.US_ASCII));
+    assertEquals(1, matrix.getInt(8));
+    assertEquals(2, matrix.getInt(12));
+    assertEquals(26, matrix.getInt(16));
+    assertEquals(5, matrix.getInt(20));
+    assertEquals(1800, matrix.getInt(24));
+    int dataOffset = matrix.getInt(28);
+    assertEquals(0, dataOffset % 64);
+    assertEquals(open.toEpochSecond(), matrix.getLong(32));
+    assertEquals(sessions.getLast().getRegularOpen().toEpochSecond(), matrix.getLong(32 + 13 * Long.BYTES));
+    int names = 32 + 26 * Long.BYTES;
+    assertEquals(4, matrix.getShort(names));
+    assertEquals("AAPL", new String(matrix.array(), names + 2, 4, StandardCharsets.UTF_8));
+
+    int cells = 2 * 26;
+    int closePlane = dataOffset + 3 * cells * Float.BYTES;
+    int volumePlane = dataOffset + 4 * cells * Float.BYTES;
+    int mask = dataOffset + 5 * cells * Float.BYTES;
+    // AAPL: missing, then the merged bar, then its close carried across both sessions
+    assertEquals(BarMatrixWriter.MISSING, matrix.get(mask));
+    assertTrue(Float.isNaN(matrix.getFloat(closePlane)));
+    assertEquals(BarMatrixWriter.OBSERVED, matrix.get(mask + 1));
+    assertEquals(12f, matrix.getFloat(closePlane + Float.BYTES));
+    assertEquals(200f, matrix.getFloat(volumePlane + Float.BYTES));
+    assertEquals(BarMatrixWriter.FILLED, matrix.get(mask + 25));
+    assertEquals(12f, matrix.getFloat(closePlane + 25 * Float.BYTES));
+    assertEquals(0f, matrix.getFloat(volumePlane + 25 * Float.BYTES));
+    // MSFT: nothing until the second session
+    assertEquals(BarMatrixWriter.MISSING, matrix.get(mask + 26 + 12));
+    assertEquals(BarMatrixWriter.OBSERVED, matrix.get(mask + 26 + 13));
+    assertEquals(21f, matrix.getFloat(closePlane + (26 + 13) * Float.BYTES));
+    assertEquals(cells, matrix.capacity() - mask);
+  }
+
+  @Test
+  void constructor_shouldRemoveTheFileWhenTheMatrixCannotBeBuilt() throws Exception {
+    // 30,000 symbols by ten sessions of minute slots is past the one file limit
+    List<TradingSession> sessions = IntStream.range(0, 10)
+        .mapToObj(day -> session(LocalDate.of(2024, 7, 1).plusDays(day))).toList();
+    SymbolDictionary dictionary = SymbolDictionary.compile(IntStream.range(0, 30_000).mapToObj(i -> "S" + i).toList());
+    Path file = Files.createFile(directory.resolve("matrix.bin"));
+
+    assertThrows(IllegalArgumentException.class, () -> new BarMatrixWriter(file, dictionary, sessions,
+        SessionHours.REGULAR, Timeframe.parse("1Min")));
+    assertFalse(Files.exists(file));
+  }
+
+  @Test
+  void objectKey_shouldNameTheRunsMatrix() {
+    assertEquals("stock_prices_matrix_2024-07-01.bin", BarMatrixWriter.objectKey(LocalDate.of(2024, 7, 1)));
+  }
+
+  private static TradingSession session(LocalDate date) {
+    return TradingSession.builder()
+        .date(date)
+        .regularOpen(date.atTime(9, 30).atZone(MARKET_ZONE))
+        .regularClose(date.atTime(16, 0).atZone(MARKET_ZONE))
+        .build();
+  }
+
+  private static StorageStockBar bar(String symbol, ZonedDateTime timestamp, double open, double close) {
+    return StorageStockBar.builder().symbol(symbol).timestamp(timestamp)
+        .open(open).high(Math.max(open, close) + 1).low(Math.min(open, close) - 1).close(close).volume(100).build();
+  }
+}
@@ -0,0 +1,76 @@
+package com.darylmathison.market.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ByteBufferPoolTest {
+
+  private ByteBufferPool pool;
+
+  @BeforeEach
+  void setUp() {
+    pool = new ByteBufferPool();
+    setField(pool, "chunkBytes", 16);
+    setField(pool, "maxPooledChunks", 1);
+  }
+
+  private void setField(Object target, String fieldName, Object value) {
+    try {
+      var field = target.getClass().getDeclaredField(fieldName);
+      field.setAccessible(true);
+      field.set(target, value);
+    } catch (Exception ignored) {
+    }
+  }
+
+  @Test
+  void acquire_shouldReuseReleasedChunksUpToTheBound() {
+    ByteBuffer first = pool.acquire();
+    ByteBuffer second = pool.acquire();
+    assertTrue(first.isDirect());
+    first.put((byte) 1);
+
+    pool.release(first);
+    pool.release(second);
+    assertEquals(1, pool.pooledChunks());
+
+    ByteBuffer reused = pool.acquire();
+    assertSame(first, reused);
+    assertEquals(0, reused.position());
+    assertEquals(0, pool.pooledChunks());
+  }
+
+  @Test
+  void release_shouldIgnoreForeignChunksWithoutLosingTheBound() {
+    for (int i = 0; i < 3; i++) {
+      pool.release(ByteBuffer.allocateDirect(32));
+    }
+    assertEquals(0, pool.pooledChunks());
+
+    pool.release(pool.acquire());
+    pool.release(pool.acquire());
+    pool.release(ByteBuffer.allocateDirect(16));
+    assertEquals(1, pool.pooledChunks());
+    assertEquals(16, pool.pooledBytes());
+  }
+
+  @Test
+  void chunkedOutputStream_shouldSpanChunksAndReturnThemOnRelease() throws Exception {
+    setField(pool, "maxPooledChunks", 8);
+    ChunkedOutputStream out = new ChunkedOutputStream(pool);
+    byte[] data = "a line that spans several chunks".getBytes();
+
+    out.write(data);
+
+    assertEquals(data.length, out.size());
+    assertEquals(2, out.chunks().size());
+    assertEquals(new String(data), new String(out.newInputStream().readAllBytes()));
+    out.release();
+    assertEquals(2, pool.pooledChunks());
+  }
+}
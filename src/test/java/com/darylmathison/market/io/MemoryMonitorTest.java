@@ -0,0 +1,75 @@
+package com.darylmathison.market.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class MemoryMonitorTest {
+
+  private ByteBufferPool pool;
+  private MemoryMonitor monitor;
+
+  @BeforeEach
+  void setUp() {
+    pool = new ByteBufferPool();
+    setField(pool, "chunkBytes", 1024);
+    setField(pool, "maxPooledChunks", 4);
+    monitor = new MemoryMonitor(pool);
+    setField(monitor, "maxInMemoryBytes", Long.MAX_VALUE);
+    setField(monitor, "bufferHeadroomFraction", 0.5);
+    setField(monitor, "lowWaterFraction", 0.0);
+  }
+
+  private void setField(Object target, String fieldName, Object value) {
+    try {
+      var field = target.getClass().getDeclaredField(fieldName);
+      field.setAccessible(true);
+      field.set(target, value);
+    } catch (Exception ignored) {
+    }
+  }
+
+  @Test
+  void spillThresholdBytes_shouldFollowDirectMemoryHeadroom() {
+    long used = directUsed();
+    setField(monitor, "maxDirectBytes", used + 64 * 1024);
+
+    assertEquals(64 * 1024, monitor.directHeadroomBytes());
+    assertEquals(32 * 1024, monitor.spillThresholdBytes());
+  }
+
+  @Test
+  void underPressure_shouldTripOnDirectMemoryAlone() {
+    ByteBuffer held = pool.acquire();
+    setField(monitor, "lowWaterFraction", 0.2);
+    setField(monitor, "maxDirectBytes", directUsed() + 100);
+    assertTrue(monitor.underPressure());
+    pool.release(held);
+
+    setField(monitor, "maxDirectBytes", Long.MAX_VALUE / 2);
+    setField(monitor, "lowWaterFraction", 0.0);
+    assertFalse(monitor.underPressure());
+  }
+
+  @Test
+  void directHeadroomBytes_shouldCountIdlePooledChunksAsAvailable() {
+    pool.release(pool.acquire());
+    long used = directUsed();
+    setField(monitor, "maxDirectBytes", used);
+
+    assertEquals(1024, monitor.directHeadroomBytes());
+  }
+
+  private static long directUsed() {
+    return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+        .filter(pool -> pool.getName().equals("direct"))
+        .mapToLong(BufferPoolMXBean::getMemoryUsed)
+        .sum();
+  }
+}
@@ -0,0 +1,119 @@
+package com.darylmathison.market.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.darylmathison.market.model.StorageStockBar;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+
+class SegmentedPriceCsvWriterTest {
+
+  private static final ZonedDateTime OPEN = ZonedDateTime.of(2024, 7, 1, 9, 30, 0, 0, ZoneId.of("America/New_York"));
+
+  @Test
+  void write_shouldProduceTheSameCsvWhenSegmentsAreCompressedInParallel() throws Exception {
+    List<StorageStockBar> bars = bars();
+
+    ForkJoinPool pool = new ForkJoinPool(3);
+    ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+    try (SegmentedPriceCsvWriter writer = new SegmentedPriceCsvWriter(parallel, pool, 5, Long.MAX_VALUE)) {
+      writer.write(bars.subList(0, 20));
+      writer.write(bars.subList(20, bars.size()));
+    } finally {
+      pool.shutdown();
+    }
+
+    assertEquals(gunzip(PriceCsvWriter.encode(bars)), gunzip(parallel.toByteArray()));
+  }
+
+  @Test
+  void write_shouldProduceTheSameBytesForAnyWorkerCountAndPageSize() throws Exception {
+    List<StorageStockBar> bars = bars();
+    ForkJoinPool single = new ForkJoinPool(1);
+    ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+    try (SegmentedPriceCsvWriter writer = new SegmentedPriceCsvWriter(sequential, single, 5, Long.MAX_VALUE)) {
+      writer.write(bars);
+    } finally {
+      single.shutdown();
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+    ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+    try (SegmentedPriceCsvWriter writer = new SegmentedPriceCsvWriter(parallel, pool, 5, Long.MAX_VALUE)) {
+      for (int start = 0; start < bars.size(); start += 3) {
+        writer.write(bars.subList(start, Math.min(bars.size(), start + 3)));
+      }
+    } finally {
+      pool.shutdown();
+    }
+
+    assertArrayEquals(sequential.toByteArray(), parallel.toByteArray());
+  }
+
+  @Test
+  void write_shouldFlushOnceThePendingBarsReachTheByteLimit() throws Exception {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (SegmentedPriceCsvWriter writer = new SegmentedPriceCsvWriter(out, pool, 5, 5 * SegmentedPriceCsvWriter.BAR_HEAP_BYTES)) {
+      // Four workers would wait for 20 bars; the byte limit allows one segment
+      writer.write(bars().subList(0, 6));
+
+      assertTrue(out.size() > 0);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  void segments_shouldCutAtAFixedBarCount() {
+    List<StorageStockBar> bars = List.of(bar("AAPL"), bar("AAPL"), bar("AAPL"), bar("GOOG"), bar("MSFT"));
+
+    List<List<StorageStockBar>> segments = SegmentedPriceCsvWriter.segments(bars, 2);
+
+    assertEquals(List.of(2, 2, 1), segments.stream().map(List::size).toList());
+  }
+
+  @Test
+  void close_shouldWriteHeaderForAnEmptyFile() throws Exception {
+    ForkJoinPool pool = new ForkJoinPool(2);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (SegmentedPriceCsvWriter writer = new SegmentedPriceCsvWriter(out, pool, 5, Long.MAX_VALUE)) {
+      writer.write(List.of());
+    } finally {
+      pool.shutdown();
+    }
+
+    assertEquals("symbol,timestamp,open,high,low,close,volume\r\n", gunzip(out.toByteArray()));
+  }
+
+  private static List<StorageStockBar> bars() {
+    List<StorageStockBar> bars = new ArrayList<>();
+    for (String symbol : List.of("AAPL", "GOOG", "MSFT", "NVDA", "TSLA")) {
+      for (int minute = 0; minute < 7; minute++) {
+        bars.add(StorageStockBar.builder().symbol(symbol).timestamp(OPEN.plusMinutes(minute))
+            .open(10 + minute).high(11 + minute).low(9 + minute).close(10.5 + minute).volume(100).build());
+      }
+    }
+    return bars;
+  }
+
+  private static StorageStockBar bar(String symbol) {
+    return StorageStockBar.builder().symbol(symbol).timestamp(OPEN).open(1).high(1).low(1).close(1).volume(1).build();
+  }
+
+  private static String gunzip(byte[] data) throws Exception {
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+}
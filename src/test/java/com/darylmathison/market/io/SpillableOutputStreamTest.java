@@ -0,0 +1,91 @@
+package com.darylmathison.market.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SpillableOutputStreamTest {
+
+  @TempDir
+  Path spillDirectory;
+
+  private ByteBufferPool pool;
+
+  @BeforeEach
+  void setUp() {
+    pool = new ByteBufferPool();
+    setField(pool, "chunkBytes", 4);
+    setField(pool, "maxPooledChunks", 8);
+  }
+
+  private void setField(Object target, String fieldName, Object value) {
+    try {
+      var field = target.getClass().getDeclaredField(fieldName);
+      field.setAccessible(true);
+      field.set(target, value);
+    } catch (Exception ignored) {
+    }
+  }
+
+  @Test
+  void write_shouldStayInMemoryUnderThreshold() throws Exception {
+    SpillableOutputStream out = new SpillableOutputStream(16, spillDirectory, pool);
+
+    out.write("0123456789".getBytes(StandardCharsets.UTF_8));
+    out.close();
+
+    assertFalse(out.isSpilled());
+    assertEquals(10, out.size());
+    assertArrayEquals("0123456789".getBytes(StandardCharsets.UTF_8),
+        new ByteBuffersInputStream(out.getChunks()).readAllBytes());
+
+    out.delete();
+    assertEquals(3, pool.pooledChunks());
+  }
+
+  @Test
+  void write_shouldMoveBufferedBytesToDiskPastThreshold() throws Exception {
+    SpillableOutputStream out = new SpillableOutputStream(8, spillDirectory, pool);
+
+    out.write("01234".getBytes(StandardCharsets.UTF_8));
+    out.write("56789".getBytes(StandardCharsets.UTF_8));
+    out.write('!');
+    out.close();
+
+    assertTrue(out.isSpilled());
+    assertEquals(11, out.size());
+    assertEquals("0123456789!", Files.readString(out.getPath()));
+    assertThrows(IllegalStateException.class, out::getChunks);
+    assertEquals(2, pool.pooledChunks());
+
+    out.delete();
+    assertFalse(Files.exists(out.getPath()));
+  }
+
+  @Test
+  void sha256_shouldMatchTheBytesWrittenWhetherOrNotTheyWereSpilled() throws Exception {
+    byte[] expected = MessageDigest.getInstance("SHA-256").digest("0123456789!".getBytes(StandardCharsets.UTF_8));
+    for (long threshold : new long[] {64, 8}) {
+      SpillableOutputStream out = new SpillableOutputStream(threshold, spillDirectory, pool);
+
+      out.write("01234".getBytes(StandardCharsets.UTF_8));
+      out.write("56789".getBytes(StandardCharsets.UTF_8));
+      out.write('!');
+
+      assertArrayEquals(expected, out.sha256());
+      assertThrows(IOException.class, () -> out.write('?'));
+      out.delete();
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package com.darylmathison.market.retry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RequestThrottleTest {
+
+  private RequestThrottle requestThrottle;
+
+  @BeforeEach
+  void setUp() {
+    requestThrottle = new RequestThrottle();
+    setField(requestThrottle, "slowIntervalMillis", 100L);
+    setField(requestThrottle, "maxIntervalMillis", 400L);
+    setField(requestThrottle, "errorThreshold", 2);
+    setField(requestThrottle, "errorWindowMillis", 60000L);
+  }
+
+  private void setField(Object target, String fieldName, Object value) {
+    try {
+      var field = target.getClass().getDeclaredField(fieldName);
+      field.setAccessible(true);
+      field.set(target, value);
+    } catch (Exception ignored) {
+    }
+  }
+
+  @Test
+  void recordFailure_shouldSlowRequestsOnlyWhenErrorsCluster() {
+    requestThrottle.recordFailure();
+    assertEquals(0, requestThrottle.currentIntervalMillis());
+
+    requestThrottle.recordFailure();
+    assertEquals(100, requestThrottle.currentIntervalMillis());
+
+    requestThrottle.recordFailure();
+    requestThrottle.recordFailure();
+    requestThrottle.recordFailure();
+    assertEquals(400, requestThrottle.currentIntervalMillis());
+  }
+
+  @Test
+  void recordSuccess_shouldCloseThrottleGradually() {
+    requestThrottle.recordFailure();
+    requestThrottle.recordFailure();
+    requestThrottle.recordFailure();
+    assertEquals(200, requestThrottle.currentIntervalMillis());
+
+    requestThrottle.recordSuccess();
+    assertEquals(100, requestThrottle.currentIntervalMillis());
+
+    requestThrottle.recordSuccess();
+    assertEquals(0, requestThrottle.currentIntervalMillis());
+  }
+}
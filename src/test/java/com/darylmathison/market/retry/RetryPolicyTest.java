@@ -0,0 +1,110 @@
+package com.darylmathison.market.retry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.jacobpeterson.alpaca.rest.AlpacaClientException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RetryPolicyTest {
+
+  private RetryPolicy retryPolicy;
+
+  @BeforeEach
+  void setUp() {
+    retryPolicy = new RetryPolicy();
+    setField(retryPolicy, "maxAttempts", 5);
+    setField(retryPolicy, "baseDelayMillis", 100L);
+    setField(retryPolicy, "maxDelayMillis", 1000L);
+    setField(retryPolicy, "rateLimitWaitMillis", 5000L);
+  }
+
+  private void setField(Object target, String fieldName, Object value) {
+    try {
+      var field = target.getClass().getDeclaredField(fieldName);
+      field.setAccessible(true);
+      field.set(target, value);
+    } catch (Exception ignored) {
+    }
+  }
+
+  private AlpacaClientException alpacaClientException(Integer status) {
+    AlpacaClientException exception = mock(AlpacaClientException.class);
+    when(exception.getResponseStatusCode()).thenReturn(status);
+    return exception;
+  }
+
+  @Test
+  void isRetryable_shouldRetryTransientFailures() {
+    assertTrue(retryPolicy.isRetryable(alpacaClientException(429)));
+    assertTrue(retryPolicy.isRetryable(alpacaClientException(503)));
+    assertTrue(retryPolicy.isRetryable(new RuntimeException(new IOException("reset"))));
+  }
+
+  @Test
+  void isRetryable_shouldNotRetryClientErrors() {
+    assertFalse(retryPolicy.isRetryable(alpacaClientException(400)));
+    assertFalse(retryPolicy.isRetryable(alpacaClientException(403)));
+    assertFalse(retryPolicy.isRetryable(new IllegalStateException("bug")));
+  }
+
+  @Test
+  void delayMillis_shouldStayWithinExponentialCeiling() {
+    Exception failure = alpacaClientException(503);
+    for (int i = 0; i < 50; i++) {
+      assertTrue(retryPolicy.delayMillis(1, failure) <= 100);
+      assertTrue(retryPolicy.delayMillis(3, failure) <= 400);
+      assertTrue(retryPolicy.delayMillis(10, failure) <= 1000);
+    }
+  }
+
+  @Test
+  void delayMillis_shouldWaitOutRateLimitWindow() {
+    assertEquals(5000, retryPolicy.delayMillis(1, alpacaClientException(429)));
+  }
+
+  @Test
+  void delayMillis_shouldWaitOutRateLimitWindowWhenTheClientWrapsThe429() {
+    assertEquals(5000, retryPolicy.delayMillis(1, new RuntimeException(alpacaClientException(429))));
+  }
+
+  @Test
+  void execute_shouldRetryTheSameRequestUntilItSucceeds() throws Exception {
+    setField(retryPolicy, "baseDelayMillis", 0L);
+    RequestThrottle throttle = new RequestThrottle();
+    AtomicInteger calls = new AtomicInteger();
+
+    String response = retryPolicy.execute(throttle, "Test request", () -> {
+      if (calls.incrementAndGet() < 3) {
+        throw new IOException("reset");
+      }
+      return "page";
+    });
+
+    assertEquals("page", response);
+    assertEquals(3, calls.get());
+  }
+
+  @Test
+  void execute_shouldGiveUpOnAFailureThatIsNotRetryable() {
+    RequestThrottle throttle = new RequestThrottle();
+    AtomicInteger calls = new AtomicInteger();
+    AlpacaClientException forbidden = alpacaClientException(403);
+
+    Exception thrown = assertThrows(Exception.class, () -> retryPolicy.execute(throttle, "Test request", () -> {
+      calls.incrementAndGet();
+      throw forbidden;
+    }));
+
+    assertSame(forbidden, thrown);
+    assertEquals(1, calls.get());
+  }
+}
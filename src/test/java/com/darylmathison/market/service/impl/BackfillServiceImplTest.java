@@ -0,0 +1,247 @@
+package com.darylmathison.market.service.impl;
+
+import com.darylmathison.market.dto.PriceDataDTO;
+import com.darylmathison.market.io.ByteBufferPool;
+import com.darylmathison.market.io.MemoryMonitor;
+import com.darylmathison.market.model.BackfillManifest;
+import com.darylmathison.market.model.BackfillRequest;
+import com.darylmathison.market.model.SessionHours;
+import com.darylmathison.market.model.StorageStockBar;
+import com.darylmathison.market.model.TimeWindow;
+import com.darylmathison.market.model.TradingSession;
+import com.darylmathison.market.retry.RequestThrottle;
+import com.darylmathison.market.service.S3Service;
+import com.darylmathison.market.service.TradingCalendarService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class BackfillServiceImplTest {
+
+    private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+    private static final String MANIFEST_KEY = "state/backfill/2024-01-15_2024-02-10.json";
+    private static final String SYMBOL_SET = Integer.toHexString(List.of("AAPL", "GOOG", "MSFT").hashCode());
+
+    @Mock
+    private PriceDataDTO priceDataDTO;
+
+    @Mock
+    private S3Service s3Service;
+
+    @Mock
+    private TradingCalendarService tradingCalendarService;
+
+    @TempDir
+    Path spillDirectory;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private RequestThrottle requestThrottle;
+
+    private BackfillServiceImpl backfillService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        ByteBufferPool byteBufferPool = new ByteBufferPool();
+        setField(byteBufferPool, "chunkBytes", 1024);
+        setField(byteBufferPool, "maxPooledChunks", 4);
+        MemoryMonitor memoryMonitor = new MemoryMonitor(byteBufferPool);
+        setField(memoryMonitor, "maxInMemoryBytes", 1024L * 1024);
+        setField(memoryMonitor, "bufferHeadroomFraction", 0.25);
+        setField(memoryMonitor, "spillDirectory", spillDirectory.toString());
+
+        requestThrottle = new RequestThrottle();
+        backfillService = new BackfillServiceImpl(priceDataDTO, s3Service, tradingCalendarService, memoryMonitor, requestThrottle);
+        setField(backfillService, "dataBucketName", "test-bucket");
+        setField(backfillService, "symbolsFileKey", "symbols.txt");
+        setField(backfillService, "sessionHours", SessionHours.REGULAR);
+        setField(backfillService, "symbolsPerTask", 2);
+        setField(backfillService, "parallelism", 2);
+        setField(backfillService, "batchNumberOffset", 1000);
+        setField(backfillService, "manifestPrefix", "state/backfill/");
+        setField(backfillService, "minRequestIntervalMillis", 5L);
+
+        // One session at the end of each month slice
+        when(tradingCalendarService.sessionsBetween(any(), any(), any(), eq(SessionHours.REGULAR))).thenAnswer(invocation -> {
+            LocalDate to = invocation.getArgument(1);
+            return List.of(TradingSession.builder().date(to).build());
+        });
+        when(tradingCalendarService.requestWindows(anyList(), eq(SessionHours.REGULAR))).thenAnswer(invocation -> {
+            LocalDate date = ((List<TradingSession>) invocation.getArgument(0)).getFirst().getDate();
+            ZonedDateTime open = date.atTime(9, 30).atZone(NEW_YORK);
+            return List.of(new TimeWindow(open, open.plusMinutes(390)));
+        });
+        doAnswer(invocation -> {
+            List<String> symbols = invocation.getArgument(0);
+            ZonedDateTime start = invocation.getArgument(1);
+            ((Consumer<List<StorageStockBar>>) invocation.getArgument(3)).accept(symbols.stream()
+                .map(symbol -> StorageStockBar.builder().symbol(symbol).timestamp(start).open(1).high(2).low(1).close(2).volume(10).build())
+                .toList());
+            return null;
+        }).when(priceDataDTO).streamPriceData(anyList(), any(ZonedDateTime.class), any(ZonedDateTime.class), any());
+    }
+
+    private void setField(Object target, String fieldName, Object value) {
+        try {
+            var field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (Exception ignored) {}
+    }
+
+    @Test
+    void backfill_shouldRunOneTaskPerSymbolChunkAndMonth() throws Exception {
+        // Given
+        BackfillRequest request = BackfillRequest.builder()
+            .startDate(LocalDate.of(2024, 1, 15)).endDate(LocalDate.of(2024, 2, 10))
+            .symbols(List.of("MSFT", "AAPL", "GOOG")).build();
+
+        // When
+        int result = backfillService.backfill(request);
+
+        // Then
+        assertEquals(6, result);
+        verify(priceDataDTO, times(2)).streamPriceData(eq(List.of("AAPL", "GOOG")), any(ZonedDateTime.class), any(ZonedDateTime.class), any());
+        verify(priceDataDTO, times(2)).streamPriceData(eq(List.of("MSFT")), any(ZonedDateTime.class), any(ZonedDateTime.class), any());
+        verify(s3Service).putObject(eq("test-bucket"), eq("stock_prices_2024-01-31_1001_" + SYMBOL_SET + ".csv.gz"), anyList(), anyLong(), any(byte[].class));
+        verify(s3Service).putObject(eq("test-bucket"), eq("stock_prices_2024-01-31_1002_" + SYMBOL_SET + ".csv.gz"), anyList(), anyLong(), any(byte[].class));
+        verify(s3Service).putObject(eq("test-bucket"), eq("stock_prices_2024-02-10_1001_" + SYMBOL_SET + ".csv.gz"), anyList(), anyLong(), any(byte[].class));
+        verify(s3Service).putObject(eq("test-bucket"), eq("stock_prices_2024-02-10_1002_" + SYMBOL_SET + ".csv.gz"), anyList(), anyLong(), any(byte[].class));
+        verify(s3Service, never()).fetchList(anyString(), anyString());
+
+        ArgumentCaptor<byte[]> manifestCaptor = ArgumentCaptor.forClass(byte[].class);
+        verify(s3Service, times(4)).putObject(eq("test-bucket"), eq(MANIFEST_KEY), manifestCaptor.capture());
+        BackfillManifest manifest = mapper.readValue(manifestCaptor.getValue(), BackfillManifest.class);
+        assertEquals(Set.of("2024-01/1", "2024-01/2", "2024-02/1", "2024-02/2"), manifest.getCompletedTasks());
+        assertEquals(6, manifest.getRecordsWritten());
+    }
+
+    @Test
+    void backfill_shouldPaceRequestsOnlyWhileItRuns() throws Exception {
+        // Given
+        List<Long> intervals = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            intervals.add(requestThrottle.currentIntervalMillis());
+            return null;
+        }).when(priceDataDTO).streamPriceData(anyList(), any(ZonedDateTime.class), any(ZonedDateTime.class), any());
+        BackfillRequest request = BackfillRequest.builder()
+            .startDate(LocalDate.of(2024, 1, 15)).endDate(LocalDate.of(2024, 1, 31))
+            .symbols(List.of("AAPL")).build();
+
+        // When
+        backfillService.backfill(request);
+
+        // Then
+        assertEquals(List.of(5L), intervals);
+        assertEquals(0, requestThrottle.currentIntervalMillis());
+    }
+
+    @Test
+    void backfill_shouldSkipTasksInTheManifest() throws Exception {
+        // Given: a first attempt that finished everything but February's second chunk
+        List<String> symbols = List.of("AAPL", "GOOG", "MSFT");
+        when(s3Service.fetchList("test-bucket", "symbols.txt")).thenReturn(symbols);
+        BackfillManifest previous = new BackfillManifest();
+        previous.setTaskLayout("2:" + Integer.toHexString(symbols.hashCode()));
+        previous.getCompletedTasks().addAll(Set.of("2024-01/1", "2024-01/2", "2024-02/1"));
+        when(s3Service.getObjectIfExists("test-bucket", MANIFEST_KEY)).thenReturn(mapper.writeValueAsBytes(previous));
+        BackfillRequest request = BackfillRequest.builder()
+            .startDate(LocalDate.of(2024, 1, 15)).endDate(LocalDate.of(2024, 2, 10)).build();
+
+        // When
+        int result = backfillService.backfill(request);
+
+        // Then
+        assertEquals(1, result);
+        verify(priceDataDTO, times(1)).streamPriceData(anyList(), any(ZonedDateTime.class), any(ZonedDateTime.class), any());
+        verify(s3Service).putObject(eq("test-bucket"), eq("stock_prices_2024-02-10_1002_" + SYMBOL_SET + ".csv.gz"), anyList(), anyLong(), any(byte[].class));
+    }
+
+    @Test
+    void backfill_shouldFailWhenATaskFails() throws Exception {
+        // Given
+        doThrow(new RuntimeException("API error")).when(priceDataDTO)
+            .streamPriceData(eq(List.of("MSFT")), any(ZonedDateTime.class), any(ZonedDateTime.class), any());
+        BackfillRequest request = BackfillRequest.builder()
+            .startDate(LocalDate.of(2024, 1, 15)).endDate(LocalDate.of(2024, 1, 31))
+            .symbols(List.of("AAPL", "GOOG", "MSFT")).build();
+
+        // When & Then
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> backfillService.backfill(request));
+        assertTrue(exception.getMessage().contains("1 of 2 tasks failed"));
+        verify(s3Service).putObject(eq("test-bucket"), eq("stock_prices_2024-01-31_1001_" + SYMBOL_SET + ".csv.gz"), anyList(), anyLong(), any(byte[].class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void backfill_shouldKeepTheFilesOfAnEarlierBackfillOfOtherSymbols() throws Exception {
+        // Given: a bucket that keeps what is put into it
+        Map<String, byte[]> bucket = new ConcurrentHashMap<>();
+        doAnswer(invocation -> {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            for (ByteBuffer chunk : (List<ByteBuffer>) invocation.getArgument(2)) {
+                byte[] bytes = new byte[chunk.remaining()];
+                chunk.duplicate().get(bytes);
+                content.write(bytes);
+            }
+            bucket.put(invocation.getArgument(1), content.toByteArray());
+            return null;
+        }).when(s3Service).putObject(anyString(), anyString(), anyList(), anyLong(), any(byte[].class));
+        doAnswer(invocation -> {
+            bucket.put(invocation.getArgument(1), invocation.getArgument(2));
+            return null;
+        }).when(s3Service).putObject(anyString(), anyString(), any(byte[].class));
+        when(s3Service.getObjectIfExists(anyString(), anyString())).thenAnswer(invocation -> bucket.get(invocation.getArgument(1)));
+        backfillService.backfill(BackfillRequest.builder()
+            .startDate(LocalDate.of(2024, 1, 2)).endDate(LocalDate.of(2024, 1, 31))
+            .symbols(List.of("AAPL", "GOOG")).build());
+
+        // When: history for newly added symbols over the same month
+        backfillService.backfill(BackfillRequest.builder()
+            .startDate(LocalDate.of(2024, 1, 2)).endDate(LocalDate.of(2024, 1, 31))
+            .symbols(List.of("NVDA", "TSLA")).build());
+
+        // Then: both sets of files are there, each with its own symbols
+        String first = "stock_prices_2024-01-31_1001_" + Integer.toHexString(List.of("AAPL", "GOOG").hashCode()) + ".csv.gz";
+        String second = "stock_prices_2024-01-31_1001_" + Integer.toHexString(List.of("NVDA", "TSLA").hashCode()) + ".csv.gz";
+        assertNotEquals(first, second);
+        assertTrue(gunzip(bucket.get(first)).contains("AAPL"));
+        assertTrue(gunzip(bucket.get(second)).contains("NVDA"));
+    }
+
+    private static String gunzip(byte[] data) throws Exception {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
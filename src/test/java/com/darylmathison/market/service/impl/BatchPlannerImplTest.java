@@ -0,0 +1,89 @@
+package com.darylmathison.market.service.impl;
+
+import com.darylmathison.market.model.OutputBatch;
+import com.darylmathison.market.model.SymbolStats;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchPlannerImplTest {
+
+    private BatchPlannerImpl batchPlanner;
+
+    @BeforeEach
+    void setUp() {
+        batchPlanner = new BatchPlannerImpl();
+        setField(batchPlanner, "maxSymbolsPerRequest", 100);
+        setField(batchPlanner, "barsPerPage", 1000);
+        setField(batchPlanner, "pagesPerRequest", 2);
+        setField(batchPlanner, "unseenSymbolBars", 100);
+        setField(batchPlanner, "maxSymbolsChars", 6000);
+        setField(batchPlanner, "targetOutputBytes", 100_000L);
+        setField(batchPlanner, "defaultBytesPerBar", 25.0);
+    }
+
+    private void setField(Object target, String fieldName, Object value) {
+        try {
+            var field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (Exception ignored) {}
+    }
+
+    @Test
+    void plan_shouldSizeRequestChunksByObservedBars() {
+        // Given
+        SymbolStats stats = new SymbolStats();
+        stats.getBarCounts().put("SPY", 1500);
+        stats.getBarCounts().put("QQQ", 1500);
+        stats.getBarCounts().put("ILLIQ1", 1);
+        stats.getBarCounts().put("ILLIQ2", 1);
+
+        // When
+        List<OutputBatch> plan = batchPlanner.plan(List.of("SPY", "QQQ", "ILLIQ1", "ILLIQ2"), stats);
+
+        // Then
+        assertEquals(1, plan.size());
+        List<List<String>> chunks = plan.getFirst().getRequestChunks();
+        assertEquals(List.of(List.of("SPY"), List.of("QQQ", "ILLIQ1", "ILLIQ2")), chunks);
+        assertEquals(3002, plan.getFirst().getEstimatedBars());
+    }
+
+    @Test
+    void plan_shouldKeepSymbolsParameterUnderLengthLimit() {
+        // Given
+        setField(batchPlanner, "maxSymbolsChars", 20);
+        List<String> symbols = IntStream.range(0, 10).mapToObj(i -> "SYM" + i).toList();
+
+        // When
+        List<OutputBatch> plan = batchPlanner.plan(symbols, new SymbolStats());
+
+        // Then
+        List<List<String>> chunks = plan.getFirst().getRequestChunks();
+        assertEquals(3, chunks.size());
+        chunks.forEach(chunk -> assertTrue(String.join(",", chunk).length() <= 20));
+        assertEquals(10, plan.getFirst().symbolCount());
+    }
+
+    @Test
+    void plan_shouldSplitOutputFilesByTargetSize() {
+        // Given: 4000 bars fill one 100 KB file at 25 bytes per bar
+        SymbolStats stats = new SymbolStats();
+        stats.setBarsWritten(1000);
+        stats.setBytesWritten(25_000);
+        List<String> symbols = IntStream.range(0, 100).mapToObj(i -> "S" + i).toList();
+        symbols.forEach(symbol -> stats.getBarCounts().put(symbol, 200));
+
+        // When
+        List<OutputBatch> plan = batchPlanner.plan(symbols, stats);
+
+        // Then: 20000 bars in chunks of 2000 bars, two chunks per file
+        assertEquals(5, plan.size());
+        plan.forEach(batch -> assertEquals(2, batch.getRequestChunks().size()));
+        assertEquals(100, plan.stream().mapToInt(OutputBatch::symbolCount).sum());
+    }
+}
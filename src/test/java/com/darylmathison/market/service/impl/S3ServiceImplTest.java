@@ -1,9 +1,12 @@
 package com.darylmathison.market.service.impl;
 
+import com.darylmathison.market.model.UploadResult;
 import com.darylmathison.market.service.S3Service;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
@@ -13,11 +16,22 @@ import software.amazon.awssdk.core.ResponseBytes;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 import software.amazon.awssdk.core.sync.RequestBody;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Base64;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -39,9 +53,20 @@ class S3ServiceImplTest {
     @BeforeEach
     void setUp() {
         when(s3ClientFactory.getObject()).thenReturn(s3Client);
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenThrow(NoSuchKeyException.builder().build());
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+            .thenReturn(PutObjectResponse.builder().eTag("\"new\"").build());
         s3Service = new S3ServiceImpl(s3ClientFactory);
     }
 
+    private void setField(Object target, String fieldName, Object value) {
+        try {
+            var field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (Exception ignored) {}
+    }
+
     @Test
     void fetchList_shouldReturnLinesList() {
         // Given
@@ -82,6 +107,28 @@ class S3ServiceImplTest {
         verify(s3ServiceSpy).getObject(bucket, key);
     }
 
+    @Test
+    void fetchList_shouldUseCachedCopy_whenObjectIsUnchanged(@TempDir Path cacheDirectory) {
+        // Given
+        setField(s3Service, "cacheDirectory", cacheDirectory.toString());
+        when(s3Client.getObjectAsBytes(any(GetObjectRequest.class)))
+            .thenReturn(ResponseBytes.fromByteArray(GetObjectResponse.builder().eTag("\"v1\"").build(),
+                "AAPL\nMSFT".getBytes(StandardCharsets.UTF_8)))
+            .thenThrow(S3Exception.builder().statusCode(304).build());
+
+        // When
+        List<String> first = s3Service.fetchList("test-bucket", "symbols.txt");
+        List<String> second = s3Service.fetchList("test-bucket", "symbols.txt");
+
+        // Then
+        assertEquals(List.of("AAPL", "MSFT"), first);
+        assertEquals(first, second);
+        ArgumentCaptor<GetObjectRequest> requestCaptor = ArgumentCaptor.forClass(GetObjectRequest.class);
+        verify(s3Client, times(2)).getObjectAsBytes(requestCaptor.capture());
+        assertNull(requestCaptor.getAllValues().get(0).ifNoneMatch());
+        assertEquals("\"v1\"", requestCaptor.getAllValues().get(1).ifNoneMatch());
+    }
+
     @Test
     void getObject_shouldReturnByteArray() {
         // Given
@@ -119,23 +166,39 @@ class S3ServiceImplTest {
     }
 
     @Test
-    void putObject_shouldPutObjectSuccessfully() {
+    void getObjectIfExists_shouldReturnNull_whenKeyDoesNotExist() {
+        // Given
+        when(s3Client.getObjectAsBytes(any(GetObjectRequest.class)))
+            .thenThrow(NoSuchKeyException.builder().message("missing").build());
+
+        // When
+        byte[] result = s3Service.getObjectIfExists("test-bucket", "missing.txt");
+
+        // Then
+        assertNull(result);
+        verify(s3Client).getObjectAsBytes(any(GetObjectRequest.class));
+    }
+
+    @Test
+    void putObject_shouldPutControlObjectWithOnePut() {
         // Given
         String bucket = "test-bucket";
         String key = "test-file.txt";
         byte[] data = "test content".getBytes(StandardCharsets.UTF_8);
 
-        // Mock necessary behavior
-        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class))).thenAnswer(invocation -> {
-          return null;
-        });
-
         // When
-        s3Service.putObject(bucket, key, data);
+        UploadResult result = s3Service.putObject(bucket, key, data);
 
         // Then
         verify(s3ClientFactory).getObject();
-        verify(s3Client).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        verify(s3Client, never()).headObject(any(HeadObjectRequest.class));
+        ArgumentCaptor<PutObjectRequest> requestCaptor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(s3Client).putObject(requestCaptor.capture(), any(RequestBody.class));
+        PutObjectRequest request = requestCaptor.getValue();
+        assertEquals(sha256(data), request.checksumSHA256());
+        assertEquals(sha256(data), request.metadata().get(S3ServiceImpl.CHECKSUM_METADATA));
+        assertFalse(result.isSkipped());
+        assertEquals("\"new\"", result.getETag());
     }
 
     @Test
@@ -153,4 +216,152 @@ class S3ServiceImplTest {
         assertTrue(exception.getMessage().contains("Failed to put object to S3"));
         verify(s3ClientFactory).getObject();
     }
-}
\ No newline at end of file
+
+    @Test
+    void putObject_shouldPutNewDataFileOnlyIfItStillDoesNotExist() {
+        // Given
+        byte[] data = "test content".getBytes(StandardCharsets.UTF_8);
+
+        // When
+        UploadResult result = s3Service.putObject("test-bucket", "test-file.txt", chunks(data), data.length, digest(data));
+
+        // Then
+        ArgumentCaptor<PutObjectRequest> requestCaptor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(s3Client).putObject(requestCaptor.capture(), any(RequestBody.class));
+        PutObjectRequest request = requestCaptor.getValue();
+        assertEquals("*", request.ifNoneMatch());
+        assertEquals(sha256(data), request.checksumSHA256());
+        assertEquals(sha256(data), request.metadata().get(S3ServiceImpl.CHECKSUM_METADATA));
+        assertFalse(result.isSkipped());
+        assertEquals("\"new\"", result.getETag());
+    }
+
+    @Test
+    void putObject_shouldSkipUpload_whenStoredChecksumMatches() {
+        // Given
+        byte[] data = "test content".getBytes(StandardCharsets.UTF_8);
+        doReturn(HeadObjectResponse.builder()
+            .eTag("\"old\"")
+            .metadata(Map.of(S3ServiceImpl.CHECKSUM_METADATA, sha256(data)))
+            .build()).when(s3Client).headObject(any(HeadObjectRequest.class));
+
+        // When
+        UploadResult result = s3Service.putObject("test-bucket", "test-file.txt", chunks(data), data.length, digest(data));
+
+        // Then
+        assertTrue(result.isSkipped());
+        assertEquals("\"old\"", result.getETag());
+        verify(s3Client, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+    }
+
+    @Test
+    void putObject_shouldReplaceOnlyTheObjectItRead_whenContentChanged() {
+        // Given
+        byte[] data = "test content".getBytes(StandardCharsets.UTF_8);
+        doReturn(HeadObjectResponse.builder()
+            .eTag("\"old\"")
+            .metadata(Map.of(S3ServiceImpl.CHECKSUM_METADATA, "other"))
+            .build()).when(s3Client).headObject(any(HeadObjectRequest.class));
+
+        // When
+        s3Service.putObject("test-bucket", "test-file.txt", chunks(data), data.length, digest(data));
+
+        // Then
+        ArgumentCaptor<PutObjectRequest> requestCaptor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(s3Client).putObject(requestCaptor.capture(), any(RequestBody.class));
+        assertEquals("\"old\"", requestCaptor.getValue().ifMatch());
+        assertNull(requestCaptor.getValue().ifNoneMatch());
+    }
+
+    @Test
+    void putObject_shouldFail_whenAnotherWriterChangedTheObject() {
+        // Given
+        byte[] data = {1};
+        doThrow(S3Exception.builder().statusCode(412).message("Precondition Failed").build()).when(s3Client)
+            .putObject(any(PutObjectRequest.class), any(RequestBody.class));
+
+        // When & Then
+        RuntimeException exception = assertThrows(RuntimeException.class,
+            () -> s3Service.putObject("test-bucket", "test-file.txt", chunks(data), data.length, digest(data)));
+        assertTrue(exception.getMessage().contains("Failed to put object to S3"));
+        assertInstanceOf(IllegalStateException.class, exception.getCause());
+    }
+
+    @Test
+    void putObject_shouldSucceed_whenAnotherWriterStoredTheSameContent() {
+        // Given: the object appears between the HEAD and the conditional PUT, with our checksum
+        byte[] data = "test content".getBytes(StandardCharsets.UTF_8);
+        doThrow(NoSuchKeyException.builder().build())
+            .doReturn(HeadObjectResponse.builder()
+                .eTag("\"theirs\"")
+                .versionId("v2")
+                .metadata(Map.of(S3ServiceImpl.CHECKSUM_METADATA, sha256(data)))
+                .build())
+            .when(s3Client).headObject(any(HeadObjectRequest.class));
+        doThrow(S3Exception.builder().statusCode(412).message("Precondition Failed").build()).when(s3Client)
+            .putObject(any(PutObjectRequest.class), any(RequestBody.class));
+
+        // When
+        UploadResult result = s3Service.putObject("test-bucket", "test-file.txt", chunks(data), data.length, digest(data));
+
+        // Then
+        assertTrue(result.isSkipped());
+        assertEquals("\"theirs\"", result.getETag());
+        assertEquals("v2", result.getVersionId());
+        verify(s3Client, times(2)).headObject(any(HeadObjectRequest.class));
+    }
+
+    @Test
+    void putObject_shouldPutFileSuccessfully(@TempDir Path directory) throws Exception {
+        // Given
+        Path file = directory.resolve("s3-put.tmp");
+        Files.writeString(file, "test content");
+        byte[] data = Files.readAllBytes(file);
+
+        // When
+        UploadResult result = s3Service.putObject("test-bucket", "test-file.txt", file, digest(data));
+
+        // Then
+        verify(s3ClientFactory).getObject();
+        verify(s3Client).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        assertEquals(sha256(data), result.getChecksum());
+    }
+
+    @Test
+    void putObject_shouldPutChunksWithoutMovingThem() {
+        // Given
+        List<ByteBuffer> chunks = List.of(
+            ByteBuffer.wrap("test ".getBytes(StandardCharsets.UTF_8)),
+            ByteBuffer.wrap("content".getBytes(StandardCharsets.UTF_8)));
+        byte[] data = "test content".getBytes(StandardCharsets.UTF_8);
+
+        // When
+        UploadResult result = s3Service.putObject("test-bucket", "test-file.txt", chunks, 12, digest(data));
+
+        // Then
+        verify(s3ClientFactory).getObject();
+        verify(s3Client).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        assertEquals(0, chunks.getFirst().position());
+        assertEquals(sha256(data), result.getChecksum());
+    }
+
+    private static List<ByteBuffer> chunks(byte[] data) {
+        return List.of(ByteBuffer.wrap(data));
+    }
+
+    private static byte[] digest(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -8,10 +8,12 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.darylmathison.market.model.ApiKeyPair;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -40,6 +42,20 @@ class SecretsServiceImplTest {
     }
   }
 
+  @BeforeEach
+  void setUp() {
+    SecretsServiceImpl.clearCache();
+  }
+
+  private void setField(Object target, String fieldName, Object value) {
+    try {
+      var field = SecretsServiceImpl.class.getDeclaredField(fieldName);
+      field.setAccessible(true);
+      field.set(target, value);
+    } catch (Exception ignored) {
+    }
+  }
+
   @Test
   void getSecret_shouldReturnSecretString_whenSecretExists() {
     // Given
@@ -128,4 +144,45 @@ class SecretsServiceImplTest {
     assertTrue(exception.getMessage().contains("Failed to parse secret JSON"));
     verify(secretsService).getSecret(secretName);
   }
+
+  @Test
+  void getSecret_shouldServeFromCache_untilTtlExpires() {
+    // Given
+    GetSecretValueResponse mockResponse = mock(GetSecretValueResponse.class);
+    when(mockResponse.secretString()).thenReturn("cached-value");
+    SecretsManagerClient mockClient = mock(SecretsManagerClient.class);
+    when(mockClient.getSecretValue(any(GetSecretValueRequest.class))).thenReturn(mockResponse);
+
+    TestableSecretsServiceImpl firstContext = new TestableSecretsServiceImpl(mockClient);
+    setField(firstContext, "secretTtlSeconds", 3600L);
+    TestableSecretsServiceImpl secondContext = new TestableSecretsServiceImpl(mock(SecretsManagerClient.class));
+    setField(secondContext, "secretTtlSeconds", 3600L);
+
+    // When
+    String first = firstContext.getSecret("test-secret");
+    String second = secondContext.getSecret("test-secret");
+
+    // Then
+    assertEquals("cached-value", first);
+    assertEquals("cached-value", second);
+    verify(mockClient, times(1)).getSecretValue(any(GetSecretValueRequest.class));
+  }
+
+  @Test
+  void getSecret_shouldFetchAgain_whenCachedSecretHasExpired() {
+    // Given
+    GetSecretValueResponse mockResponse = mock(GetSecretValueResponse.class);
+    when(mockResponse.secretString()).thenReturn("value");
+    SecretsManagerClient mockClient = mock(SecretsManagerClient.class);
+    when(mockClient.getSecretValue(any(GetSecretValueRequest.class))).thenReturn(mockResponse);
+    TestableSecretsServiceImpl secretsService = new TestableSecretsServiceImpl(mockClient);
+    setField(secretsService, "secretTtlSeconds", 0L);
+
+    // When
+    secretsService.getSecret("test-secret");
+    secretsService.getSecret("test-secret");
+
+    // Then
+    verify(mockClient, times(2)).getSecretValue(any(GetSecretValueRequest.class));
+  }
 }
@@ -1,21 +1,53 @@
 package com.darylmathison.market.service.impl;
 
+import com.darylmathison.market.aggregate.Timeframe;
+import com.darylmathison.market.io.ByteBufferPool;
+import com.darylmathison.market.io.ByteBuffersInputStream;
+import com.darylmathison.market.io.EncoderPool;
+import com.darylmathison.market.io.MemoryMonitor;
+import com.darylmathison.market.io.PageCache;
+import com.darylmathison.market.model.PageCacheMode;
+import com.darylmathison.market.model.RunReport;
+import com.darylmathison.market.model.SessionHours;
 import com.darylmathison.market.model.StorageStockBar;
+import com.darylmathison.market.model.SymbolStats;
+import com.darylmathison.market.model.TimeWindow;
+import com.darylmathison.market.model.TradingSession;
+import com.darylmathison.market.model.UploadResult;
+import com.darylmathison.market.model.ValidationReport;
 import com.darylmathison.market.dto.PriceDataDTO;
 import com.darylmathison.market.service.S3Service;
+import com.darylmathison.market.service.SymbolStatsService;
+import com.darylmathison.market.service.TradingCalendarService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -31,15 +63,95 @@ class StockPriceServiceImplTest {
     @Mock
     private S3Service s3Service;
 
+    @Mock
+    private SymbolStatsService symbolStatsService;
+
+    @Mock
+    private TradingCalendarService tradingCalendarService;
+
+    @TempDir
+    Path spillDirectory;
+
+    private BatchPlannerImpl batchPlanner;
+
+    private MemoryMonitor memoryMonitor;
+
+    @TempDir
+    Path cacheDirectory;
+
+    private PageCache pageCache;
+
+    private final Map<String, byte[]> uploads = new HashMap<>();
+
     private StockPriceServiceImpl stockPriceService;
 
+    private final ZonedDateTime windowStart = ZonedDateTime.of(2023, 5, 15, 4, 0, 0, 0, ZoneId.of("America/New_York"));
+    private final ZonedDateTime windowEnd = windowStart.plusHours(16);
+
     @BeforeEach
     void setUp() {
-        stockPriceService = new StockPriceServiceImpl(priceDataDTO, s3Service);
+        batchPlanner = new BatchPlannerImpl();
+        setField(batchPlanner, "maxSymbolsPerRequest", 2); // Set batch size to 2 for testing
+        setField(batchPlanner, "barsPerPage", 1000);
+        setField(batchPlanner, "pagesPerRequest", 20);
+        setField(batchPlanner, "unseenSymbolBars", 100);
+        setField(batchPlanner, "maxSymbolsChars", 6000);
+        setField(batchPlanner, "targetOutputBytes", 1L); // One request chunk per output file
+        setField(batchPlanner, "defaultBytesPerBar", 24.0);
+        when(symbolStatsService.load()).thenReturn(new SymbolStats());
+        when(priceDataDTO.getTimeframe()).thenReturn(Timeframe.parse("15Min"));
+
+        List<TradingSession> sessions = List.of(TradingSession.builder().date(windowStart.toLocalDate()).build());
+        when(tradingCalendarService.completedSessions(eq(30), any(), eq(SessionHours.EXTENDED))).thenReturn(sessions);
+        when(tradingCalendarService.requestWindows(sessions, SessionHours.EXTENDED))
+            .thenReturn(List.of(new TimeWindow(windowStart, windowEnd)));
+
+        // Copy chunked uploads as they happen, since the chunks go back to the pool afterwards
+        doAnswer(invocation -> {
+            ByteArrayOutputStream copy = new ByteArrayOutputStream();
+            new ByteBuffersInputStream(invocation.getArgument(2)).transferTo(copy);
+            uploads.put(invocation.getArgument(1), copy.toByteArray());
+            return UploadResult.builder().key(invocation.getArgument(1)).eTag("etag").build();
+        }).when(s3Service).putObject(anyString(), anyString(), anyList(), anyLong(), any(byte[].class));
+        doAnswer(invocation -> {
+            uploads.put(invocation.getArgument(1), invocation.getArgument(2));
+            return UploadResult.builder().key(invocation.getArgument(1)).eTag("etag").build();
+        }).when(s3Service).putObject(anyString(), anyString(), any(byte[].class));
+
+        ByteBufferPool byteBufferPool = new ByteBufferPool();
+        setField(byteBufferPool, "chunkBytes", 1024);
+        setField(byteBufferPool, "maxPooledChunks", 4);
+        memoryMonitor = new MemoryMonitor(byteBufferPool);
+        setField(memoryMonitor, "maxInMemoryBytes", 64L * 1024 * 1024);
+        setField(memoryMonitor, "bufferHeadroomFraction", 0.25);
+        setField(memoryMonitor, "lowWaterFraction", 0.0);
+        setField(memoryMonitor, "spillDirectory", spillDirectory.toString());
+
+        // Two workers and one-bar segments, so every batch file is written as several gzip members
+        EncoderPool encoderPool = new EncoderPool();
+        setField(encoderPool, "parallelism", 2);
+        setField(encoderPool, "segmentBars", 1);
+        setField(encoderPool, "maxPendingBytes", 1024L);
+
+        pageCache = new PageCache(s3Service);
+        setField(pageCache, "mode", PageCacheMode.OFF);
+        setField(pageCache, "location", cacheDirectory.toString());
+
+        stockPriceService = new StockPriceServiceImpl(priceDataDTO, s3Service, symbolStatsService, batchPlanner,
+            tradingCalendarService, memoryMonitor, encoderPool, pageCache);
         setField(stockPriceService, "dataBucketName", "test-bucket");
         setField(stockPriceService, "symbolsFileKey", "symbols.txt");
         setField(stockPriceService, "historyDays", 30);
-        setField(stockPriceService, "symbolsBatchSize", 2); // Set batch size to 2 for testing
+        setField(stockPriceService, "sessionHours", SessionHours.EXTENDED);
+        setField(stockPriceService, "inactiveAfterRuns", 3);
+        setField(stockPriceService, "probeIntervalDays", 28);
+        setField(stockPriceService, "rollupTimeframes", List.of());
+        setField(stockPriceService, "rollupPrefix", "rollups/");
+        setField(stockPriceService, "summaryPrefix", "summary/");
+        setField(stockPriceService, "matrixPrefix", "matrix/");
+        setField(stockPriceService, "summaryEnabled", true);
+        setField(stockPriceService, "quarantinePrefix", "quarantine/");
+        setField(stockPriceService, "manifestPrefix", "manifests/");
     }
 
     private void setField(Object target, String fieldName, Object value) {
@@ -90,39 +202,36 @@ class StockPriceServiceImplTest {
                 .build()
         );
 
-        LocalDate today = LocalDate.now();
-        LocalDate startDate = today.minusDays(30);
+        LocalDate today = LocalDate.now(ZoneId.of("America/New_York"));
 
         // First batch: AAPL, GOOG
-        when(priceDataDTO.getPriceData(eq(List.of("AAPL", "GOOG")), eq(startDate), eq(today)))
-            .thenReturn(mockDataBatch1);
+        stubPriceData(List.of("AAPL", "GOOG"), mockDataBatch1);
 
         // Second batch: MSFT
-        when(priceDataDTO.getPriceData(eq(List.of("MSFT")), eq(startDate), eq(today)))
-            .thenReturn(mockDataBatch2);
+        stubPriceData(List.of("MSFT"), mockDataBatch2);
 
         // When
-        int result = stockPriceService.getPriceData();
+        int result = stockPriceService.getPriceData().getRecordsProcessed();
 
         // Then
         assertEquals(3, result); // 2 from the first batch + 1 from the second batch
 
-        // Verify S3 service calls
+        // Verify S3 service calls and that the Alpaca client was prepared up front
         verify(s3Service).fetchList(eq("test-bucket"), eq("symbols.txt"));
+        verify(priceDataDTO).prepare();
 
         // Verify price data DTO calls for each batch
-        verify(priceDataDTO).getPriceData(eq(List.of("AAPL", "GOOG")), eq(startDate), eq(today));
-        verify(priceDataDTO).getPriceData(eq(List.of("MSFT")), eq(startDate), eq(today));
+        verify(priceDataDTO).streamPriceData(eq(List.of("AAPL", "GOOG")), eq(windowStart), eq(windowEnd), any());
+        verify(priceDataDTO).streamPriceData(eq(List.of("MSFT")), eq(windowStart), eq(windowEnd), any());
 
         // Verify S3 upload with the correct key format for each batch
         ArgumentCaptor<String> keyCaptor = ArgumentCaptor.forClass(String.class);
-        ArgumentCaptor<byte[]> dataCaptor = ArgumentCaptor.forClass(byte[].class);
 
         // Verify putObject was called twice (once for each batch)
-        verify(s3Service, times(2)).putObject(eq("test-bucket"), keyCaptor.capture(), dataCaptor.capture());
+        verify(s3Service, times(2)).putObject(eq("test-bucket"), keyCaptor.capture(), anyList(), anyLong(), any(byte[].class));
 
         List<String> capturedKeys = keyCaptor.getAllValues();
-        List<byte[]> capturedData = dataCaptor.getAllValues();
+        List<byte[]> capturedData = capturedKeys.stream().map(uploads::get).toList();
 
         assertEquals(2, capturedKeys.size());
         assertEquals(2, capturedData.size());
@@ -138,6 +247,13 @@ class StockPriceServiceImplTest {
         String expectedKey2 = "stock_prices_" + dateFormat + "_2.csv.gz";
         assertEquals(expectedKey2, capturedKeys.get(1));
         assertTrue(capturedData.get(1).length > 0);
+
+        // Verify bar counts were saved for the next plan
+        ArgumentCaptor<SymbolStats> statsCaptor = ArgumentCaptor.forClass(SymbolStats.class);
+        verify(symbolStatsService).save(statsCaptor.capture());
+        SymbolStats savedStats = statsCaptor.getValue();
+        assertEquals(3, savedStats.getBarsWritten());
+        assertEquals(1, savedStats.getBarCounts().get("MSFT"));
     }
 
     @Test
@@ -150,7 +266,79 @@ class StockPriceServiceImplTest {
             () -> stockPriceService.getPriceData());
         assertTrue(exception.getMessage().contains("Failed to process price data"));
         verify(s3Service).fetchList(anyString(), anyString());
-        verify(priceDataDTO, never()).getPriceData(anyList(), any(LocalDate.class), any(LocalDate.class));
+        verify(priceDataDTO, never()).streamPriceData(anyList(), any(ZonedDateTime.class), any(ZonedDateTime.class), any());
+    }
+
+    @Test
+    void getPriceData_shouldRequestEachSessionWindow() throws Exception {
+        // Given
+        setField(stockPriceService, "sessionHours", SessionHours.REGULAR);
+        when(s3Service.fetchList(anyString(), anyString())).thenReturn(List.of("AAPL"));
+        List<TradingSession> sessions = List.of(
+            TradingSession.builder().date(LocalDate.of(2023, 5, 12)).build(),
+            TradingSession.builder().date(LocalDate.of(2023, 5, 15)).build());
+        when(tradingCalendarService.completedSessions(eq(30), any(), eq(SessionHours.REGULAR))).thenReturn(sessions);
+        TimeWindow friday = new TimeWindow(windowStart.minusDays(3), windowEnd.minusDays(3));
+        TimeWindow monday = new TimeWindow(windowStart, windowEnd);
+        when(tradingCalendarService.requestWindows(sessions, SessionHours.REGULAR)).thenReturn(List.of(friday, monday));
+
+        // When
+        stockPriceService.getPriceData();
+
+        // Then
+        verify(priceDataDTO).streamPriceData(eq(List.of("AAPL")), eq(friday.getStart()), eq(friday.getEnd()), any());
+        verify(priceDataDTO).streamPriceData(eq(List.of("AAPL")), eq(monday.getStart()), eq(monday.getEnd()), any());
+    }
+
+    @Test
+    void getPriceData_shouldSkipInactiveSymbolsUntilProbeIsDue() throws Exception {
+        // Given
+        SymbolStats previousStats = new SymbolStats();
+        previousStats.getZeroRuns().put("MSFT", 3);
+        previousStats.getZeroRuns().put("GOOG", 1);
+        previousStats.setLastProbeDate(LocalDate.now(ZoneId.of("America/New_York")).minusDays(1).toString());
+        when(symbolStatsService.load()).thenReturn(previousStats);
+        when(s3Service.fetchList(anyString(), anyString())).thenReturn(List.of("AAPL", "GOOG", "MSFT"));
+
+        // When
+        stockPriceService.getPriceData();
+
+        // Then
+        verify(priceDataDTO).streamPriceData(eq(List.of("AAPL", "GOOG")), any(ZonedDateTime.class), any(ZonedDateTime.class), any());
+        verify(priceDataDTO, never()).streamPriceData(eq(List.of("MSFT")), any(ZonedDateTime.class), any(ZonedDateTime.class), any());
+        ArgumentCaptor<SymbolStats> statsCaptor = ArgumentCaptor.forClass(SymbolStats.class);
+        verify(symbolStatsService).save(statsCaptor.capture());
+        SymbolStats savedStats = statsCaptor.getValue();
+        assertEquals(3, savedStats.getZeroRuns().get("MSFT"));
+        assertEquals(2, savedStats.getZeroRuns().get("GOOG"));
+        assertEquals(1, savedStats.getZeroRuns().get("AAPL"));
+        assertEquals(previousStats.getLastProbeDate(), savedStats.getLastProbeDate());
+    }
+
+    @Test
+    void getPriceData_shouldReviveInactiveSymbolsFoundTradingByProbe() throws Exception {
+        // Given
+        SymbolStats previousStats = new SymbolStats();
+        previousStats.getZeroRuns().put("MSFT", 5);
+        previousStats.setLastProbeDate(LocalDate.now(ZoneId.of("America/New_York")).minusDays(28).toString());
+        when(symbolStatsService.load()).thenReturn(previousStats);
+        when(s3Service.fetchList(anyString(), anyString())).thenReturn(List.of("AAPL", "MSFT"));
+        List<StorageStockBar> msftBars = List.of(
+            StorageStockBar.builder().symbol("MSFT").timestamp(windowStart).open(1).high(1).low(1).close(1).volume(1).build());
+        stubPriceData(List.of("MSFT"), msftBars);
+        stubPriceData(List.of("AAPL", "MSFT"), msftBars);
+
+        // When
+        int result = stockPriceService.getPriceData().getRecordsProcessed();
+
+        // Then: MSFT alone in the probe, then back in the main run
+        assertEquals(1, result);
+        verify(priceDataDTO).streamPriceData(eq(List.of("MSFT")), eq(windowStart), eq(windowEnd), any());
+        verify(priceDataDTO).streamPriceData(eq(List.of("AAPL", "MSFT")), eq(windowStart), eq(windowEnd), any());
+        ArgumentCaptor<SymbolStats> statsCaptor = ArgumentCaptor.forClass(SymbolStats.class);
+        verify(symbolStatsService).save(statsCaptor.capture());
+        assertFalse(statsCaptor.getValue().getZeroRuns().containsKey("MSFT"));
+        assertEquals(LocalDate.now(ZoneId.of("America/New_York")).toString(), statsCaptor.getValue().getLastProbeDate());
     }
 
     @Test
@@ -158,14 +346,330 @@ class StockPriceServiceImplTest {
         // Given
         List<String> symbols = List.of("AAPL", "GOOG", "MSFT");
         when(s3Service.fetchList(anyString(), anyString())).thenReturn(symbols);
-        when(priceDataDTO.getPriceData(anyList(), any(LocalDate.class), any(LocalDate.class)))
-            .thenThrow(new Exception("Failed to get price data"));
+        doThrow(new Exception("Failed to get price data")).when(priceDataDTO)
+            .streamPriceData(anyList(), any(ZonedDateTime.class), any(ZonedDateTime.class), any());
 
         // When & Then
         RuntimeException exception = assertThrows(RuntimeException.class,
             () -> stockPriceService.getPriceData());
         assertTrue(exception.getMessage().contains("Failed to process price data"));
         verify(s3Service).fetchList(anyString(), anyString());
-        verify(priceDataDTO).getPriceData(anyList(), any(LocalDate.class), any(LocalDate.class));
+        verify(priceDataDTO).streamPriceData(anyList(), any(ZonedDateTime.class), any(ZonedDateTime.class), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void getPriceData_shouldDeleteSpilledBatchWhenDownloadFails() throws Exception {
+        // Given: a page is encoded and spilled before the download fails
+        setField(memoryMonitor, "maxInMemoryBytes", 1L);
+        when(s3Service.fetchList(anyString(), anyString())).thenReturn(List.of("AAPL"));
+        ZonedDateTime open = ZonedDateTime.of(2023, 5, 15, 10, 0, 0, 0, ZoneId.of("America/New_York"));
+        doAnswer(invocation -> {
+            ((Consumer<List<StorageStockBar>>) invocation.getArgument(3)).accept(IntStream.range(0, 4)
+                .mapToObj(i -> StorageStockBar.builder().symbol("AAPL").timestamp(open.plusMinutes(15L * i))
+                    .open(1).high(2).low(1).close(2).volume(10).build())
+                .toList());
+            throw new Exception("Connection reset");
+        }).when(priceDataDTO).streamPriceData(anyList(), any(ZonedDateTime.class), any(ZonedDateTime.class), any());
+
+        // When
+        assertThrows(RuntimeException.class, () -> stockPriceService.getPriceData());
+
+        // Then
+        verify(s3Service, never()).putObject(anyString(), anyString(), any(Path.class), any(byte[].class));
+        try (var files = Files.list(spillDirectory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void getPriceData_shouldUploadRollupsBuiltFromDownloadedBars() throws Exception {
+        // Given
+        setField(stockPriceService, "rollupTimeframes", List.of("1Hour"));
+        when(s3Service.fetchList(anyString(), anyString())).thenReturn(List.of("AAPL"));
+
+        ZonedDateTime open = ZonedDateTime.of(2023, 5, 15, 10, 0, 0, 0, ZoneId.of("America/New_York"));
+        List<StorageStockBar> bars = List.of(
+            StorageStockBar.builder().symbol("AAPL").timestamp(open).open(1).high(2).low(1).close(2).volume(10).build(),
+            StorageStockBar.builder().symbol("AAPL").timestamp(open.plusMinutes(15)).open(2).high(3).low(2).close(3).volume(10).build());
+        LocalDate today = LocalDate.now(ZoneId.of("America/New_York"));
+        stubPriceData(List.of("AAPL"), bars);
+
+        // When
+        int result = stockPriceService.getPriceData().getRecordsProcessed();
+
+        // Then
+        assertEquals(2, result);
+        String dateFormat = today.format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+        ArgumentCaptor<byte[]> dataCaptor = ArgumentCaptor.forClass(byte[].class);
+        verify(s3Service).putObject(eq("test-bucket"), eq("stock_prices_" + dateFormat + "_1.csv.gz"), anyList(), anyLong(), any(byte[].class));
+        verify(s3Service).putObject(eq("test-bucket"), eq("rollups/1hour/stock_prices_1hour_" + dateFormat + "_1.csv.gz"), dataCaptor.capture());
+        List<String> rows = gunzipLines(dataCaptor.getValue());
+        assertEquals(2, rows.size());
+        assertEquals("AAPL," + open + ",1.0,3.0,1.0,3.0,20.0", rows.get(1));
+    }
+
+    @Test
+    void getPriceData_shouldUploadDailySummary() throws Exception {
+        // Given
+        when(s3Service.fetchList(anyString(), anyString())).thenReturn(List.of("AAPL"));
+        ZonedDateTime open = ZonedDateTime.of(2023, 5, 15, 10, 0, 0, 0, ZoneId.of("America/New_York"));
+        stubPriceData(List.of("AAPL"), List.of(
+            StorageStockBar.builder().symbol("AAPL").timestamp(open).open(10).high(12).low(9).close(11).volume(10).build(),
+            StorageStockBar.builder().symbol("AAPL").timestamp(open.plusMinutes(15)).open(11).high(13).low(11).close(12).volume(30).build()));
+
+        // When
+        stockPriceService.getPriceData();
+
+        // Then
+        String dateFormat = LocalDate.now(ZoneId.of("America/New_York")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+        ArgumentCaptor<byte[]> dataCaptor = ArgumentCaptor.forClass(byte[].class);
+        verify(s3Service).putObject(eq("test-bucket"), eq("summary/stock_prices_summary_" + dateFormat + ".csv.gz"), dataCaptor.capture());
+        List<String> rows = gunzipLines(dataCaptor.getValue());
+        assertEquals("symbol,date,bars,twap_by_trades,open,high,low,close,range,return", rows.get(0));
+        assertEquals("AAPL,2023-05-15,2,11.666666666666666,10.0,13.0,9.0,12.0,4.0,0.19999999999999996", rows.get(1));
+    }
+
+    @Test
+    void getPriceData_shouldUploadBarMatrixOfTheSessions() throws Exception {
+        // Given: one extended session of 64 fifteen minute slots
+        setField(stockPriceService, "matrixEnabled", true);
+        List<TradingSession> sessions = List.of(TradingSession.builder().date(windowStart.toLocalDate())
+            .extendedOpen(windowStart).extendedClose(windowEnd).build());
+        when(tradingCalendarService.completedSessions(eq(30), any(), eq(SessionHours.EXTENDED))).thenReturn(sessions);
+        when(tradingCalendarService.requestWindows(sessions, SessionHours.EXTENDED))
+            .thenReturn(List.of(new TimeWindow(windowStart, windowEnd)));
+        when(s3Service.fetchList(anyString(), anyString())).thenReturn(List.of("MSFT", "AAPL"));
+        stubPriceData(List.of("AAPL", "MSFT"), List.of(
+            StorageStockBar.builder().symbol("MSFT").timestamp(windowStart.plusMinutes(30)).open(10).high(12).low(9).close(11).volume(10).build()));
+        Map<String, byte[]> fileUploads = new HashMap<>();
+        doAnswer(invocation -> {
+            fileUploads.put(invocation.getArgument(1), Files.readAllBytes(invocation.getArgument(2)));
+            return UploadResult.builder().key(invocation.getArgument(1)).build();
+        }).when(s3Service).putObject(anyString(), anyString(), any(Path.class), any(byte[].class));
+
+        // When
+        stockPriceService.getPriceData();
+
+        // Then: rows in dictionary order, the MSFT bar in slot 2 and its close carried to the end
+        String dateFormat = LocalDate.now(ZoneId.of("America/New_York")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+        ByteBuffer matrix = ByteBuffer.wrap(fileUploads.get("matrix/stock_prices_matrix_" + dateFormat + ".bin"))
+            .order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(2, matrix.getInt(12));
+        assertEquals(64, matrix.getInt(16));
+        int closePlane = matrix.getInt(28) + 3 * 2 * 64 * Float.BYTES;
+        assertTrue(Float.isNaN(matrix.getFloat(closePlane)));
+        assertEquals(11f, matrix.getFloat(closePlane + (64 + 2) * Float.BYTES));
+        assertEquals(11f, matrix.getFloat(closePlane + (64 + 63) * Float.BYTES));
+        try (var files = Files.list(spillDirectory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void getPriceData_shouldRemoveTheMatrixFileWhenTheDownloadFails() throws Exception {
+        // Given
+        setField(stockPriceService, "matrixEnabled", true);
+        List<TradingSession> sessions = List.of(TradingSession.builder().date(windowStart.toLocalDate())
+            .extendedOpen(windowStart).extendedClose(windowEnd).build());
+        when(tradingCalendarService.completedSessions(eq(30), any(), eq(SessionHours.EXTENDED))).thenReturn(sessions);
+        when(tradingCalendarService.requestWindows(sessions, SessionHours.EXTENDED))
+            .thenReturn(List.of(new TimeWindow(windowStart, windowEnd)));
+        when(s3Service.fetchList(anyString(), anyString())).thenReturn(List.of("AAPL"));
+        doThrow(new Exception("Failed to get price data")).when(priceDataDTO)
+            .streamPriceData(anyList(), any(ZonedDateTime.class), any(ZonedDateTime.class), any());
+
+        // When
+        assertThrows(RuntimeException.class, () -> stockPriceService.getPriceData());
+
+        // Then
+        try (var files = Files.list(spillDirectory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void getPriceData_shouldQuarantineInvalidBarsAndReportCounts() throws Exception {
+        // Given
+        when(s3Service.fetchList(anyString(), anyString())).thenReturn(List.of("AAPL"));
+        ZonedDateTime open = ZonedDateTime.of(2023, 5, 15, 10, 0, 0, 0, ZoneId.of("America/New_York"));
+        stubPriceData(List.of("AAPL"), List.of(
+            StorageStockBar.builder().symbol("AAPL").timestamp(open).open(10).high(12).low(9).close(11).volume(10).build(),
+            StorageStockBar.builder().symbol("AAPL").timestamp(open).open(10).high(12).low(9).close(11).volume(10).build(),
+            StorageStockBar.builder().symbol("AAPL").timestamp(open.plusMinutes(15)).open(11).high(10).low(12).close(11).volume(5).build(),
+            StorageStockBar.builder().symbol("AAPL").timestamp(open.plusMinutes(45)).open(11).high(13).low(11).close(12).volume(30).build()));
+
+        // When
+        RunReport report = stockPriceService.getPriceData();
+
+        // Then
+        assertEquals(2, report.getRecordsProcessed());
+        ValidationReport validation = report.getValidation();
+        assertEquals(4, validation.getBarsChecked());
+        assertEquals(2, validation.getQuarantined());
+        assertEquals(1, validation.getDuplicates());
+        assertEquals(1, validation.getOhlcViolations());
+        assertEquals(2, validation.getGapSlots());
+
+        String dateFormat = LocalDate.now(ZoneId.of("America/New_York")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+        String quarantineKey = "quarantine/stock_prices_quarantine_" + dateFormat + ".csv.gz";
+        assertEquals(quarantineKey, validation.getQuarantineKey());
+        ArgumentCaptor<byte[]> dataCaptor = ArgumentCaptor.forClass(byte[].class);
+        verify(s3Service).putObject(eq("test-bucket"), eq(quarantineKey), dataCaptor.capture());
+        List<String> rows = gunzipLines(dataCaptor.getValue());
+        assertEquals(3, rows.size());
+        assertTrue(rows.get(1).endsWith(",duplicate"));
+        assertTrue(rows.get(2).endsWith(",ohlc"));
+        assertEquals(3, gunzipLines(uploads.get("stock_prices_" + dateFormat + "_1.csv.gz")).size());
+    }
+
+    @Test
+    void getPriceData_shouldCommitRunManifestAfterAllObjects() throws Exception {
+        // Given
+        when(s3Service.fetchList(anyString(), anyString())).thenReturn(List.of("AAPL"));
+        ZonedDateTime open = ZonedDateTime.of(2023, 5, 15, 10, 0, 0, 0, ZoneId.of("America/New_York"));
+        stubPriceData(List.of("AAPL"), List.of(
+            StorageStockBar.builder().symbol("AAPL").timestamp(open).open(10).high(12).low(9).close(11).volume(10).build()));
+
+        // When
+        RunReport report = stockPriceService.getPriceData();
+
+        // Then
+        String dateFormat = LocalDate.now(ZoneId.of("America/New_York")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+        String manifestKey = report.getManifestKey();
+        assertTrue(manifestKey.matches("manifests/" + dateFormat + "/[0-9a-f]{32}\\.json"));
+        String pointerKey = "manifests/" + dateFormat + "/CURRENT";
+        assertEquals(manifestKey, new String(uploads.get(pointerKey), StandardCharsets.UTF_8));
+
+        String manifest = new String(uploads.get(manifestKey), StandardCharsets.UTF_8);
+        assertTrue(manifest.contains("\"key\":\"stock_prices_" + dateFormat + "_1.csv.gz\""));
+        assertTrue(manifest.contains("\"key\":\"summary/stock_prices_summary_" + dateFormat + ".csv.gz\""));
+
+        // The pointer goes last, so a run that fails earlier leaves the previous one current
+        InOrder inOrder = inOrder(s3Service);
+        inOrder.verify(s3Service).putObject(eq("test-bucket"), eq("stock_prices_" + dateFormat + "_1.csv.gz"), anyList(), anyLong(), any(byte[].class));
+        inOrder.verify(s3Service).putObject(eq("test-bucket"), eq(manifestKey), any(byte[].class));
+        inOrder.verify(s3Service).putObject(eq("test-bucket"), eq(pointerKey), any(byte[].class));
+    }
+
+    @Test
+    void getPriceData_shouldReplayTheRecordedRunWithItsInputs() throws Exception {
+        // Given: a run recorded against a symbol list that has since changed
+        when(s3Service.fetchList(anyString(), anyString())).thenReturn(List.of("AAPL"));
+        ZonedDateTime open = ZonedDateTime.of(2023, 5, 15, 10, 0, 0, 0, ZoneId.of("America/New_York"));
+        stubPriceData(List.of("AAPL"), List.of(
+            StorageStockBar.builder().symbol("AAPL").timestamp(open).open(10).high(12).low(9).close(11).volume(10).build()));
+        setField(pageCache, "mode", PageCacheMode.RECORD);
+        stockPriceService.getPriceData();
+        when(s3Service.fetchList(anyString(), anyString())).thenReturn(List.of("AAPL", "MSFT"));
+        clearInvocations(symbolStatsService, priceDataDTO);
+
+        // When
+        setField(pageCache, "mode", PageCacheMode.REPLAY);
+        int result = stockPriceService.getPriceData().getRecordsProcessed();
+
+        // Then: the same request is made, and the live runs' stats are left alone
+        assertEquals(1, result);
+        verify(priceDataDTO).streamPriceData(eq(List.of("AAPL")), eq(windowStart), eq(windowEnd), any());
+        verify(symbolStatsService, never()).save(any());
+    }
+
+    @Test
+    void getPriceData_shouldReplayTheRecordingSelectedByItsAsOfTime() throws Exception {
+        // Given: two recordings over different symbol lists
+        when(s3Service.fetchList(anyString(), anyString())).thenReturn(List.of("AAPL"));
+        setField(pageCache, "mode", PageCacheMode.RECORD);
+        stockPriceService.getPriceData();
+        String firstAsOf = pageCache.load(PageCache.key("run", "latest"), String.class);
+        when(s3Service.fetchList(anyString(), anyString())).thenReturn(List.of("AAPL", "MSFT"));
+        stockPriceService.getPriceData();
+        clearInvocations(priceDataDTO);
+
+        // When
+        setField(pageCache, "mode", PageCacheMode.REPLAY);
+        setField(stockPriceService, "replayAsOf", firstAsOf);
+        stockPriceService.getPriceData();
+
+        // Then: the first recording's requests are made, not the latest one's
+        verify(priceDataDTO).streamPriceData(eq(List.of("AAPL")), eq(windowStart), eq(windowEnd), any());
+        verify(priceDataDTO, never()).streamPriceData(eq(List.of("AAPL", "MSFT")), any(ZonedDateTime.class),
+            any(ZonedDateTime.class), any());
+    }
+
+    @Test
+    void getPriceData_shouldRejectRollupFinerThanDownloadedBars() throws Exception {
+        // Given
+        setField(stockPriceService, "rollupTimeframes", List.of("5Min"));
+        when(s3Service.fetchList(anyString(), anyString())).thenReturn(List.of("AAPL"));
+
+        // When & Then
+        RuntimeException exception = assertThrows(RuntimeException.class,
+            () -> stockPriceService.getPriceData());
+        assertTrue(exception.getMessage().contains("Rollup 5min cannot be built from 15min bars"));
+        verify(priceDataDTO, never()).streamPriceData(anyList(), any(ZonedDateTime.class), any(ZonedDateTime.class), any());
+    }
+
+    @Test
+    void getPriceData_shouldUploadFromDiskWhenBatchSpills() throws Exception {
+        // Given
+        setField(memoryMonitor, "maxInMemoryBytes", 1L);
+        when(s3Service.fetchList(anyString(), anyString())).thenReturn(List.of("AAPL"));
+        ZonedDateTime open = ZonedDateTime.of(2023, 5, 15, 10, 0, 0, 0, ZoneId.of("America/New_York"));
+        stubPriceData(List.of("AAPL"), List.of(
+            StorageStockBar.builder().symbol("AAPL").timestamp(open).open(1).high(2).low(1).close(2).volume(10).build()));
+        List<List<String>> uploadedRows = new java.util.ArrayList<>();
+        doAnswer(invocation -> {
+            uploadedRows.add(gunzipLines(Files.readAllBytes(invocation.getArgument(2))));
+            return null;
+        }).when(s3Service).putObject(anyString(), anyString(), any(Path.class), any(byte[].class));
+
+        // When
+        int result = stockPriceService.getPriceData().getRecordsProcessed();
+
+        // Then
+        assertEquals(1, result);
+        verify(s3Service).putObject(eq("test-bucket"), anyString(), any(Path.class), any(byte[].class));
+        verify(s3Service, never()).putObject(anyString(), anyString(), anyList(), anyLong(), any(byte[].class));
+        assertEquals(1, uploadedRows.size());
+        assertEquals("AAPL," + open + ",1.0,2.0,1.0,2.0,10.0", uploadedRows.getFirst().get(1));
+        try (var files = Files.list(spillDirectory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void getPriceData_shouldCloseBatchEarlyUnderMemoryPressure() throws Exception {
+        // Given
+        setField(batchPlanner, "targetOutputBytes", Long.MAX_VALUE); // Both request chunks planned into one file
+        setField(memoryMonitor, "lowWaterFraction", 1.0);
+        when(s3Service.fetchList(anyString(), anyString())).thenReturn(List.of("AAPL", "GOOG", "MSFT"));
+        ZonedDateTime open = ZonedDateTime.of(2023, 5, 15, 10, 0, 0, 0, ZoneId.of("America/New_York"));
+        stubPriceData(List.of("AAPL", "GOOG"), List.of(
+            StorageStockBar.builder().symbol("AAPL").timestamp(open).open(1).high(2).low(1).close(2).volume(10).build()));
+        stubPriceData(List.of("MSFT"), List.of(
+            StorageStockBar.builder().symbol("MSFT").timestamp(open).open(1).high(2).low(1).close(2).volume(10).build()));
+
+        // When
+        int result = stockPriceService.getPriceData().getRecordsProcessed();
+
+        // Then
+        assertEquals(2, result);
+        String dateFormat = LocalDate.now(ZoneId.of("America/New_York")).format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+        verify(s3Service).putObject(eq("test-bucket"), eq("stock_prices_" + dateFormat + "_1.csv.gz"), anyList(), anyLong(), any(byte[].class));
+        verify(s3Service).putObject(eq("test-bucket"), eq("stock_prices_" + dateFormat + "_2.csv.gz"), anyList(), anyLong(), any(byte[].class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubPriceData(List<String> symbols, List<StorageStockBar> bars) throws Exception {
+        doAnswer(invocation -> {
+            ((Consumer<List<StorageStockBar>>) invocation.getArgument(3)).accept(bars);
+            return null;
+        }).when(priceDataDTO).streamPriceData(eq(symbols), eq(windowStart), eq(windowEnd), any());
+    }
+
+    private List<String> gunzipLines(byte[] data) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).lines().toList();
+        }
     }
 }
@@ -0,0 +1,184 @@
+package com.darylmathison.market.service.impl;
+
+import com.darylmathison.market.io.ByteBufferPool;
+import com.darylmathison.market.io.ByteBuffersInputStream;
+import com.darylmathison.market.io.MemoryMonitor;
+import com.darylmathison.market.model.ApiKeyPair;
+import com.darylmathison.market.service.S3Service;
+import com.darylmathison.market.service.SecretsService;
+import com.darylmathison.market.stream.AlpacaBarStream;
+import com.darylmathison.market.stream.BarStream;
+import com.darylmathison.market.stream.LoopbackStreamServer;
+import com.darylmathison.market.stream.LoopbackStreamServer.Ending;
+import com.darylmathison.market.stream.LoopbackStreamServer.Session;
+import com.darylmathison.market.stream.ReplayBarStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class StreamingServiceImplTest {
+
+    @Mock
+    private S3Service s3Service;
+
+    @TempDir
+    Path spillDirectory;
+
+    private ReplayBarStream replayBarStream;
+
+    private MemoryMonitor memoryMonitor;
+
+    private StreamingServiceImpl streamingService;
+
+    private final List<String> uploadedKeys = new ArrayList<>();
+
+    private final List<List<String>> uploadedRows = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        replayBarStream = new ReplayBarStream();
+        setField(replayBarStream, "replayFile", "");
+        setField(replayBarStream, "barsPerSymbol", 10);
+
+        ByteBufferPool byteBufferPool = new ByteBufferPool();
+        setField(byteBufferPool, "chunkBytes", 1024);
+        setField(byteBufferPool, "maxPooledChunks", 4);
+        memoryMonitor = new MemoryMonitor(byteBufferPool);
+        setField(memoryMonitor, "maxInMemoryBytes", 1024L * 1024);
+        setField(memoryMonitor, "bufferHeadroomFraction", 0.25);
+        setField(memoryMonitor, "spillDirectory", spillDirectory.toString());
+
+        streamingService = newStreamingService(replayBarStream);
+
+        when(s3Service.fetchList("test-bucket", "symbols.txt")).thenReturn(List.of("AAPL", "MSFT"));
+        doAnswer(invocation -> {
+            uploadedKeys.add(invocation.getArgument(1));
+            uploadedRows.add(gunzipLines(new ByteBuffersInputStream(invocation.getArgument(2)).readAllBytes()));
+            return null;
+        }).when(s3Service).putObject(anyString(), anyString(), anyList(), anyLong(), any(byte[].class));
+    }
+
+    private StreamingServiceImpl newStreamingService(BarStream barStream) {
+        StreamingServiceImpl service = new StreamingServiceImpl(barStream, s3Service, memoryMonitor);
+        setField(service, "dataBucketName", "test-bucket");
+        setField(service, "symbolsFileKey", "symbols.txt");
+        // Room for the whole replay, which is played back faster than the buffer is drained
+        setField(service, "bufferCapacity", 32);
+        setField(service, "flushBars", 8);
+        setField(service, "flushIntervalMillis", 60000L);
+        setField(service, "pollIntervalMillis", 1L);
+        setField(service, "keyPrefix", "stream/");
+        return service;
+    }
+
+    private AlpacaBarStream newAlpacaBarStream(LoopbackStreamServer server) {
+        ApiKeyPair apiKeyPair = new ApiKeyPair();
+        apiKeyPair.setApiKey("key");
+        apiKeyPair.setSecretKey("secret");
+        SecretsService secretsService = mock(SecretsService.class);
+        when(secretsService.getSecretApiKeyPair("alpaca")).thenReturn(apiKeyPair);
+        AlpacaBarStream alpacaBarStream = new AlpacaBarStream(secretsService);
+        setField(alpacaBarStream, "streamUrl", server.url());
+        setField(alpacaBarStream, "alpacaSecretName", "alpaca");
+        setField(alpacaBarStream, "connectTimeoutMillis", 5000L);
+        setField(alpacaBarStream, "maxReconnects", 1);
+        setField(alpacaBarStream, "reconnectDelayMillis", 10L);
+        setField(alpacaBarStream, "heartbeatMillis", 250L);
+        return alpacaBarStream;
+    }
+
+    private void setField(Object target, String fieldName, Object value) {
+        try {
+            var field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (Exception ignored) {}
+    }
+
+    @Test
+    void stream_shouldFlushMicroBatchesUntilTheReplayEnds() {
+        // When
+        int result = streamingService.stream(Duration.ofMinutes(1));
+
+        // Then: 2 symbols x 10 minutes, in micro-batches of 8 bars and a final remainder
+        assertEquals(20, result);
+        assertFalse(replayBarStream.isOpen());
+        assertEquals(List.of(9, 9, 5), uploadedRows.stream().map(List::size).toList());
+        assertTrue(uploadedKeys.stream().allMatch(key -> key.startsWith("stream/stock_prices_") && key.endsWith(".csv.gz")));
+        assertEquals(uploadedKeys.size(), uploadedKeys.stream().distinct().count());
+        assertEquals(20, uploadedRows.stream().mapToInt(rows -> rows.size() - 1).sum());
+        assertTrue(uploadedRows.stream().allMatch(rows -> rows.getFirst().equals("symbol,timestamp,open,high,low,close,volume")));
+    }
+
+    @Test
+    void stream_shouldWriteBarsFromTheLiveStreamUntilTheDurationEnds() throws Exception {
+        // Given: the recorded bars, fragmented, from a stream that stays up
+        try (LoopbackStreamServer server = new LoopbackStreamServer("key", "secret",
+            new Session(LoopbackStreamServer.recorded("/stream/alpaca_bars.jsonl"), 16, Ending.STAY_OPEN))) {
+            AlpacaBarStream alpacaBarStream = newAlpacaBarStream(server);
+            StreamingServiceImpl service = newStreamingService(alpacaBarStream);
+
+            // When
+            int result = service.stream(Duration.ofSeconds(2));
+
+            // Then: the 4 bars in one micro-batch, and the stream closed on the way out
+            assertEquals(4, result);
+            assertEquals(1, uploadedRows.size());
+            assertEquals("AAPL,2024-07-01T13:31Z,214.12,214.3,214.05,214.27,211.0", uploadedRows.getFirst().get(1));
+            assertFalse(alpacaBarStream.isOpen());
+            assertNull(alpacaBarStream.failure());
+        }
+    }
+
+    @Test
+    void stream_shouldKeepWhatArrivedThenFailWhenTheStreamIsLost() throws Exception {
+        // Given: the server drops the connection and refuses the reconnect
+        try (LoopbackStreamServer server = new LoopbackStreamServer("key", "secret",
+            new Session(LoopbackStreamServer.recorded("/stream/alpaca_bars.jsonl"), 0, Ending.DROP))) {
+            StreamingServiceImpl service = newStreamingService(newAlpacaBarStream(server));
+
+            // When & Then
+            RuntimeException exception = assertThrows(RuntimeException.class,
+                () -> service.stream(Duration.ofMinutes(1)));
+            assertTrue(exception.getMessage().contains("Stream ended early after 4 price records"));
+            assertEquals(4, uploadedRows.stream().mapToInt(rows -> rows.size() - 1).sum());
+        }
+    }
+
+    @Test
+    void stream_shouldFailWhenSymbolsCannotBeFetched() {
+        // Given
+        when(s3Service.fetchList(anyString(), anyString())).thenThrow(new RuntimeException("S3 error"));
+
+        // When & Then
+        RuntimeException exception = assertThrows(RuntimeException.class,
+            () -> streamingService.stream(Duration.ofMinutes(1)));
+        assertTrue(exception.getMessage().contains("Failed to stream price data"));
+    }
+
+    private List<String> gunzipLines(byte[] data) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).lines().toList();
+        }
+    }
+}
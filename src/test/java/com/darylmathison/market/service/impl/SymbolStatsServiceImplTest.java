@@ -0,0 +1,70 @@
+package com.darylmathison.market.service.impl;
+
+import com.darylmathison.market.model.SymbolStats;
+import com.darylmathison.market.service.S3Service;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SymbolStatsServiceImplTest {
+
+    @Mock
+    private S3Service s3Service;
+
+    private SymbolStatsServiceImpl symbolStatsService;
+
+    @BeforeEach
+    void setUp() {
+        symbolStatsService = new SymbolStatsServiceImpl(s3Service);
+        setField(symbolStatsService, "dataBucketName", "test-bucket");
+        setField(symbolStatsService, "symbolStatsKey", "state/symbol_stats.json.gz");
+    }
+
+    private void setField(Object target, String fieldName, Object value) {
+        try {
+            var field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (Exception ignored) {}
+    }
+
+    @Test
+    void save_shouldRoundTripThroughLoad() {
+        // Given
+        SymbolStats stats = new SymbolStats();
+        stats.getBarCounts().put("AAPL", 130);
+        stats.setBarsWritten(130);
+        stats.setBytesWritten(3000);
+
+        // When
+        symbolStatsService.save(stats);
+        ArgumentCaptor<byte[]> dataCaptor = ArgumentCaptor.forClass(byte[].class);
+        verify(s3Service).putObject(eq("test-bucket"), eq("state/symbol_stats.json.gz"), dataCaptor.capture());
+        when(s3Service.getObjectIfExists("test-bucket", "state/symbol_stats.json.gz")).thenReturn(dataCaptor.getValue());
+        SymbolStats loaded = symbolStatsService.load();
+
+        // Then
+        assertEquals(stats, loaded);
+    }
+
+    @Test
+    void load_shouldReturnEmptyStats_whenNoStatsStored() {
+        // Given
+        when(s3Service.getObjectIfExists(anyString(), anyString())).thenReturn(null);
+
+        // When
+        SymbolStats loaded = symbolStatsService.load();
+
+        // Then
+        assertTrue(loaded.getBarCounts().isEmpty());
+        assertEquals(24.0, loaded.bytesPerBar(24.0));
+    }
+}
@@ -0,0 +1,163 @@
+package com.darylmathison.market.service.impl;
+
+import com.darylmathison.market.aggregate.TradeSink;
+import com.darylmathison.market.dto.TradeDataDTO;
+import com.darylmathison.market.io.ByteBufferPool;
+import com.darylmathison.market.io.ByteBuffersInputStream;
+import com.darylmathison.market.io.MemoryMonitor;
+import com.darylmathison.market.model.SessionHours;
+import com.darylmathison.market.model.TimeWindow;
+import com.darylmathison.market.model.TradeBarType;
+import com.darylmathison.market.model.TradingSession;
+import com.darylmathison.market.service.S3Service;
+import com.darylmathison.market.service.TradingCalendarService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class TradeIngestServiceImplTest {
+
+    private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+
+    @Mock
+    private TradeDataDTO tradeDataDTO;
+
+    @Mock
+    private S3Service s3Service;
+
+    @Mock
+    private TradingCalendarService tradingCalendarService;
+
+    @TempDir
+    Path spillDirectory;
+
+    private TradeIngestServiceImpl tradeIngestService;
+
+    private final Map<String, byte[]> uploads = new HashMap<>();
+
+    private final ZonedDateTime monday = ZonedDateTime.of(2024, 7, 1, 9, 30, 0, 0, NEW_YORK);
+
+    @BeforeEach
+    void setUp() {
+        ByteBufferPool byteBufferPool = new ByteBufferPool();
+        setField(byteBufferPool, "chunkBytes", 1024);
+        setField(byteBufferPool, "maxPooledChunks", 4);
+        MemoryMonitor memoryMonitor = new MemoryMonitor(byteBufferPool);
+        setField(memoryMonitor, "maxInMemoryBytes", 1024L * 1024);
+        setField(memoryMonitor, "bufferHeadroomFraction", 0.25);
+        setField(memoryMonitor, "spillDirectory", spillDirectory.toString());
+
+        tradeIngestService = new TradeIngestServiceImpl(tradeDataDTO, s3Service, tradingCalendarService, memoryMonitor);
+        setField(tradeIngestService, "dataBucketName", "test-bucket");
+        setField(tradeIngestService, "defaultSymbols", List.of("AAPL"));
+        setField(tradeIngestService, "barType", TradeBarType.TICK);
+        setField(tradeIngestService, "barSize", 2L);
+        setField(tradeIngestService, "sessionCount", 2);
+        setField(tradeIngestService, "sessionHours", SessionHours.REGULAR);
+        setField(tradeIngestService, "tradesPrefix", "trades/");
+
+        TradingSession first = TradingSession.builder().date(monday.toLocalDate()).build();
+        TradingSession second = TradingSession.builder().date(monday.toLocalDate().plusDays(1)).build();
+        when(tradingCalendarService.completedSessions(eq(2), any(), eq(SessionHours.REGULAR))).thenReturn(List.of(first, second));
+        when(tradingCalendarService.requestWindows(List.of(first), SessionHours.REGULAR))
+            .thenReturn(List.of(new TimeWindow(monday, monday.plusHours(7))));
+        when(tradingCalendarService.requestWindows(List.of(second), SessionHours.REGULAR))
+            .thenReturn(List.of(new TimeWindow(monday.plusDays(1), monday.plusDays(1).plusHours(7))));
+
+        doAnswer(invocation -> {
+            uploads.put(invocation.getArgument(1), new ByteBuffersInputStream(invocation.getArgument(2)).readAllBytes());
+            return null;
+        }).when(s3Service).putObject(anyString(), anyString(), anyList(), anyLong(), any(byte[].class));
+    }
+
+    private void setField(Object target, String fieldName, Object value) {
+        try {
+            var field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (Exception ignored) {}
+    }
+
+    @Test
+    void ingest_shouldWriteBarsAggregatedFromEachSession() throws Exception {
+        // Given: three trades on the first session, one on the second
+        stubTrades(monday, 3);
+        stubTrades(monday.plusDays(1), 1);
+
+        // When
+        int result = tradeIngestService.ingest(null);
+
+        // Then: the odd trade of the first session is not carried into the second
+        assertEquals(3, result);
+        String key = "trades/stock_prices_trades_2tick_" + LocalDate.now(NEW_YORK).format(DateTimeFormatter.ofPattern("yyyy-MM-dd")) + ".csv.gz";
+        List<String> rows = gunzipLines(uploads.get(key));
+        assertEquals("symbol,timestamp,open,high,low,close,volume,vwap,trades", rows.getFirst());
+        assertEquals(List.of("2", "1", "1"), rows.stream().skip(1).map(row -> row.substring(row.lastIndexOf(',') + 1)).toList());
+        verify(tradeDataDTO).streamTrades(eq(List.of("AAPL")), eq(monday), eq(monday.plusHours(7)), any());
+    }
+
+    @Test
+    void ingest_shouldWriteNothingWithoutSymbols() throws Exception {
+        // Given
+        setField(tradeIngestService, "defaultSymbols", List.of());
+
+        // When
+        int result = tradeIngestService.ingest(List.of());
+
+        // Then
+        assertEquals(0, result);
+        verify(tradeDataDTO, never()).streamTrades(anyList(), any(), any(), any());
+        verify(s3Service, never()).putObject(anyString(), anyString(), anyList(), anyLong(), any(byte[].class));
+    }
+
+    @Test
+    void ingest_shouldThrowRuntimeExceptionWhenTradesCannotBeFetched() throws Exception {
+        // Given
+        doThrow(new RuntimeException("API error")).when(tradeDataDTO).streamTrades(anyList(), any(), any(), any());
+
+        // When & Then
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> tradeIngestService.ingest(List.of("AAPL")));
+        assertTrue(exception.getMessage().contains("Failed to ingest trades"));
+    }
+
+    private void stubTrades(ZonedDateTime start, int count) throws Exception {
+        doAnswer(invocation -> {
+            TradeSink sink = invocation.getArgument(3);
+            long startNanos = start.toEpochSecond() * 1_000_000_000L;
+            for (int i = 0; i < count; i++) {
+                sink.trade("AAPL", startNanos + i * 1_000_000_000L, 100 + i, 10);
+            }
+            return null;
+        }).when(tradeDataDTO).streamTrades(anyList(), eq(start), any(), any());
+    }
+
+    private List<String> gunzipLines(byte[] data) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).lines().toList();
+        }
+    }
+}
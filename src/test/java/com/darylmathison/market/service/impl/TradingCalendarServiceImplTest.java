@@ -0,0 +1,121 @@
+package com.darylmathison.market.service.impl;
+
+import com.darylmathison.market.model.SessionHours;
+import com.darylmathison.market.model.TimeWindow;
+import com.darylmathison.market.model.TradingSession;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TradingCalendarServiceImplTest {
+
+    private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+
+    private TradingCalendarServiceImpl tradingCalendarService;
+
+    @BeforeEach
+    void setUp() {
+        tradingCalendarService = new TradingCalendarServiceImpl();
+        setField(tradingCalendarService, "exceptionsFile", new ClassPathResource("calendar/nyse_exceptions.csv"));
+        tradingCalendarService.refresh();
+    }
+
+    private void setField(Object target, String fieldName, Object value) {
+        try {
+            var field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (Exception ignored) {}
+    }
+
+    @Test
+    void getSession_shouldBeClosedOnHolidaysAndWeekends() {
+        Stream.of("2024-01-01", "2024-01-15", "2024-02-19", "2024-03-29", "2024-05-27", "2024-06-19",
+                "2024-07-04", "2024-09-02", "2024-11-28", "2024-12-25", "2022-12-26", "2021-07-05",
+                "2024-07-06", "2024-07-07", "2025-01-09")
+            .map(LocalDate::parse)
+            .forEach(date -> assertNull(tradingCalendarService.getSession(date), date.toString()));
+    }
+
+    @Test
+    void getSession_shouldBeOpenOnOrdinaryDays() {
+        // New Year's Day on a Saturday is not observed on the Friday before
+        TradingSession session = tradingCalendarService.getSession(LocalDate.of(2021, 12, 31));
+
+        assertNotNull(session);
+        assertFalse(session.isEarlyClose());
+        assertEquals(LocalTime.of(9, 30), session.getRegularOpen().toLocalTime());
+        assertEquals(LocalTime.of(16, 0), session.getRegularClose().toLocalTime());
+        assertEquals(LocalTime.of(4, 0), session.getExtendedOpen().toLocalTime());
+        assertEquals(LocalTime.of(20, 0), session.getExtendedClose().toLocalTime());
+    }
+
+    @Test
+    void getSession_shouldCloseEarlyAroundHolidays() {
+        Stream.of("2024-07-03", "2024-11-29", "2024-12-24")
+            .map(LocalDate::parse)
+            .forEach(date -> {
+                TradingSession session = tradingCalendarService.getSession(date);
+                assertTrue(session.isEarlyClose(), date.toString());
+                assertEquals(LocalTime.of(13, 0), session.getRegularClose().toLocalTime());
+                assertEquals(LocalTime.of(17, 0), session.getExtendedClose().toLocalTime());
+            });
+        // July 4th on a Monday leaves the Friday before a full day
+        assertFalse(tradingCalendarService.getSession(LocalDate.of(2022, 7, 1)).isEarlyClose());
+    }
+
+    @Test
+    void completedSessions_shouldSkipClosedDaysAndTheOpenSession() {
+        // Given: midday Monday after Independence Day
+        ZonedDateTime asOf = ZonedDateTime.of(2024, 7, 8, 12, 0, 0, 0, NEW_YORK);
+
+        // When
+        List<TradingSession> sessions = tradingCalendarService.completedSessions(3, asOf, SessionHours.REGULAR);
+
+        // Then
+        assertEquals(List.of(LocalDate.of(2024, 7, 2), LocalDate.of(2024, 7, 3), LocalDate.of(2024, 7, 5)),
+            sessions.stream().map(TradingSession::getDate).toList());
+    }
+
+    @Test
+    void sessionsBetween_shouldListOpenDaysInTheRange() {
+        // Given: the range runs past the session still open on Monday
+        ZonedDateTime asOf = ZonedDateTime.of(2024, 7, 8, 12, 0, 0, 0, NEW_YORK);
+
+        // When
+        List<TradingSession> sessions = tradingCalendarService.sessionsBetween(
+            LocalDate.of(2024, 7, 1), LocalDate.of(2024, 7, 31), asOf, SessionHours.REGULAR);
+
+        // Then
+        assertEquals(List.of(LocalDate.of(2024, 7, 1), LocalDate.of(2024, 7, 2), LocalDate.of(2024, 7, 3), LocalDate.of(2024, 7, 5)),
+            sessions.stream().map(TradingSession::getDate).toList());
+    }
+
+    @Test
+    void requestWindows_shouldMergeConsecutiveExtendedSessions() {
+        // Given
+        ZonedDateTime asOf = ZonedDateTime.of(2024, 7, 8, 12, 0, 0, 0, NEW_YORK);
+        List<TradingSession> sessions = tradingCalendarService.completedSessions(3, asOf, SessionHours.EXTENDED);
+
+        // When
+        List<TimeWindow> extended = tradingCalendarService.requestWindows(sessions, SessionHours.EXTENDED);
+        List<TimeWindow> regular = tradingCalendarService.requestWindows(sessions, SessionHours.REGULAR);
+
+        // Then
+        assertEquals(List.of(new TimeWindow(
+                ZonedDateTime.of(2024, 7, 2, 4, 0, 0, 0, NEW_YORK),
+                ZonedDateTime.of(2024, 7, 5, 20, 0, 0, 0, NEW_YORK))),
+            extended);
+        assertEquals(3, regular.size());
+        assertEquals(ZonedDateTime.of(2024, 7, 3, 13, 0, 0, 0, NEW_YORK), regular.get(1).getEnd());
+    }
+}
@@ -0,0 +1,212 @@
+package com.darylmathison.market.stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.darylmathison.market.model.ApiKeyPair;
+import com.darylmathison.market.model.StorageStockBar;
+import com.darylmathison.market.service.SecretsService;
+import com.darylmathison.market.stream.LoopbackStreamServer.Ending;
+import com.darylmathison.market.stream.LoopbackStreamServer.Session;
+import java.net.http.WebSocket;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class AlpacaBarStreamTest {
+
+  private static final String SUBSCRIBE = "{\"action\":\"subscribe\",\"bars\":[\"AAPL\",\"MSFT\"]}";
+
+  private AlpacaBarStream alpacaBarStream;
+  private SecretsService secretsService;
+  private WebSocket webSocket;
+  private CompletableFuture<Void> subscribed;
+  private final List<StorageStockBar> bars = new CopyOnWriteArrayList<>();
+
+  @BeforeEach
+  void setUp() {
+    secretsService = mock(SecretsService.class);
+    alpacaBarStream = new AlpacaBarStream(secretsService);
+    webSocket = mock(WebSocket.class);
+    subscribed = new CompletableFuture<>();
+    ApiKeyPair apiKeyPair = new ApiKeyPair();
+    apiKeyPair.setApiKey("key");
+    apiKeyPair.setSecretKey("secret");
+    when(secretsService.getSecretApiKeyPair("alpaca")).thenReturn(apiKeyPair);
+    setField(alpacaBarStream, "alpacaSecretName", "alpaca");
+    setField(alpacaBarStream, "connectTimeoutMillis", 5000L);
+    setField(alpacaBarStream, "maxReconnects", 2);
+    setField(alpacaBarStream, "reconnectDelayMillis", 10L);
+    setField(alpacaBarStream, "heartbeatMillis", 250L);
+    setField(alpacaBarStream, "apiKeyPair", apiKeyPair);
+    setField(alpacaBarStream, "symbols", List.of("AAPL", "MSFT"));
+    setField(alpacaBarStream, "subscribed", subscribed);
+    setField(alpacaBarStream, "listener", (java.util.function.Consumer<StorageStockBar>) bars::add);
+  }
+
+  private void setField(Object target, String fieldName, Object value) {
+    try {
+      var field = target.getClass().getDeclaredField(fieldName);
+      field.setAccessible(true);
+      field.set(target, value);
+    } catch (Exception ignored) {
+    }
+  }
+
+  @Test
+  void onMessage_shouldAuthenticateThenSubscribe() throws Exception {
+    alpacaBarStream.onMessage(webSocket, "[{\"T\":\"success\",\"msg\":\"connected\"}]");
+    verify(webSocket).sendText("{\"action\":\"auth\",\"key\":\"key\",\"secret\":\"secret\"}", true);
+
+    alpacaBarStream.onMessage(webSocket, "[{\"T\":\"success\",\"msg\":\"authenticated\"}]");
+    verify(webSocket).sendText(eq("{\"action\":\"subscribe\",\"bars\":[\"AAPL\",\"MSFT\"]}"), eq(true));
+
+    alpacaBarStream.onMessage(webSocket, "[{\"T\":\"subscription\",\"trades\":[],\"quotes\":[],\"bars\":[\"AAPL\",\"MSFT\"]}]");
+    assertTrue(subscribed.isDone());
+  }
+
+  @Test
+  void onMessage_shouldConvertBars() throws Exception {
+    alpacaBarStream.onMessage(webSocket, "[{\"T\":\"b\",\"S\":\"AAPL\",\"o\":1.5,\"h\":2.5,\"l\":1.25,\"c\":2.0,"
+        + "\"v\":1200,\"t\":\"2024-07-01T14:31:00Z\",\"n\":42,\"vw\":1.9},"
+        + "{\"T\":\"b\",\"S\":\"MSFT\",\"o\":3,\"h\":3,\"l\":3,\"c\":3,\"v\":1,\"t\":\"2024-07-01T14:31:00Z\",\"n\":1,\"vw\":3}]");
+
+    assertEquals(2, bars.size());
+    StorageStockBar bar = bars.getFirst();
+    assertEquals("AAPL", bar.getSymbol());
+    assertEquals(ZonedDateTime.parse("2024-07-01T14:31:00Z"), bar.getTimestamp());
+    assertEquals(1.5, bar.getOpen());
+    assertEquals(2.5, bar.getHigh());
+    assertEquals(1.25, bar.getLow());
+    assertEquals(2.0, bar.getClose());
+    assertEquals(42, bar.getVolume());
+  }
+
+  @Test
+  void onMessage_shouldFailSubscriptionOnError() throws Exception {
+    alpacaBarStream.onMessage(webSocket, "[{\"T\":\"error\",\"code\":402,\"msg\":\"auth failed\"}]");
+
+    ExecutionException exception = assertThrows(ExecutionException.class, subscribed::get);
+    assertEquals("Stream error 402: auth failed", exception.getCause().getMessage());
+  }
+
+  @Test
+  void subscribe_shouldHandshakeAndReassembleFragmentedBars() throws Exception {
+    // Given: the recorded messages, each split across frames of 16 characters
+    try (LoopbackStreamServer server = new LoopbackStreamServer("key", "secret",
+        new Session(LoopbackStreamServer.recorded("/stream/alpaca_bars.jsonl"), 16, Ending.STAY_OPEN))) {
+      setField(alpacaBarStream, "streamUrl", server.url());
+
+      // When
+      alpacaBarStream.subscribe(List.of("AAPL", "MSFT"), bars::add);
+      await(() -> bars.size() == 4);
+      alpacaBarStream.close();
+
+      // Then
+      assertEquals(List.of("AAPL", "MSFT", "AAPL", "MSFT"), bars.stream().map(StorageStockBar::getSymbol).toList());
+      assertEquals(214.27, bars.getFirst().getClose());
+      assertEquals(ZonedDateTime.parse("2024-07-01T13:32:00Z"), bars.getLast().getTimestamp());
+      await(() -> server.received().contains("close 1000"));
+      assertEquals(List.of("{\"action\":\"auth\",\"key\":\"key\",\"secret\":\"secret\"}", SUBSCRIBE, "close 1000"),
+          server.received());
+      assertFalse(alpacaBarStream.isOpen());
+      assertEquals(null, alpacaBarStream.failure());
+    }
+  }
+
+  @Test
+  void subscribe_shouldFailWhenAuthenticationIsRejected() throws Exception {
+    // Given
+    try (LoopbackStreamServer server = new LoopbackStreamServer("other", "secret",
+        new Session(List.of(), 0, Ending.STAY_OPEN))) {
+      setField(alpacaBarStream, "streamUrl", server.url());
+
+      // When & Then
+      ExecutionException exception = assertThrows(ExecutionException.class,
+          () -> alpacaBarStream.subscribe(List.of("AAPL", "MSFT"), bars::add));
+      assertEquals("Stream error 402: auth failed", exception.getCause().getMessage());
+      assertFalse(alpacaBarStream.isOpen());
+    }
+  }
+
+  @Test
+  void stream_shouldReconnectAndResubscribeAfterTheServerCloses() throws Exception {
+    // Given: the first connection is closed by the server, the second is dropped without a close
+    // frame, and the third stays up
+    try (LoopbackStreamServer server = new LoopbackStreamServer("key", "secret",
+        new Session(List.of(LoopbackStreamServer.bar("AAPL", "2024-07-01T13:31:00Z", 1, 2, 0.5, 1.5, 10)), 0, Ending.CLOSE),
+        new Session(List.of(LoopbackStreamServer.bar("AAPL", "2024-07-01T13:32:00Z", 1.5, 2, 1, 1.75, 20)), 7, Ending.DROP),
+        new Session(List.of(LoopbackStreamServer.bar("MSFT", "2024-07-01T13:32:00Z", 3, 3, 3, 3, 30)), 0, Ending.STAY_OPEN))) {
+      setField(alpacaBarStream, "streamUrl", server.url());
+
+      // When
+      alpacaBarStream.subscribe(List.of("AAPL", "MSFT"), bars::add);
+      await(() -> bars.size() == 3);
+
+      // Then
+      assertTrue(alpacaBarStream.isOpen());
+      assertEquals(List.of(10.0, 20.0, 30.0), bars.stream().map(StorageStockBar::getVolume).toList());
+      assertEquals(3, server.connections());
+      assertEquals(3, server.received().stream().filter(SUBSCRIBE::equals).count());
+      alpacaBarStream.close();
+    }
+  }
+
+  @Test
+  void stream_shouldReconnectWhenTheServerStopsAnsweringPings() throws Exception {
+    // Given
+    try (LoopbackStreamServer server = new LoopbackStreamServer("key", "secret",
+        new Session(List.of(LoopbackStreamServer.bar("AAPL", "2024-07-01T13:31:00Z", 1, 2, 0.5, 1.5, 10)), 0, Ending.SILENT),
+        new Session(List.of(LoopbackStreamServer.bar("AAPL", "2024-07-01T13:32:00Z", 1.5, 2, 1, 1.75, 20)), 0, Ending.STAY_OPEN))) {
+      setField(alpacaBarStream, "streamUrl", server.url());
+
+      // When
+      alpacaBarStream.subscribe(List.of("AAPL", "MSFT"), bars::add);
+      await(() -> bars.size() == 2);
+
+      // Then
+      assertTrue(alpacaBarStream.isOpen());
+      assertEquals(2, server.connections());
+      alpacaBarStream.close();
+    }
+  }
+
+  @Test
+  void stream_shouldReportFailureOnceReconnectsAreExhausted() throws Exception {
+    // Given: one session, so every reconnect is refused
+    try (LoopbackStreamServer server = new LoopbackStreamServer("key", "secret",
+        new Session(List.of(LoopbackStreamServer.bar("AAPL", "2024-07-01T13:31:00Z", 1, 2, 0.5, 1.5, 10)), 0, Ending.DROP))) {
+      setField(alpacaBarStream, "streamUrl", server.url());
+
+      // When
+      alpacaBarStream.subscribe(List.of("AAPL", "MSFT"), bars::add);
+      await(() -> !alpacaBarStream.isOpen());
+
+      // Then
+      assertEquals(1, bars.size());
+      assertEquals(3, server.connections());
+      assertNotNull(alpacaBarStream.failure());
+      assertTrue(alpacaBarStream.failure().getMessage().startsWith("Stream lost after 2 reconnect attempts"));
+    }
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10_000;
+    while (!condition.getAsBoolean()) {
+      assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting on the stream");
+      Thread.sleep(10);
+    }
+  }
+}
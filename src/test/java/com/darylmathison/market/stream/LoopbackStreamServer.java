@@ -0,0 +1,338 @@
+package com.darylmathison.market.stream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A websocket server on the loopback interface that speaks enough of Alpaca's market data
+ * protocol to drive {@link AlpacaBarStream} end to end: the upgrade handshake, the connected,
+ * authenticated and subscription messages, then a scripted playback of bar messages. Each
+ * connection takes the next {@link Session} script; once they run out, connections are refused
+ * with a 503 so reconnects fail.
+ *
+ * <p>Everything the client sends is kept in {@link #received()}: text messages as they are, and
+ * close frames as "close &lt;code&gt;".
+ */
+public class LoopbackStreamServer implements AutoCloseable {
+
+  private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+  private static final String CONNECTED = "[{\"T\":\"success\",\"msg\":\"connected\"}]";
+  private static final String AUTHENTICATED = "[{\"T\":\"success\",\"msg\":\"authenticated\"}]";
+  private static final String AUTH_FAILED = "[{\"T\":\"error\",\"code\":402,\"msg\":\"auth failed\"}]";
+  private static final int TEXT = 0x1;
+  private static final int CONTINUATION = 0x0;
+  private static final int CLOSE = 0x8;
+  private static final int PING = 0x9;
+  private static final int PONG = 0xA;
+  private static final int GOING_AWAY = 1001;
+  private static final long DROP_DELAY_MILLIS = 100;
+
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  /** What the server does once a session's messages have been sent. */
+  public enum Ending {
+    /** Wait for the client to close. */
+    STAY_OPEN,
+    /** Send a close frame, as a server does when it restarts. */
+    CLOSE,
+    /**
+     * Drop the TCP connection without a close frame, a moment after the last message. The JDK
+     * client loses a message that arrives in the same read as the end of the connection.
+     */
+    DROP,
+    /** Keep the connection up but stop answering, pings included. */
+    SILENT
+  }
+
+  /**
+   * One connection's script.
+   *
+   * @param messages Messages sent after the subscription is confirmed
+   * @param fragmentChars Split each message into frames of this many characters, 0 for one frame
+   */
+  public record Session(List<String> messages, int fragmentChars, Ending ending) {
+  }
+
+  private final String apiKey;
+  private final String secretKey;
+  private final ServerSocket serverSocket;
+  private final Deque<Session> sessions;
+  private final List<String> received = new CopyOnWriteArrayList<>();
+  private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+  private final AtomicInteger connections = new AtomicInteger();
+
+  public LoopbackStreamServer(String apiKey, String secretKey, Session... sessions) throws IOException {
+    this.apiKey = apiKey;
+    this.secretKey = secretKey;
+    this.sessions = new ArrayDeque<>(List.of(sessions));
+    this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    Thread.ofPlatform().daemon().name("loopback-stream-accept").start(this::accept);
+  }
+
+  /**
+   * Value for alpaca.stream.url.
+   */
+  public String url() {
+    return "ws://127.0.0.1:" + serverSocket.getLocalPort() + "/v2/test";
+  }
+
+  public List<String> received() {
+    return received;
+  }
+
+  /**
+   * Number of upgrade requests seen, including refused ones.
+   */
+  public int connections() {
+    return connections.get();
+  }
+
+  /**
+   * A bar message in Alpaca's format with a single bar.
+   *
+   * @param trades Trade count, which the stream keeps as the bar's volume
+   */
+  public static String bar(String symbol, String timestamp, double open, double high, double low, double close,
+      long trades) {
+    return String.format(Locale.ROOT,
+        "[{\"T\":\"b\",\"S\":\"%s\",\"o\":%s,\"h\":%s,\"l\":%s,\"c\":%s,\"v\":%d,\"t\":\"%s\",\"n\":%d,\"vw\":%s}]",
+        symbol, open, high, low, close, trades * 100, timestamp, trades, close);
+  }
+
+  /**
+   * Messages recorded from the live stream, one per line of a classpath resource.
+   */
+  public static List<String> recorded(String resource) {
+    try (InputStream in = LoopbackStreamServer.class.getResourceAsStream(resource)) {
+      if (in == null) {
+        throw new IllegalArgumentException("No resource " + resource);
+      }
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8).lines().filter(line -> !line.isBlank()).toList();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to read " + resource, e);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+    for (Socket socket : sockets) {
+      socket.close();
+    }
+  }
+
+  private void accept() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket socket = serverSocket.accept();
+        sockets.add(socket);
+        Thread.ofPlatform().daemon().name("loopback-stream-" + connections.incrementAndGet())
+            .start(() -> serve(socket));
+      } catch (IOException e) {
+        return;
+      }
+    }
+  }
+
+  private void serve(Socket socket) {
+    try (socket) {
+      DataInputStream in = new DataInputStream(socket.getInputStream());
+      OutputStream out = socket.getOutputStream();
+      String key = readUpgrade(in);
+      Session session;
+      synchronized (sessions) {
+        session = sessions.poll();
+      }
+      if (session == null || key == null) {
+        out.write("HTTP/1.1 503 Service Unavailable\r\nContent-Length: 0\r\nConnection: close\r\n\r\n"
+            .getBytes(StandardCharsets.US_ASCII));
+        return;
+      }
+      out.write(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+          + "Sec-WebSocket-Accept: " + accept(key) + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+
+      sendText(out, CONNECTED, 0);
+      JsonNode auth = objectMapper.readTree(readText(in, out, false));
+      if (!apiKey.equals(auth.path("key").asText()) || !secretKey.equals(auth.path("secret").asText())) {
+        sendText(out, AUTH_FAILED, 0);
+        readText(in, out, false);
+        return;
+      }
+      sendText(out, AUTHENTICATED, 0);
+      JsonNode subscribe = objectMapper.readTree(readText(in, out, false));
+      sendText(out, "[{\"T\":\"subscription\",\"trades\":[],\"quotes\":[],\"bars\":"
+          + subscribe.path("bars") + "}]", 0);
+
+      for (String message : session.messages()) {
+        sendText(out, message, session.fragmentChars());
+      }
+      switch (session.ending()) {
+        case STAY_OPEN -> {
+          while (true) {
+            readText(in, out, false);
+          }
+        }
+        case CLOSE -> {
+          sendClose(out, GOING_AWAY, "going away");
+          readText(in, out, true);
+        }
+        case DROP -> {
+          Thread.sleep(DROP_DELAY_MILLIS);
+          socket.shutdownOutput();
+        }
+        case SILENT -> in.transferTo(OutputStream.nullOutputStream());
+      }
+    } catch (IOException e) {
+      // The client went away; nothing to play back to
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Reads the upgrade request a byte at a time, so nothing after it is consumed, and returns its
+   * Sec-WebSocket-Key.
+   */
+  private String readUpgrade(InputStream in) throws IOException {
+    String key = null;
+    for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+      int colon = line.indexOf(':');
+      if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Key")) {
+        key = line.substring(colon + 1).trim();
+      }
+    }
+    return key;
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    StringBuilder line = new StringBuilder();
+    for (int b = in.read(); b != '\n'; b = in.read()) {
+      if (b < 0) {
+        throw new EOFException("Upgrade request ended early");
+      }
+      if (b != '\r') {
+        line.append((char) b);
+      }
+    }
+    return line.toString();
+  }
+
+  private static String accept(String key) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1")
+          .digest((key + ACCEPT_GUID).getBytes(StandardCharsets.US_ASCII));
+      return Base64.getEncoder().encodeToString(digest);
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Reads frames until a whole text message has arrived, answering pings. A close frame is
+   * recorded and answered, unless the server closed first, and ends the connection.
+   */
+  private String readText(DataInputStream in, OutputStream out, boolean closeSent) throws IOException {
+    ByteArrayOutputStream message = new ByteArrayOutputStream();
+    while (true) {
+      int first = in.readUnsignedByte();
+      int second = in.readUnsignedByte();
+      boolean fin = (first & 0x80) != 0;
+      int opcode = first & 0x0F;
+      long length = second & 0x7F;
+      if (length == 126) {
+        length = in.readUnsignedShort();
+      } else if (length == 127) {
+        length = in.readLong();
+      }
+      byte[] mask = new byte[4];
+      if ((second & 0x80) != 0) {
+        in.readFully(mask);
+      }
+      byte[] payload = new byte[(int) length];
+      in.readFully(payload);
+      for (int i = 0; i < payload.length; i++) {
+        payload[i] ^= mask[i % 4];
+      }
+
+      switch (opcode) {
+        case TEXT, CONTINUATION -> {
+          message.write(payload);
+          if (fin) {
+            String text = message.toString(StandardCharsets.UTF_8);
+            received.add(text);
+            return text;
+          }
+        }
+        case CLOSE -> {
+          int code = payload.length >= 2 ? ((payload[0] & 0xFF) << 8) | (payload[1] & 0xFF) : 1005;
+          received.add("close " + code);
+          if (!closeSent) {
+            sendFrame(out, true, CLOSE, payload);
+          }
+          throw new EOFException("Client closed with " + code);
+        }
+        case PING -> sendFrame(out, true, PONG, payload);
+        default -> {
+        }
+      }
+    }
+  }
+
+  private void sendText(OutputStream out, String text, int fragmentChars) throws IOException {
+    if (fragmentChars <= 0 || text.length() <= fragmentChars) {
+      sendFrame(out, true, TEXT, text.getBytes(StandardCharsets.UTF_8));
+      return;
+    }
+    for (int start = 0; start < text.length(); start += fragmentChars) {
+      int end = Math.min(text.length(), start + fragmentChars);
+      sendFrame(out, end == text.length(), start == 0 ? TEXT : CONTINUATION,
+          text.substring(start, end).getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private void sendClose(OutputStream out, int code, String reason) throws IOException {
+    byte[] text = reason.getBytes(StandardCharsets.UTF_8);
+    byte[] payload = new byte[2 + text.length];
+    payload[0] = (byte) (code >> 8);
+    payload[1] = (byte) code;
+    System.arraycopy(text, 0, payload, 2, text.length);
+    sendFrame(out, true, CLOSE, payload);
+  }
+
+  private synchronized void sendFrame(OutputStream out, boolean fin, int opcode, byte[] payload) throws IOException {
+    out.write((fin ? 0x80 : 0) | opcode);
+    if (payload.length < 126) {
+      out.write(payload.length);
+    } else if (payload.length < 65_536) {
+      out.write(126);
+      out.write(payload.length >> 8);
+      out.write(payload.length);
+    } else {
+      out.write(127);
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        out.write((int) ((long) payload.length >> shift));
+      }
+    }
+    out.write(payload);
+    out.flush();
+  }
+}
@@ -0,0 +1,64 @@
+package com.darylmathison.market.stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.Test;
+
+class RingBufferTest {
+
+  @Test
+  void offer_shouldRejectWhenFullAndKeepOrder() {
+    RingBuffer<Integer> buffer = new RingBuffer<>(3);
+    assertEquals(4, buffer.capacity());
+
+    for (int i = 0; i < 4; i++) {
+      assertTrue(buffer.offer(i));
+    }
+    assertFalse(buffer.offer(4));
+
+    assertEquals(0, buffer.poll());
+    assertTrue(buffer.offer(4));
+    List<Integer> drained = new ArrayList<>();
+    assertEquals(4, buffer.drainTo(drained::add));
+    assertEquals(List.of(1, 2, 3, 4), drained);
+    assertNull(buffer.poll());
+  }
+
+  @Test
+  void offer_shouldHandOverEveryElementFromConcurrentProducers() throws Exception {
+    RingBuffer<Integer> buffer = new RingBuffer<>(64);
+    int producers = 3;
+    int perProducer = 2_000;
+    Set<Integer> received = new HashSet<>();
+
+    try (ExecutorService executor = Executors.newFixedThreadPool(producers)) {
+      for (int p = 0; p < producers; p++) {
+        int base = p * perProducer;
+        executor.submit(() -> {
+          for (int i = 0; i < perProducer; i++) {
+            while (!buffer.offer(base + i)) {
+              Thread.yield();
+            }
+          }
+        });
+      }
+      while (received.size() < producers * perProducer) {
+        if (buffer.drainTo(received::add) == 0) {
+          Thread.yield();
+        }
+      }
+    }
+
+    assertEquals(producers * perProducer, received.size());
+    assertEquals(0, buffer.size());
+  }
+}
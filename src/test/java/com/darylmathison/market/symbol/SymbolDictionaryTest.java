@@ -0,0 +1,29 @@
+package com.darylmathison.market.symbol;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class SymbolDictionaryTest {
+
+  @Test
+  void compile_shouldSortAndDeduplicateSymbols() {
+    SymbolDictionary dictionary = SymbolDictionary.compile(List.of("MSFT", " AAPL", "", "GOOG ", "AAPL"));
+
+    assertEquals(List.of("AAPL", "GOOG", "MSFT"), dictionary.symbols());
+    assertEquals(3, dictionary.size());
+    assertEquals(0, dictionary.id("AAPL"));
+    assertEquals(2, dictionary.id("MSFT"));
+    assertEquals(-1, dictionary.id("TSLA"));
+    assertEquals("GOOG", dictionary.symbol(1));
+  }
+
+  @Test
+  void compile_shouldInternSymbols() {
+    SymbolDictionary dictionary = SymbolDictionary.compile(List.of(new String("AAPL".toCharArray())));
+
+    assertSame("AAPL", dictionary.symbol(0));
+  }
+}
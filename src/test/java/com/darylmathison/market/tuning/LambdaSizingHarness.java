@@ -0,0 +1,277 @@
+package com.darylmathison.market.tuning;
+
+import com.darylmathison.market.handler.StockPriceLambdaHandler;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds the cheapest Lambda configuration for the daily run by running the whole
+ * {@link StockPriceLambdaHandler} flow locally, once per configuration, against the stand-ins in
+ * {@link StandInBackends}. Each run is a fresh JVM sized like a Lambda function of the given
+ * memory: the heap is a share of it and the JVM is told to see as many processors as Lambda
+ * exposes, one per 1769 MB but never fewer than two. Below 1769 MB the function gets less than a
+ * whole vCPU of time across those two, which a local run does not throttle. Runs report wall time, peak RSS, peak heap, GC time and bytes
+ * uploaded, and the report recommends the configuration with the lowest GB-second cost that
+ * finishes within the target time without its resident memory outgrowing the function.
+ *
+ * <p>Not a test; run it from the project directory after {@code mvn test-compile}:
+ * <pre>
+ *   mvn -q dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+ *   java -cp target/test-classes:target/classes:$(cat target/classpath.txt) \
+ *       -Dtuning.memory-mb=512,1024,1769,3008 -Dtuning.batch-sizes=3000,6000 \
+ *       com.darylmathison.market.tuning.LambdaSizingHarness
+ * </pre>
+ *
+ * <p>Sweep settings, as system properties with comma separated values:
+ * tuning.memory-mb, tuning.cpus (overrides the count derived from memory), tuning.batch-sizes,
+ * tuning.encode-parallelism and tuning.segment-bars. Also tuning.heap-fraction,
+ * tuning.target-seconds, tuning.price-per-gb-second and tuning.report. Every other tuning.*
+ * property, such as tuning.symbols, tuning.page-latency-ms or tuning.bar-fill, and history.days
+ * are passed to each run. Local wall time only approximates Lambda's: the processor count is
+ * emulated but per-core speed and network latency are not.
+ */
+public class LambdaSizingHarness {
+
+  private static final double LAMBDA_MB_PER_VCPU = 1769;
+  private static final int LAMBDA_MIN_VCPUS = 2;
+  private static final int LAMBDA_MAX_VCPUS = 6;
+  private static final String CHILD = "--run";
+
+  private record Setting(int memoryMb, int cpus, int batchSize, int encodeParallelism, int segmentBars) {
+
+    String label() {
+      return memoryMb + "MB/" + cpus + "cpu batch=" + batchSize + " encode=" + encodeParallelism + "x" + segmentBars;
+    }
+  }
+
+  private record Outcome(Setting setting, boolean success, double wallSeconds, long peakRssBytes,
+      long peakHeapBytes, long gcMillis, long bytesWritten, double cost, String failure) {
+
+    boolean fitsIn(double targetSeconds) {
+      return success && wallSeconds <= targetSeconds
+          && (peakRssBytes <= 0 || peakRssBytes <= setting.memoryMb() * 1024L * 1024);
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length == 2 && args[0].equals(CHILD)) {
+      run(Path.of(args[1]));
+      return;
+    }
+
+    List<Integer> memorySizes = ints("tuning.memory-mb", "512,1024,1769,3008");
+    List<Integer> cpuCounts = ints("tuning.cpus", "");
+    List<Integer> batchSizes = ints("tuning.batch-sizes", "3000,6000");
+    List<Integer> encodeParallelism = ints("tuning.encode-parallelism", "1,0");
+    List<Integer> segmentBars = ints("tuning.segment-bars", "20000");
+    double targetSeconds = Double.parseDouble(System.getProperty("tuning.target-seconds", "600"));
+    double pricePerGbSecond = Double.parseDouble(System.getProperty("tuning.price-per-gb-second", "0.0000166667"));
+    Path report = Path.of(System.getProperty("tuning.report", "target/tuning-report.csv"));
+    Path workDirectory = Files.createTempDirectory("lambda-sizing-");
+
+    List<Outcome> outcomes = new ArrayList<>();
+    for (int memoryMb : memorySizes) {
+      List<Integer> cpus = cpuCounts.isEmpty() ? List.of(lambdaCpus(memoryMb)) : cpuCounts;
+      for (int cpuCount : cpus) {
+        for (int batchSize : batchSizes) {
+          for (int parallelism : encodeParallelism) {
+            for (int segment : segmentBars) {
+              Setting setting = new Setting(memoryMb, cpuCount, batchSize, parallelism, segment);
+              System.out.println("Running " + setting.label());
+              Outcome outcome = fork(setting, workDirectory.resolve("run-" + outcomes.size()), pricePerGbSecond);
+              System.out.println("  " + summary(outcome));
+              outcomes.add(outcome);
+            }
+          }
+        }
+      }
+    }
+
+    writeReport(report, outcomes);
+    System.out.println();
+    System.out.println("Wrote " + outcomes.size() + " runs to " + report.toAbsolutePath());
+    outcomes.stream()
+        .filter(outcome -> outcome.fitsIn(targetSeconds))
+        .min(Comparator.comparingDouble(Outcome::cost).thenComparingDouble(Outcome::wallSeconds))
+        .ifPresentOrElse(
+            best -> System.out.println("Cheapest within " + targetSeconds + " s: " + best.setting().label()
+                + " (memory_size = " + best.setting().memoryMb() + ", SYMBOLS_BATCH_SIZE = " + best.setting().batchSize()
+                + ", ENCODE_PARALLELISM = " + best.setting().encodeParallelism()
+                + ", ENCODE_SEGMENT_BARS = " + best.setting().segmentBars() + ") " + summary(best)),
+            () -> System.out.println("No configuration finished within " + targetSeconds + " s"));
+  }
+
+  /**
+   * Processors a Lambda function of the memory size sees, which is at least two even where its
+   * share of CPU time is less than one vCPU.
+   */
+  static int lambdaCpus(int memoryMb) {
+    return (int) Math.max(LAMBDA_MIN_VCPUS, Math.min(LAMBDA_MAX_VCPUS, Math.ceil(memoryMb / LAMBDA_MB_PER_VCPU)));
+  }
+
+  private static Outcome fork(Setting setting, Path runDirectory, double pricePerGbSecond) throws Exception {
+    Files.createDirectories(runDirectory);
+    Path resultFile = runDirectory.resolve("result.properties");
+    int heapMb = (int) (setting.memoryMb() * Double.parseDouble(System.getProperty("tuning.heap-fraction", "0.75")));
+
+    List<String> command = new ArrayList<>(List.of(
+        Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+        "-Xmx" + heapMb + "m",
+        "-XX:ActiveProcessorCount=" + setting.cpus(),
+        "-cp", System.getProperty("java.class.path"),
+        "-Dspring.profiles.active=tuning",
+        "-Dlogging.level.root=WARN",
+        "-Dlogging.level.com.darylmathison.market=WARN",
+        "-Ddata.bucket.name=tuning",
+        "-Dalpaca.secret-name=tuning",
+        "-Daws.region=us-east-1",
+        "-Dstream.source=replay",
+        "-Ddata.cache.directory=",
+        "-Ddata.memory.spill-directory=" + runDirectory,
+        "-Ddata.symbols.batch-size=" + setting.batchSize(),
+        "-Ddata.encode.parallelism=" + setting.encodeParallelism(),
+        "-Ddata.encode.segment-bars=" + setting.segmentBars()));
+    for (Map.Entry<Object, Object> property : System.getProperties().entrySet()) {
+      String name = property.getKey().toString();
+      if (name.startsWith("tuning.") || name.equals("history.days")) {
+        command.add("-D" + name + "=" + property.getValue());
+      }
+    }
+    command.addAll(List.of(LambdaSizingHarness.class.getName(), CHILD, resultFile.toString()));
+
+    Process process = new ProcessBuilder(command)
+        .redirectErrorStream(true)
+        .redirectOutput(runDirectory.resolve("output.log").toFile())
+        .start();
+    long timeoutSeconds = (long) Double.parseDouble(System.getProperty("tuning.target-seconds", "600")) * 3;
+    if (!process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+      process.destroyForcibly().waitFor();
+      return failed(setting, "timed out after " + timeoutSeconds + " s");
+    }
+    if (!Files.exists(resultFile)) {
+      return failed(setting, "exit code " + process.exitValue() + ", see " + runDirectory.resolve("output.log"));
+    }
+
+    Properties result = new Properties();
+    try (Reader reader = Files.newBufferedReader(resultFile, StandardCharsets.UTF_8)) {
+      result.load(reader);
+    }
+    double wallSeconds = Double.parseDouble(result.getProperty("wallSeconds"));
+    return new Outcome(setting,
+        Boolean.parseBoolean(result.getProperty("success")),
+        wallSeconds,
+        Long.parseLong(result.getProperty("peakRssBytes")),
+        Long.parseLong(result.getProperty("peakHeapBytes")),
+        Long.parseLong(result.getProperty("gcMillis")),
+        Long.parseLong(result.getProperty("bytesWritten")),
+        setting.memoryMb() / 1024.0 * wallSeconds * pricePerGbSecond,
+        result.getProperty("failure", ""));
+  }
+
+  /**
+   * One measured invocation, in the forked JVM. The handler starts its own application context,
+   * so start up is part of the wall time, as it is on a cold start.
+   */
+  private static void run(Path resultFile) throws IOException {
+    long started = System.nanoTime();
+    String response = new StockPriceLambdaHandler().handleRequest(Map.of(), null);
+    double wallSeconds = (System.nanoTime() - started) / 1e9;
+
+    long peakHeap = ManagementFactory.getMemoryPoolMXBeans().stream()
+        .filter(pool -> pool.getType() == MemoryType.HEAP)
+        .map(MemoryPoolMXBean::getPeakUsage)
+        .mapToLong(usage -> usage == null ? 0 : usage.getUsed())
+        .sum();
+    long gcMillis = ManagementFactory.getGarbageCollectorMXBeans().stream()
+        .mapToLong(GarbageCollectorMXBean::getCollectionTime)
+        .filter(time -> time > 0)
+        .sum();
+    boolean success = response.replace(" ", "").startsWith("{\"success\":true");
+
+    Properties result = new Properties();
+    result.setProperty("success", String.valueOf(success));
+    result.setProperty("wallSeconds", String.valueOf(wallSeconds));
+    result.setProperty("peakRssBytes", String.valueOf(peakRssBytes()));
+    result.setProperty("peakHeapBytes", String.valueOf(peakHeap));
+    result.setProperty("gcMillis", String.valueOf(gcMillis));
+    result.setProperty("bytesWritten", String.valueOf(StandInBackends.CountingStorage.bytesWritten()));
+    if (!success) {
+      result.setProperty("failure", response);
+    }
+    try (Writer writer = Files.newBufferedWriter(resultFile, StandardCharsets.UTF_8)) {
+      result.store(writer, StandInBackends.CountingStorage.objectsWritten() + " objects written");
+    }
+    // The handler leaves its context and worker pools running, as it would in a warm container
+    System.exit(0);
+  }
+
+  /**
+   * The process's high water mark of resident memory, or -1 where /proc is not available.
+   */
+  private static long peakRssBytes() {
+    try {
+      for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+        if (line.startsWith("VmHWM:")) {
+          return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+        }
+      }
+    } catch (IOException | NumberFormatException e) {
+      // Not Linux
+    }
+    return -1;
+  }
+
+  private static Outcome failed(Setting setting, String failure) {
+    return new Outcome(setting, false, 0, -1, -1, -1, 0, 0, failure);
+  }
+
+  private static String summary(Outcome outcome) {
+    if (!outcome.success()) {
+      return "failed: " + outcome.failure();
+    }
+    return String.format(Locale.ROOT, "%.1f s, rss %d MB, heap %d MB, gc %d ms, %d MB written, $%.6f",
+        outcome.wallSeconds(), outcome.peakRssBytes() >> 20, outcome.peakHeapBytes() >> 20, outcome.gcMillis(),
+        outcome.bytesWritten() >> 20, outcome.cost());
+  }
+
+  private static void writeReport(Path report, List<Outcome> outcomes) throws IOException {
+    if (report.getParent() != null) {
+      Files.createDirectories(report.getParent());
+    }
+    List<String> lines = new ArrayList<>();
+    lines.add("memory_mb,cpus,batch_size,encode_parallelism,segment_bars,success,wall_seconds,peak_rss_bytes,"
+        + "peak_heap_bytes,gc_millis,bytes_written,cost_usd");
+    for (Outcome outcome : outcomes) {
+      Setting setting = outcome.setting();
+      lines.add(String.format(Locale.ROOT, "%d,%d,%d,%d,%d,%b,%.3f,%d,%d,%d,%d,%.8f",
+          setting.memoryMb(), setting.cpus(), setting.batchSize(), setting.encodeParallelism(), setting.segmentBars(),
+          outcome.success(), outcome.wallSeconds(), outcome.peakRssBytes(), outcome.peakHeapBytes(),
+          outcome.gcMillis(), outcome.bytesWritten(), outcome.cost()));
+    }
+    Files.write(report, lines, StandardCharsets.UTF_8);
+  }
+
+  private static List<Integer> ints(String property, String defaults) {
+    return Arrays.stream(System.getProperty(property, defaults).split(","))
+        .map(String::strip)
+        .filter(value -> !value.isEmpty())
+        .map(Integer::valueOf)
+        .toList();
+  }
+}
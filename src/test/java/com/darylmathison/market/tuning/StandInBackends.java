@@ -0,0 +1,229 @@
+package com.darylmathison.market.tuning;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.darylmathison.market.model.UploadResult;
+import com.darylmathison.market.service.S3Service;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import net.jacobpeterson.alpaca.AlpacaAPI;
+import net.jacobpeterson.alpaca.model.endpoint.marketdata.stock.historical.bar.MultiStockBarsResponse;
+import net.jacobpeterson.alpaca.model.endpoint.marketdata.stock.historical.bar.StockBar;
+import net.jacobpeterson.alpaca.rest.endpoint.marketdata.stock.StockMarketDataEndpoint;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Market data and storage stand-ins for {@link LambdaSizingHarness}, active under the tuning
+ * profile. They take the place of Alpaca and S3 so the handler runs its full flow offline. The
+ * Alpaca client is replaced below the application's own market data code, so requests still go
+ * through its throttle, retry and page handling: each bars request answers with a generated page
+ * after a fixed delay. Uploads are counted and discarded.
+ */
+@Configuration
+@Profile("tuning")
+public class StandInBackends {
+
+  @Bean
+  @Primary
+  public AlpacaAPI syntheticAlpacaApi(SyntheticBars syntheticBars) throws Exception {
+    StockMarketDataEndpoint endpoint = mock(StockMarketDataEndpoint.class);
+    when(endpoint.getBars(anyCollection(), any(), any(), any(), any(), anyInt(), any(), any(), any()))
+        .thenAnswer(invocation -> syntheticBars.page(List.copyOf(invocation.getArgument(0)),
+            invocation.getArgument(1), invocation.getArgument(2), invocation.getArgument(4),
+            invocation.getArgument(5)));
+    AlpacaAPI alpacaApi = mock(AlpacaAPI.class);
+    when(alpacaApi.stockMarketData()).thenReturn(endpoint);
+    return alpacaApi;
+  }
+
+  @Bean
+  public SyntheticBars syntheticBars() {
+    return new SyntheticBars();
+  }
+
+  @Bean
+  @Primary
+  public S3Service countingStorage() {
+    return new CountingStorage();
+  }
+
+  /**
+   * A random walk per symbol, one bar per slot with probability tuning.bar-fill, served as pages
+   * of at most tuning.page-bars bars like Alpaca's. The page token is the symbol index and bar
+   * offset to resume from. Each page waits tuning.page-latency-ms first, standing in for the API's
+   * round trip, and holds fresh bars, as the real client's pages do.
+   */
+  static class SyntheticBars {
+
+    private static final ZoneId MARKET_ZONE = ZoneId.of("America/New_York");
+
+    @Value("${tuning.page-bars:10000}")
+    private int pageBars;
+
+    @Value("${tuning.page-latency-ms:120}")
+    private long pageLatencyMillis;
+
+    @Value("${tuning.bar-fill:0.8}")
+    private double barFill;
+
+    MultiStockBarsResponse page(List<String> symbols, ZonedDateTime start, ZonedDateTime end, String pageToken,
+        int barMinutes) throws InterruptedException {
+      int symbolIndex = 0;
+      int offset = 0;
+      if (pageToken != null) {
+        String[] position = pageToken.split(":");
+        symbolIndex = Integer.parseInt(position[0]);
+        offset = Integer.parseInt(position[1]);
+      }
+
+      HashMap<String, ArrayList<StockBar>> bars = new LinkedHashMap<>();
+      int count = 0;
+      String nextPageToken = null;
+      for (; symbolIndex < symbols.size(); symbolIndex++, offset = 0) {
+        String symbol = symbols.get(symbolIndex);
+        List<StockBar> series = series(symbol, start, end, barMinutes);
+        int taken = Math.min(series.size() - offset, pageBars - count);
+        if (taken > 0) {
+          bars.put(symbol, new ArrayList<>(series.subList(offset, offset + taken)));
+          count += taken;
+        }
+        if (offset + taken < series.size()) {
+          nextPageToken = symbolIndex + ":" + (offset + taken);
+          break;
+        }
+        if (count == pageBars && symbolIndex + 1 < symbols.size()) {
+          nextPageToken = (symbolIndex + 1) + ":0";
+          break;
+        }
+      }
+
+      if (pageLatencyMillis > 0) {
+        Thread.sleep(pageLatencyMillis);
+      }
+      MultiStockBarsResponse response = new MultiStockBarsResponse();
+      response.setBars(bars);
+      response.setNextPageToken(nextPageToken);
+      return response;
+    }
+
+    /**
+     * The symbol's bars over the request, the same on every call so a page can resume mid-symbol.
+     */
+    private List<StockBar> series(String symbol, ZonedDateTime start, ZonedDateTime end, int barMinutes) {
+      ZonedDateTime first = start.withZoneSameInstant(MARKET_ZONE).truncatedTo(ChronoUnit.HOURS);
+      while (first.isBefore(start)) {
+        first = first.plusMinutes(barMinutes);
+      }
+      SplittableRandom random = new SplittableRandom(symbol.hashCode() * 31L + start.toEpochSecond());
+      double price = 5 + random.nextDouble(500);
+      List<StockBar> series = new ArrayList<>();
+      for (ZonedDateTime time = first; time.isBefore(end); time = time.plusMinutes(barMinutes)) {
+        if (random.nextDouble() >= barFill) {
+          continue;
+        }
+        double last = price * (1 + random.nextGaussian() * 0.002);
+        long volume = 1 + random.nextInt(50_000);
+        StockBar bar = new StockBar();
+        bar.setTimestamp(time);
+        bar.setOpen(price);
+        bar.setHigh(Math.max(price, last) * (1 + random.nextDouble(0.001)));
+        bar.setLow(Math.min(price, last) * (1 - random.nextDouble(0.001)));
+        bar.setClose(last);
+        bar.setVolume(volume);
+        bar.setTradeCount(volume);
+        series.add(bar);
+        price = last;
+      }
+      return series;
+    }
+  }
+
+  /**
+   * Serves a generated universe of tuning.symbols symbols as the symbol list, finds no other
+   * objects, and keeps only a count of the bytes each upload would have sent.
+   */
+  static class CountingStorage implements S3Service {
+
+    private static final AtomicLong bytesWritten = new AtomicLong();
+    private static final AtomicLong objectsWritten = new AtomicLong();
+
+    @Value("${tuning.symbols:11700}")
+    private int symbolCount;
+
+    static long bytesWritten() {
+      return bytesWritten.get();
+    }
+
+    static long objectsWritten() {
+      return objectsWritten.get();
+    }
+
+    @Override
+    public List<String> fetchList(String bucket, String key) {
+      List<String> symbols = new ArrayList<>(symbolCount);
+      for (int i = 0; i < symbolCount; i++) {
+        StringBuilder symbol = new StringBuilder();
+        for (int n = i; symbol.isEmpty() || n > 0; n /= 26) {
+          symbol.append((char) ('A' + n % 26));
+        }
+        symbols.add(symbol.reverse().toString());
+      }
+      return symbols;
+    }
+
+    @Override
+    public byte[] getObject(String bucket, String key) {
+      throw new IllegalStateException("No object " + key + " in the stand-in storage");
+    }
+
+    @Override
+    public byte[] getObjectIfExists(String bucket, String key) {
+      return null;
+    }
+
+    @Override
+    public UploadResult putObject(String bucket, String key, byte[] data) {
+      return count(key, data.length);
+    }
+
+    @Override
+    public UploadResult putObject(String bucket, String key, Path file, byte[] sha256) {
+      try {
+        return count(key, Files.size(file));
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to read " + file, e);
+      }
+    }
+
+    @Override
+    public UploadResult putObject(String bucket, String key, List<ByteBuffer> chunks, long length, byte[] sha256) {
+      return count(key, length);
+    }
+
+    private static UploadResult count(String key, long length) {
+      bytesWritten.addAndGet(length);
+      objectsWritten.incrementAndGet();
+      return UploadResult.builder().key(key).build();
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package com.darylmathison.market.validation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.darylmathison.market.aggregate.Timeframe;
+import com.darylmathison.market.model.StorageStockBar;
+import com.darylmathison.market.model.ValidationReport;
+import com.darylmathison.market.symbol.SymbolDictionary;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+
+class BarValidatorTest {
+
+  private static final ZonedDateTime OPEN = ZonedDateTime.of(2024, 7, 1, 9, 30, 0, 0, ZoneId.of("America/New_York"));
+  private static final SymbolDictionary DICTIONARY = SymbolDictionary.compile(List.of("AAPL", "MSFT", "TSLA"));
+
+  @Test
+  void validate_shouldReturnCleanPageUnchanged() {
+    BarValidator validator = new BarValidator(DICTIONARY, Timeframe.parse("1Min"), 1);
+    List<StorageStockBar> page = List.of(bar("AAPL", OPEN, 10, 11, 9, 10), bar("AAPL", OPEN.plusMinutes(1), 10, 11, 9, 11));
+
+    assertSame(page, validator.validate(page));
+    assertFalse(validator.hasQuarantined());
+    ValidationReport report = validator.finish(List.of("AAPL"));
+    assertEquals(2, report.getBarsChecked());
+    assertEquals(2, report.getBarsAccepted());
+    assertEquals(0, report.getGapSlots());
+  }
+
+  @Test
+  void validate_shouldRejectBadBarsAcrossPages() throws Exception {
+    BarValidator validator = new BarValidator(DICTIONARY, Timeframe.parse("1Min"), 1);
+    validator.validate(List.of(bar("AAPL", OPEN.plusMinutes(5), 10, 11, 9, 10)));
+
+    List<StorageStockBar> accepted = validator.validate(List.of(
+        bar("AAPL", OPEN.plusMinutes(5), 10, 11, 9, 10),
+        bar("AAPL", OPEN.plusMinutes(4), 10, 11, 9, 10),
+        bar("AAPL", OPEN.plusMinutes(6), Double.NaN, 11, 9, 10),
+        bar("AAPL", OPEN.plusMinutes(7), 12, 11, 9, 10),
+        bar(null, OPEN.plusMinutes(8), 10, 11, 9, 10),
+        bar("NVDA", OPEN.plusMinutes(8), 10, 11, 9, 10),
+        bar("AAPL", OPEN.plusMinutes(9), 10, 11, 9, 10)));
+
+    assertEquals(1, accepted.size());
+    ValidationReport report = validator.finish(List.of("AAPL"));
+    assertEquals(8, report.getBarsChecked());
+    assertEquals(6, report.getQuarantined());
+    assertEquals(1, report.getDuplicates());
+    assertEquals(1, report.getOutOfOrder());
+    assertEquals(1, report.getNonFinite());
+    assertEquals(1, report.getOhlcViolations());
+    assertEquals(1, report.getMissingFields());
+    assertEquals(1, report.getUnknownSymbols());
+    assertEquals(3, report.getGapSlots());
+
+    List<String> rows = gunzipLines(validator.quarantineCsv());
+    assertEquals("symbol,timestamp,open,high,low,close,volume,reason", rows.get(0));
+    assertEquals(List.of("duplicate", "out_of_order", "non_finite", "ohlc", "missing_field", "unknown_symbol"),
+        rows.stream().skip(1).map(row -> row.substring(row.lastIndexOf(',') + 1)).toList());
+  }
+
+  @Test
+  void finish_shouldCountSessionsWithoutBarsForEveryRequestedSymbol() {
+    BarValidator validator = new BarValidator(DICTIONARY, Timeframe.parse("1Day"), 3);
+    validator.validate(List.of(
+        bar("AAPL", OPEN, 10, 11, 9, 10),
+        bar("AAPL", OPEN.plusDays(1), 10, 11, 9, 10),
+        bar("MSFT", OPEN.plusDays(2), 10, 11, 9, 10)));
+
+    // AAPL missed one session, MSFT two and TSLA, which returned nothing, all three
+    ValidationReport report = validator.finish(List.of("AAPL", "MSFT", "TSLA"));
+    assertEquals(6, report.getMissingSessions());
+    assertEquals(0, report.getGapSlots());
+    assertTrue(report.getQuarantineKey() == null);
+  }
+
+  private static StorageStockBar bar(String symbol, ZonedDateTime timestamp, double open, double high, double low,
+      double close) {
+    return StorageStockBar.builder().symbol(symbol).timestamp(timestamp)
+        .open(open).high(high).low(low).close(close).volume(100).build();
+  }
+
+  private static List<String> gunzipLines(byte[] data) throws Exception {
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8).lines().toList();
+    }
+  }
+}
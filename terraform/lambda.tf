@@ -31,6 +31,7 @@ data "aws_iam_policy_document" "aws_iam_extract_market_data_aws_lambda_iam_polic
     actions = [
       "s3:GetObject",
       "s3:GetObjectVersion",
+      "s3:ListBucket",
       "s3:GetObjectAcl",
       "s3:GetObjectTagging",
       "s3:PutObject",
@@ -77,6 +78,9 @@ resource "aws_lambda_function" "extract_market_data_aws_lambda" {
   runtime       = var.runtime
   timeout       = var.timeout
   memory_size = 512
+  ephemeral_storage {
+    size = 2048
+  }
   environment {
     variables = {
       TZ = var.timezone
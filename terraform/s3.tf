@@ -9,4 +9,29 @@ resource "aws_s3_bucket" "code_bucket" {
 
 resource "aws_s3_bucket" "data_bucket" {
   bucket = "${var.data_bucket_name}-${random_id.bucket_suffix.hex}"
-}
\ No newline at end of file
+}
+# Run manifests pin object versions, so a failed re-run cannot change what a committed run points at
+resource "aws_s3_bucket_versioning" "data_bucket" {
+  bucket = aws_s3_bucket.data_bucket.id
+  versioning_configuration {
+    status = "Enabled"
+  }
+}
+
+resource "aws_s3_bucket_lifecycle_configuration" "data_bucket" {
+  depends_on = [aws_s3_bucket_versioning.data_bucket]
+  bucket     = aws_s3_bucket.data_bucket.id
+
+  # A manifest pins the versions its run wrote, and a later run that rewrites a key makes the pinned
+  # version noncurrent. Once it has been noncurrent this long it is deleted, so a manifest is only
+  # guaranteed to resolve for manifest_retention_days after the next run replaced its objects.
+  # Readers that need older runs must copy them out or raise this limit.
+  rule {
+    id     = "expire-replaced-versions"
+    status = "Enabled"
+    filter {}
+    noncurrent_version_expiration {
+      noncurrent_days = var.manifest_retention_days
+    }
+  }
+}
@@ -46,3 +46,8 @@ variable "alpacaSecretKey" {
 variable "symbols_batch_size" {
   default = 400
 }
+
+# Days a replaced object version, and with it any manifest that pins it, stays readable
+variable "manifest_retention_days" {
+  default = 30
+}